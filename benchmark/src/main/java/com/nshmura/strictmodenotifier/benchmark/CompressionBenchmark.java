@@ -0,0 +1,120 @@
+package com.nshmura.strictmodenotifier.benchmark;
+
+import com.nshmura.strictmodenotifier.StrictModeViolation;
+import com.nshmura.strictmodenotifier.ViolationCodec;
+import com.nshmura.strictmodenotifier.ViolationCompressor;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compression ratio and CPU cost per record of the store payloads, with and without the preset
+ * dictionary of {@link ViolationCompressor}.
+ *
+ * Usage: CompressionBenchmark [dump.txt...]
+ *
+ * Without dumps, a synthetic corpus is used.
+ */
+public class CompressionBenchmark {
+
+  private static final int SYNTHETIC_COUNT = 2000;
+  private static final int WARMUP_ROUNDS = 5;
+  private static final int ROUNDS = 10;
+
+  public static void main(String[] args) throws IOException {
+    List<File> files = new ArrayList<>();
+    for (String arg : args) {
+      files.add(new File(arg));
+    }
+    List<StrictModeViolation> violations = files.isEmpty()
+        ? Corpus.synthetic(SYNTHETIC_COUNT, 1)
+        : Corpus.fromLogs(files);
+    if (violations.isEmpty()) {
+      System.err.println("no violations");
+      System.exit(1);
+    }
+
+    List<byte[]> records = new ArrayList<>(violations.size());
+    long rawBytes = 0;
+    for (StrictModeViolation violation : violations) {
+      byte[] record = encode(violation);
+      records.add(record);
+      rawBytes += record.length;
+    }
+
+    System.out.println("records:     " + records.size());
+    System.out.println("raw:         " + rawBytes + " bytes, "
+        + rawBytes / records.size() + " bytes/record");
+    System.out.println();
+    System.out.println(String.format("%-12s %10s %8s %16s %16s", "", "bytes", "ratio",
+        "compress ns/rec", "inflate ns/rec"));
+    run("deflate", new ViolationCompressor(false), records, rawBytes);
+    run("dictionary", new ViolationCompressor(true), records, rawBytes);
+  }
+
+  private static void run(String name, ViolationCompressor compressor, List<byte[]> records,
+      long rawBytes) throws IOException {
+    ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+    List<byte[]> compressed = new ArrayList<>(records.size());
+    long compressedBytes = 0;
+    for (byte[] record : records) {
+      byte[] data = compressor.compress(record);
+      compressed.add(data);
+      compressedBytes += data.length;
+    }
+
+    for (int i = 0; i < WARMUP_ROUNDS; i++) {
+      compressAll(compressor, records);
+      decompressAll(compressor, compressed);
+    }
+
+    long start = threads.getCurrentThreadCpuTime();
+    for (int i = 0; i < ROUNDS; i++) {
+      compressAll(compressor, records);
+    }
+    long compressNanos = threads.getCurrentThreadCpuTime() - start;
+
+    start = threads.getCurrentThreadCpuTime();
+    for (int i = 0; i < ROUNDS; i++) {
+      decompressAll(compressor, compressed);
+    }
+    long decompressNanos = threads.getCurrentThreadCpuTime() - start;
+
+    long operations = (long) ROUNDS * records.size();
+    System.out.println(String.format("%-12s %10d %7.2fx %16d %16d", name, compressedBytes,
+        (double) rawBytes / compressedBytes, compressNanos / operations,
+        decompressNanos / operations));
+    compressor.end();
+  }
+
+  private static int compressAll(ViolationCompressor compressor, List<byte[]> records) {
+    int total = 0;
+    for (byte[] record : records) {
+      total += compressor.compress(record).length;
+    }
+    return total;
+  }
+
+  private static int decompressAll(ViolationCompressor compressor, List<byte[]> records)
+      throws IOException {
+    int total = 0;
+    for (byte[] record : records) {
+      total += compressor.decompress(record).length;
+    }
+    return total;
+  }
+
+  private static byte[] encode(StrictModeViolation violation) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(bytes);
+    ViolationCodec.encode(violation, out);
+    out.flush();
+    return bytes.toByteArray();
+  }
+}
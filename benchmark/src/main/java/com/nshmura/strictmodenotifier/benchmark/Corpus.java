@@ -0,0 +1,133 @@
+package com.nshmura.strictmodenotifier.benchmark;
+
+import com.nshmura.strictmodenotifier.LogcatReplay;
+import com.nshmura.strictmodenotifier.NotifierConfig;
+import com.nshmura.strictmodenotifier.StrictModeViolation;
+import com.nshmura.strictmodenotifier.ViolationEngine;
+import com.nshmura.strictmodenotifier.ViolationType;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Violations to run the benchmarks on.
+ */
+final class Corpus {
+
+  private static final String[][] HEADS = {
+      {
+          "StrictMode policy violation; ~duration=%d ms: "
+              + "android.os.StrictMode$StrictModeDiskReadViolation: policy=31 violation=2",
+          "\tat android.os.StrictMode$AndroidBlockGuardPolicy.onReadFromDisk(StrictMode.java:1263)",
+          "\tat libcore.io.BlockGuardOs.open(BlockGuardOs.java:182)",
+          "\tat libcore.io.IoBridge.open(IoBridge.java:438)",
+          "\tat java.io.FileInputStream.<init>(FileInputStream.java:76)",
+      }, {
+          "StrictMode policy violation; ~duration=%d ms: "
+              + "android.os.StrictMode$StrictModeDiskWriteViolation: policy=31 violation=1",
+          "\tat android.os.StrictMode$AndroidBlockGuardPolicy.onWriteToDisk(StrictMode.java:1135)",
+          "\tat libcore.io.BlockGuardOs.open(BlockGuardOs.java:186)",
+          "\tat libcore.io.IoBridge.open(IoBridge.java:438)",
+          "\tat java.io.FileOutputStream.<init>(FileOutputStream.java:87)",
+      }, {
+          "StrictMode policy violation: android.os.strictmode.DiskReadViolation",
+          "\tat android.os.StrictMode$AndroidBlockGuardPolicy.onReadFromDisk(StrictMode.java:1596)",
+          "\tat android.app.SharedPreferencesImpl.awaitLoadedLocked(SharedPreferencesImpl.java:256)",
+          "\tat android.app.SharedPreferencesImpl.getString(SharedPreferencesImpl.java:268)",
+      }, {
+          "StrictMode policy violation; ~duration=%d ms: "
+              + "android.os.StrictMode$StrictModeNetworkViolation: policy=31 violation=4",
+          "\tat android.os.StrictMode$AndroidBlockGuardPolicy.onNetwork(StrictMode.java:1166)",
+          "\tat java.net.InetAddress.getAllByName(InetAddress.java:752)",
+          "\tat java.net.Socket.connect(Socket.java:586)",
+      },
+  };
+
+  private static final String[] TAIL = {
+      "\tat android.app.Activity.performCreate(Activity.java:6237)",
+      "\tat android.app.Instrumentation.callActivityOnCreate(Instrumentation.java:1107)",
+      "\tat android.app.ActivityThread.performLaunchActivity(ActivityThread.java:2369)",
+      "\tat android.app.ActivityThread.handleLaunchActivity(ActivityThread.java:2476)",
+      "\tat android.app.ActivityThread$H.handleMessage(ActivityThread.java:1344)",
+      "\tat android.os.Handler.dispatchMessage(Handler.java:102)",
+      "\tat android.os.Looper.loop(Looper.java:148)",
+      "\tat android.app.ActivityThread.main(ActivityThread.java:5417)",
+      "\tat java.lang.reflect.Method.invoke(Native Method)",
+      "\tat com.android.internal.os.ZygoteInit$MethodAndArgsCaller.run(ZygoteInit.java:726)",
+      "\tat com.android.internal.os.ZygoteInit.main(ZygoteInit.java:616)",
+  };
+
+  private static final String[] APP_CLASSES = {
+      "com.example.app.MainActivity", "com.example.app.data.UserRepository",
+      "com.example.app.data.SettingsStore", "com.example.app.net.ApiClient",
+      "com.example.app.ui.feed.FeedFragment", "com.example.app.image.DiskCache",
+  };
+
+  private static final ViolationType[] TYPES = {
+      ViolationType.DISK_READ, ViolationType.DISK_WRITE, ViolationType.DISK_READ,
+      ViolationType.NETWORK,
+  };
+
+  private Corpus() {
+  }
+
+  /**
+   * @return violations like the ones of a typical app, the same for the same arguments.
+   */
+  static List<StrictModeViolation> synthetic(int count, long seed) {
+    Random random = new Random(seed);
+    List<StrictModeViolation> violations = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      int head = random.nextInt(HEADS.length);
+      ArrayList<String> lines = new ArrayList<>();
+      lines.add(String.format(HEADS[head][0], random.nextInt(300)));
+      for (int j = 1; j < HEADS[head].length; j++) {
+        lines.add(HEADS[head][j]);
+      }
+      int appFrames = 1 + random.nextInt(4);
+      for (int j = 0; j < appFrames; j++) {
+        String className = APP_CLASSES[random.nextInt(APP_CLASSES.length)];
+        String fileName = className.substring(className.lastIndexOf('.') + 1) + ".java";
+        lines.add("\tat " + className + ".method" + random.nextInt(20) + "(" + fileName + ":"
+            + (10 + random.nextInt(400)) + ")");
+      }
+      for (String line : TAIL) {
+        lines.add(line);
+      }
+
+      violations.add(new StrictModeViolation.Builder()
+          .setId(i + 1)
+          .setViolationType(TYPES[head])
+          .setMessage(lines.get(0))
+          .setLogKey(String.valueOf(random.nextLong()))
+          .setStacktreace(lines)
+          .setTime(1500000000000L + i * 1000L)
+          .setVersionCode(42)
+          .setBuildFingerprint("google/sdk_gphone64_x86_64/emu64xa:14/UE1A.230829.036/10:userdebug")
+          .setSessionId("7c9e6679-7425-40de-944b-e07fc1f90ae7")
+          .setBlockedMillis(random.nextInt(300))
+          .build());
+    }
+    return violations;
+  }
+
+  /**
+   * @return violations found in captured logcat dumps.
+   */
+  static List<StrictModeViolation> fromLogs(List<File> files) throws IOException {
+    final List<StrictModeViolation> violations = new ArrayList<>();
+    ViolationEngine engine = new ViolationEngine(NotifierConfig.getInstance(),
+        new ViolationEngine.Callback() {
+          @Override public void onViolation(StrictModeViolation violation) {
+            violations.add(violation);
+          }
+        });
+    LogcatReplay replay = new LogcatReplay(engine);
+    for (File file : files) {
+      replay.replay(file);
+    }
+    return violations;
+  }
+}
@@ -0,0 +1,221 @@
+package com.nshmura.strictmodenotifier.benchmark;
+
+import com.nshmura.strictmodenotifier.LogcatReader;
+import com.nshmura.strictmodenotifier.NotifierConfig;
+import com.nshmura.strictmodenotifier.StrictModeLog;
+import com.nshmura.strictmodenotifier.StrictModeViolation;
+import com.nshmura.strictmodenotifier.ViolationEngine;
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import javax.management.ObjectName;
+
+/**
+ * Heap allocation and CPU cost of {@link ViolationEngine} per 10k logcat lines, fed with Strings
+ * and with the bytes of the pipe through BufferedReader and {@link LogcatReader}. The "parse"
+ * mode is the baseline: it parses every line into a {@link StrictModeLog} first, as the engine
+ * did before it parsed lines in place.
+ *
+ * Allocated objects are counted from class histograms of the heap, including unreachable objects,
+ * before and after a round. A GC in the round makes the count unknown, so give the VM a young
+ * generation larger than a round, e.g. -Xmn512m as the gradle task does.
+ *
+ * Usage: EngineBenchmark [dump.txt...]
+ *
+ * Without dumps, the synthetic corpus is logged as `logcat -v threadtime` lines, mixed with
+ * System.err stacktraces that are not violations.
+ */
+public class EngineBenchmark {
+
+  private static final int SYNTHETIC_COUNT = 2000;
+  private static final int WARMUP_ROUNDS = 5;
+  private static final int ROUNDS = 10;
+  private static final int LINES_PER_REPORT = 10000;
+  private static final String[] MODES = {"parse", "strings", "BufferedReader", "LogcatReader"};
+
+  private static final String STRICT_MODE = "10-19 12:00:00.000  1234  1250 D StrictMode: ";
+  private static final String SYSTEM_ERR = "10-19 12:00:00.000  1234  1260 W System.err: ";
+
+  private static final String[] NOISE = {
+      "java.io.FileNotFoundException: /data/user/0/com.example.app/files/cache.json",
+      "\tat libcore.io.IoBridge.open(IoBridge.java:574)",
+      "\tat java.io.FileInputStream.<init>(FileInputStream.java:160)",
+      "\tat com.example.app.data.SettingsStore.load(SettingsStore.java:42)",
+      "\tat com.example.app.data.SettingsStore$1.run(SettingsStore.java:30)",
+      "\tat java.lang.Thread.run(Thread.java:1012)",
+  };
+
+  public static void main(String[] args) throws IOException {
+    List<String> lines = new ArrayList<>();
+    if (args.length == 0) {
+      List<StrictModeViolation> violations = Corpus.synthetic(SYNTHETIC_COUNT, 1);
+      for (int i = 0; i < violations.size(); i++) {
+        for (String line : violations.get(i).stacktreace) {
+          lines.add(STRICT_MODE + line);
+        }
+        if (i % 2 == 0) {
+          for (String line : NOISE) {
+            lines.add(SYSTEM_ERR + line);
+          }
+        }
+      }
+    } else {
+      for (String arg : args) {
+        readLines(new File(arg), lines);
+      }
+    }
+    if (lines.isEmpty()) {
+      System.err.println("no lines");
+      System.exit(1);
+    }
+
+    final int[] violations = new int[1];
+    ViolationEngine engine = new ViolationEngine(NotifierConfig.getInstance(),
+        new ViolationEngine.Callback() {
+          @Override public void onViolation(StrictModeViolation violation) {
+            violations[0]++;
+          }
+        });
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    for (String line : lines) {
+      out.write((line + "\n").getBytes("UTF-8"));
+    }
+    byte[] pipe = out.toByteArray();
+
+    System.out.println("lines:       " + lines.size());
+    for (int mode = 0; mode < MODES.length; mode++) {
+      for (int i = 0; i < WARMUP_ROUNDS; i++) {
+        feed(engine, lines, pipe, mode);
+      }
+      violations[0] = 0;
+
+      ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+      long startBytes = allocatedBytes(threads);
+      long startNanos = threads.getCurrentThreadCpuTime();
+      for (int i = 0; i < ROUNDS; i++) {
+        feed(engine, lines, pipe, mode);
+      }
+      long nanos = threads.getCurrentThreadCpuTime() - startNanos;
+      long bytes = allocatedBytes(threads) - startBytes;
+      long objects = countObjects(engine, lines, pipe, mode);
+
+      long total = (long) ROUNDS * lines.size();
+      System.out.println("[" + MODES[mode] + "]");
+      System.out.println("violations:  " + violations[0] / ROUNDS);
+      System.out.println("allocated:   " + (bytes < 0 ? "n/a"
+          : bytes * LINES_PER_REPORT / total + " bytes/10k lines"));
+      System.out.println("objects:     " + (objects < 0 ? "n/a"
+          : objects * LINES_PER_REPORT / lines.size() + " objects/10k lines"));
+      System.out.println("cpu:         " + nanos / total + " ns/line");
+    }
+  }
+
+  private static void feed(ViolationEngine engine, List<String> lines, byte[] pipe, int mode)
+      throws IOException {
+    long time = 0;
+    if (mode == 0) {
+      for (String line : lines) {
+        StrictModeLog log = StrictModeLog.parse(line, time++);
+        if (log != null) {
+          engine.onLog(log);
+        }
+      }
+    } else if (mode == 1) {
+      for (String line : lines) {
+        engine.onLine(line, time++);
+      }
+    } else if (mode == 2) {
+      BufferedReader reader =
+          new BufferedReader(new InputStreamReader(new ByteArrayInputStream(pipe), "UTF-8"));
+      String line;
+      while ((line = reader.readLine()) != null) {
+        engine.onLine(line, time++);
+      }
+    } else {
+      LogcatReader reader = new LogcatReader(new ByteArrayInputStream(pipe));
+      CharSequence line;
+      while ((line = reader.readLine()) != null) {
+        engine.onLine(line, time++);
+      }
+    }
+    engine.flush();
+  }
+
+  /**
+   * @return objects allocated by one round, or -1 if they cannot be counted.
+   */
+  private static long countObjects(ViolationEngine engine, List<String> lines, byte[] pipe,
+      int mode) throws IOException {
+    // the histograms allocate their results too
+    long overhead = heapObjects();
+    overhead = heapObjects() - overhead;
+
+    long collections = collections();
+    long start = heapObjects();
+    feed(engine, lines, pipe, mode);
+    long end = heapObjects();
+    if (start < 0 || end < 0 || collections() != collections) {
+      return -1;
+    }
+    return Math.max(0, end - start - overhead);
+  }
+
+  /**
+   * @return objects on the heap, including unreachable ones, or -1 if the VM cannot tell.
+   */
+  private static long heapObjects() {
+    try {
+      String histogram = (String) ManagementFactory.getPlatformMBeanServer().invoke(
+          new ObjectName("com.sun.management:type=DiagnosticCommand"), "gcClassHistogram",
+          new Object[] {new String[] {"-all"}}, new String[] {String[].class.getName()});
+      // the last line is "Total <instances> <bytes>"
+      histogram = histogram.trim();
+      String[] total = histogram.substring(histogram.lastIndexOf('\n') + 1).trim().split("\\s+");
+      return Long.parseLong(total[1]);
+    } catch (Exception e) {
+      return -1;
+    }
+  }
+
+  private static long collections() {
+    long count = 0;
+    for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+      count += collector.getCollectionCount();
+    }
+    return count;
+  }
+
+  /**
+   * @return bytes allocated by this thread, or -1 if the VM does not measure it.
+   */
+  private static long allocatedBytes(ThreadMXBean threads) {
+    if (threads instanceof com.sun.management.ThreadMXBean) {
+      return ((com.sun.management.ThreadMXBean) threads)
+          .getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+    return -1;
+  }
+
+  private static void readLines(File file, List<String> lines) throws IOException {
+    BufferedReader reader =
+        new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+    try {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        lines.add(line);
+      }
+    } finally {
+      reader.close();
+    }
+  }
+}
@@ -0,0 +1,88 @@
+package com.nshmura.strictmodenotifier.benchmark;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Cold start time of the testapp on a connected device, as reported by `am start -W`.
+ *
+ * Usage: StartupBenchmark label [runs]
+ *
+ * The app is stopped before each launch, so every launch creates the process. The first launches
+ * are not counted, as they may compile or load the app into the page cache. Install the testapp
+ * with the install to measure before, see the README.
+ */
+public class StartupBenchmark {
+
+  private static final String PACKAGE = "com.nshmura.strictmodenotifier.testapp";
+  private static final String ACTIVITY = PACKAGE + "/.MainActivity";
+  private static final int WARMUP_RUNS = 3;
+  private static final int DEFAULT_RUNS = 20;
+  // the process is killed asynchronously, and the watcher of the last run may still be reading
+  private static final long SETTLE_MILLIS = 1000;
+
+  public static void main(String[] args) throws Exception {
+    if (args.length < 1) {
+      System.err.println("usage: StartupBenchmark label [runs]");
+      System.exit(1);
+    }
+    String label = args[0];
+    int runs = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_RUNS;
+
+    List<Long> times = new ArrayList<>(runs);
+    for (int i = 0; i < WARMUP_RUNS + runs; i++) {
+      adb("shell", "am", "force-stop", PACKAGE);
+      Thread.sleep(SETTLE_MILLIS);
+      long time = -1;
+      for (String line : adb("shell", "am", "start", "-W", "-n", ACTIVITY)) {
+        if (line.startsWith("TotalTime:")) {
+          time = Long.parseLong(line.substring("TotalTime:".length()).trim());
+        }
+      }
+      if (time < 0) {
+        System.err.println("no TotalTime. is the testapp installed?");
+        System.exit(1);
+      }
+      if (i >= WARMUP_RUNS) {
+        times.add(time);
+      }
+    }
+    adb("shell", "am", "force-stop", PACKAGE);
+
+    Collections.sort(times);
+    long sum = 0;
+    for (long time : times) {
+      sum += time;
+    }
+    System.out.println(String.format("%-10s %6s %8s %8s %8s %8s", "", "runs", "min ms",
+        "median", "mean", "max"));
+    System.out.println(String.format("%-10s %6d %8d %8d %8d %8d", label, times.size(),
+        times.get(0), times.get(times.size() / 2), sum / times.size(),
+        times.get(times.size() - 1)));
+  }
+
+  private static List<String> adb(String... args) throws IOException, InterruptedException {
+    List<String> command = new ArrayList<>();
+    command.add("adb");
+    Collections.addAll(command, args);
+    Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+    List<String> lines = new ArrayList<>();
+    BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()));
+    try {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        lines.add(line.trim());
+      }
+    } finally {
+      reader.close();
+    }
+    if (process.waitFor() != 0) {
+      throw new IOException(command + " failed: " + lines);
+    }
+    return lines;
+  }
+}
@@ -1,5 +1,9 @@
 package com.nshmura.strictmodenotifier;
 
 public interface IgnoreAction {
+
+  /**
+   * @return true to drop the violation. The violation may be kept, e.g. to count the dropped ones.
+   */
   boolean ignore(StrictModeViolation violation);
 }
\ No newline at end of file
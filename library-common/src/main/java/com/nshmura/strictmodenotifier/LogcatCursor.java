@@ -0,0 +1,69 @@
+package com.nshmura.strictmodenotifier;
+
+/**
+ * Where a logcat read stopped, to restart `logcat -T` there without losing or repeating lines.
+ *
+ * -T takes a time in milliseconds and prints the lines at and after it. Restarting after the time
+ * of the last line would lose the later lines of the same millisecond, so logcat is restarted at
+ * that time, and as many lines of it as were read before are skipped.
+ *
+ * Count only the lines that are kept, e.g. not the lines of other processes, as the restarted
+ * logcat may filter those out.
+ *
+ * This class is not thread safe.
+ */
+public final class LogcatCursor {
+
+  private final StringBuilder time = new StringBuilder(LogcatTime.LENGTH);
+  private int linesAtTime;
+  private int skipping;
+
+  /**
+   * @return the time of the last line in "MM-dd HH:mm:ss.SSS", or null if no line was read.
+   */
+  public String getTime() {
+    return time.length() > 0 ? time.toString() : null;
+  }
+
+  /**
+   * Call this when logcat is restarted at {@link #getTime()}.
+   */
+  public void restart() {
+    skipping = linesAtTime;
+  }
+
+  /**
+   * @param line a line that starts with a time, see {@link LogcatTime#hasTime}.
+   * @return false if the line was read before the restart.
+   */
+  public boolean onLine(CharSequence line) {
+    boolean sameTime = isSameTime(line);
+    if (skipping > 0) {
+      if (sameTime) {
+        skipping--;
+        return false;
+      }
+      skipping = 0;
+    }
+    if (sameTime) {
+      linesAtTime++;
+    } else {
+      time.setLength(0);
+      time.append(line, 0, LogcatTime.LENGTH);
+      linesAtTime = 1;
+    }
+    return true;
+  }
+
+  private boolean isSameTime(CharSequence line) {
+    if (time.length() == 0) {
+      return false;
+    }
+    for (int i = LogcatTime.LENGTH - 1; i >= 0; i--) {
+      if (line.charAt(i) != time.charAt(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+}
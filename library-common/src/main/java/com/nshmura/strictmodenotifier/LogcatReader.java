@@ -0,0 +1,205 @@
+package com.nshmura.strictmodenotifier;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * Reads lines of logcat output without creating a String per line.
+ *
+ * Bytes are read into a ByteBuffer and decoded as UTF-8 into a reused CharBuffer, where line
+ * boundaries are found in place. {@link #readLine()} returns a view of the buffer that is valid
+ * until the next call. Keep a line with toString().
+ *
+ * Lines longer than the buffer are cut at about its size, and the rest of the line is skipped.
+ * Malformed input is replaced with U+FFFD.
+ *
+ * This class is not thread safe.
+ */
+public final class LogcatReader implements Closeable {
+
+  public static final int DEFAULT_BUFFER_SIZE = 16 * 1024;
+
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+  private final InputStream in;
+  private final ByteBuffer bytes;
+  private final CharBuffer chars;
+  private final char[] array;
+  private final CharsetDecoder decoder = UTF_8.newDecoder()
+      .onMalformedInput(CodingErrorAction.REPLACE)
+      .onUnmappableCharacter(CodingErrorAction.REPLACE);
+  private final Line line = new Line();
+
+  // chars[lineStart, charLimit) are decoded and not returned yet. chars before scan have no '\n'.
+  private int lineStart;
+  private int scan;
+  private int charLimit;
+  private boolean eof;
+  private boolean skipping;
+  private long truncatedLines;
+
+  public LogcatReader(InputStream in) {
+    this(in, DEFAULT_BUFFER_SIZE);
+  }
+
+  /**
+   * @param bufferSize size of the byte buffer, and the max chars of a line.
+   */
+  public LogcatReader(InputStream in, int bufferSize) {
+    if (bufferSize < 16) {
+      throw new IllegalArgumentException("bufferSize must be >= 16");
+    }
+    this.in = in;
+    bytes = ByteBuffer.allocate(bufferSize);
+    // UTF-8 decodes into at most one char per byte
+    chars = CharBuffer.allocate(bufferSize);
+    array = chars.array();
+  }
+
+  /**
+   * @return the next line without the line terminator, or null at the end of the stream.
+   * The line is valid until the next call.
+   */
+  public CharSequence readLine() throws IOException {
+    while (true) {
+      int newline = indexOfNewline();
+      if (newline >= 0) {
+        int start = lineStart;
+        int end = newline > start && array[newline - 1] == '\r' ? newline - 1 : newline;
+        lineStart = newline + 1;
+        scan = lineStart;
+        if (skipping) {
+          // the rest of a line that was cut
+          skipping = false;
+          continue;
+        }
+        return line.set(start, end);
+      }
+
+      if (eof) {
+        int start = lineStart;
+        lineStart = charLimit;
+        scan = charLimit;
+        if (start < charLimit && !skipping) {
+          return line.set(start, charLimit);
+        }
+        return null;
+      }
+
+      if (lineStart == 0 && isFull() && !skipping) {
+        // a line longer than the buffer. return its head, and skip the rest.
+        skipping = true;
+        truncatedLines++;
+        lineStart = charLimit;
+        scan = charLimit;
+        return line.set(0, charLimit);
+      }
+      fill();
+    }
+  }
+
+  private int indexOfNewline() {
+    for (int i = scan; i < charLimit; i++) {
+      if (array[i] == '\n') {
+        return i;
+      }
+    }
+    scan = charLimit;
+    return -1;
+  }
+
+  /**
+   * @return lines cut at the buffer size.
+   */
+  public long getTruncatedLines() {
+    return truncatedLines;
+  }
+
+  private void fill() throws IOException {
+    // move the unread chars to the front
+    int remaining = charLimit - lineStart;
+    if (skipping) {
+      remaining = 0;
+    } else if (remaining > 0 && lineStart > 0) {
+      System.arraycopy(array, lineStart, array, 0, remaining);
+    }
+    lineStart = 0;
+    scan = remaining;
+    charLimit = remaining;
+
+    while (charLimit == remaining && !eof && !isFull()) {
+      int read = in.read(bytes.array(), bytes.position(), bytes.remaining());
+      if (read < 0) {
+        eof = true;
+      } else {
+        bytes.position(bytes.position() + read);
+      }
+
+      bytes.flip();
+      chars.limit(array.length);
+      chars.position(charLimit);
+      decoder.decode(bytes, chars, eof);
+      if (eof) {
+        decoder.flush(chars);
+      }
+      bytes.compact();
+      charLimit = chars.position();
+    }
+  }
+
+  /**
+   * @return true if a char of a surrogate pair can not be decoded into the buffer.
+   */
+  private boolean isFull() {
+    return charLimit >= array.length - 1;
+  }
+
+  @Override public void close() throws IOException {
+    in.close();
+  }
+
+  /**
+   * A view of a line in the buffer.
+   */
+  private final class Line implements CharSequence {
+    private int start;
+    private int end;
+
+    Line set(int start, int end) {
+      this.start = start;
+      this.end = end;
+      return this;
+    }
+
+    @Override public int length() {
+      return end - start;
+    }
+
+    @Override public char charAt(int index) {
+      if (index < 0 || index >= end - start) {
+        throw new IndexOutOfBoundsException("index: " + index + ", length: " + (end - start));
+      }
+      return array[start + index];
+    }
+
+    /**
+     * @return a String, so that a part of the line can be kept.
+     */
+    @Override public CharSequence subSequence(int from, int to) {
+      if (from < 0 || to > end - start || from > to) {
+        throw new IndexOutOfBoundsException("from: " + from + ", to: " + to);
+      }
+      return new String(array, start + from, to - from);
+    }
+
+    @Override public String toString() {
+      return new String(array, start, end - start);
+    }
+  }
+}
@@ -0,0 +1,206 @@
+package com.nshmura.strictmodenotifier;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+
+/**
+ * Replays a captured logcat dump (`adb logcat -v time -d > dump.txt`) through the
+ * {@link ViolationEngine} on a plain JVM, and prints the violations to stdout.
+ *
+ * Usage: LogcatReplay [--quiet] [--stacktrace] [--dedupe=millis] [--baseline=file] dump.txt...
+ *
+ * Violations are stamped with the time of their lines. The year is the one of the modification
+ * time of the dump. Lines longer than 64 KB are truncated and counted.
+ *
+ * Throughput is printed to stderr.
+ */
+public class LogcatReplay {
+
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+  private static final long MAP_SIZE = 64L * 1024 * 1024;
+  private static final int MAX_LINE_LENGTH = 64 * 1024;
+
+  private final ViolationEngine engine;
+  private final byte[] lineBuffer = new byte[MAX_LINE_LENGTH];
+  private final LogcatTime logcatTime = new LogcatTime();
+  private long fileTime;
+  private long bytes;
+  private long truncatedLines;
+
+  public LogcatReplay(ViolationEngine engine) {
+    this.engine = engine;
+  }
+
+  public static void main(String[] args) throws IOException {
+    boolean quiet = false;
+    boolean stacktrace = false;
+    int fileCount = 0;
+    NotifierConfig config = NotifierConfig.getInstance();
+    ViolationBaseline baseline = ViolationBaseline.EMPTY;
+
+    for (String arg : args) {
+      if (arg.equals("--quiet")) {
+        quiet = true;
+      } else if (arg.equals("--stacktrace")) {
+        stacktrace = true;
+      } else if (arg.startsWith("--dedupe=")) {
+        config.setDedupeWindowMillis(Long.parseLong(arg.substring("--dedupe=".length())));
+      } else if (arg.startsWith("--baseline=")) {
+        baseline = ViolationBaseline.read(
+            new FileInputStream(arg.substring("--baseline=".length())));
+      } else {
+        fileCount++;
+      }
+    }
+    if (fileCount == 0) {
+      System.err.println(
+          "Usage: LogcatReplay [--quiet] [--stacktrace] [--dedupe=millis] [--baseline=file] "
+              + "dump.txt...");
+      System.exit(2);
+    }
+
+    ViolationEngine engine =
+        new ViolationEngine(config, new PrintCallback(System.out, quiet, stacktrace));
+    engine.setBaseline(baseline);
+    LogcatReplay replay = new LogcatReplay(engine);
+
+    long start = System.nanoTime();
+    for (String arg : args) {
+      if (!arg.startsWith("--")) {
+        replay.replay(new File(arg));
+      }
+    }
+    long elapsed = System.nanoTime() - start;
+
+    printStats(System.err, engine.getStats(), replay.bytes, replay.truncatedLines, elapsed);
+  }
+
+  /**
+   * Feed all lines of the file into the engine, and flush the last frame.
+   */
+  public void replay(File file) throws IOException {
+    fileTime = file.lastModified();
+    if (fileTime == 0) {
+      fileTime = System.currentTimeMillis();
+    }
+    RandomAccessFile raf = new RandomAccessFile(file, "r");
+    try {
+      FileChannel channel = raf.getChannel();
+      long size = channel.size();
+      long position = 0;
+      while (position < size) {
+        long mapSize = Math.min(MAP_SIZE, size - position);
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, mapSize);
+        boolean eof = position + mapSize >= size;
+        int consumed = replay(buffer, eof);
+        if (consumed == 0) {
+          // a line longer than the mapped region. skip it.
+          truncatedLines++;
+          consumed = (int) mapSize;
+        }
+        position += consumed;
+      }
+      bytes += size;
+    } finally {
+      raf.close();
+    }
+    engine.flush();
+  }
+
+  /**
+   * @return the number of lines truncated at 64 KB, or skipped as they are longer than the
+   * mapped region.
+   */
+  public long getTruncatedLines() {
+    return truncatedLines;
+  }
+
+  /**
+   * @return the number of bytes consumed. An incomplete last line is not consumed unless eof.
+   */
+  private int replay(MappedByteBuffer buffer, boolean eof) {
+    int limit = buffer.limit();
+    int lineStart = 0;
+    for (int i = 0; i < limit; i++) {
+      if (buffer.get(i) == '\n') {
+        onLine(buffer, lineStart, i);
+        lineStart = i + 1;
+      }
+    }
+    if (eof && lineStart < limit) {
+      onLine(buffer, lineStart, limit);
+      lineStart = limit;
+    }
+    return lineStart;
+  }
+
+  private void onLine(MappedByteBuffer buffer, int start, int end) {
+    if (end > start && buffer.get(end - 1) == '\r') {
+      end--;
+    }
+    if (end - start > MAX_LINE_LENGTH) {
+      truncatedLines++;
+    }
+    int length = Math.min(end - start, MAX_LINE_LENGTH);
+    if (length == 0) {
+      return;
+    }
+    buffer.position(start);
+    buffer.get(lineBuffer, 0, length);
+    String line = new String(lineBuffer, 0, length, UTF_8);
+    long time = logcatTime.parse(line, fileTime);
+    engine.onLine(line, time >= 0 ? time : fileTime);
+  }
+
+  private static void printStats(PrintStream out, ViolationEngine.Stats stats, long bytes,
+      long longLines, long elapsedNanos) {
+    double seconds = elapsedNanos / 1e9;
+    out.println("lines:            " + stats.lines);
+    out.println("strictmode logs:  " + stats.logs);
+    out.println("frames:           " + stats.frames);
+    out.println("violations:       " + stats.violations);
+    out.println("self violations:  " + stats.selfViolations);
+    out.println("ignored:          " + stats.ignored);
+    out.println("baseline matched: " + stats.baselineMatched);
+    out.println("duplicated:       " + stats.duplicated);
+    out.println("discarded lines:  " + stats.discardedLines);
+    out.println("truncated lines:  " + stats.truncatedLines);
+    out.println("long dump lines:  " + longLines);
+    out.println("elided lines:     " + stats.elidedLines + " in " + stats.truncatedFrames
+        + " frames");
+    out.println(String.format("elapsed:          %.3f s", seconds));
+    out.println(String.format("throughput:       %.1f MB/s, %.0f lines/s",
+        bytes / 1024.0 / 1024.0 / seconds, stats.lines / seconds));
+  }
+
+  private static class PrintCallback extends ViolationEngine.Callback {
+    private final PrintStream out;
+    private final boolean quiet;
+    private final boolean stacktrace;
+
+    PrintCallback(PrintStream out, boolean quiet, boolean stacktrace) {
+      this.out = out;
+      this.quiet = quiet;
+      this.stacktrace = stacktrace;
+    }
+
+    @Override public void onViolation(StrictModeViolation violation) {
+      if (quiet) {
+        return;
+      }
+      out.println(violation.violationType + "\t"
+          + ViolationFingerprint.toHex(ViolationFingerprint.of(violation)) + "\t"
+          + violation.message.trim());
+      if (stacktrace) {
+        out.println(violation.getStacktraceText());
+        out.println();
+      }
+    }
+  }
+}
@@ -0,0 +1,156 @@
+package com.nshmura.strictmodenotifier;
+
+import java.util.Calendar;
+
+/**
+ * Reads the time of `logcat -v threadtime` and `logcat -v time` lines, e.g.
+ * "10-19 12:00:00.000  1234  1250 D StrictMode: ..." as milliseconds of the local time zone, and
+ * the pid that follows it. See {@link #parsePid}.
+ *
+ * The lines have no year. It is taken from the time the lines are read at, and a line more than
+ * a day after that time is of the previous year. The start of the minute is cached, so that
+ * lines of the same minute are read without the calendar.
+ *
+ * This class is not thread safe.
+ */
+public final class LogcatTime {
+
+  /** Length of "MM-dd HH:mm:ss.SSS". */
+  public static final int LENGTH = 18;
+
+  private static final long MINUTE = 60 * 1000;
+  private static final long DAY = 24 * 60 * MINUTE;
+
+  private final Calendar calendar = Calendar.getInstance();
+  private int cachedMinute = -1;
+  private long cachedMinuteStart;
+
+  /**
+   * @return true if the line starts with "MM-dd HH:mm:ss.SSS".
+   */
+  public static boolean hasTime(CharSequence line) {
+    if (line.length() < LENGTH) {
+      return false;
+    }
+    for (int i = 0; i < LENGTH; i++) {
+      char c = line.charAt(i);
+      switch (i) {
+        case 2:
+          if (c != '-') {
+            return false;
+          }
+          break;
+        case 5:
+          if (c != ' ') {
+            return false;
+          }
+          break;
+        case 8:
+        case 11:
+          if (c != ':') {
+            return false;
+          }
+          break;
+        case 14:
+          if (c != '.') {
+            return false;
+          }
+          break;
+        default:
+          if (c < '0' || c > '9') {
+            return false;
+          }
+      }
+    }
+    return true;
+  }
+
+  /**
+   * @param now the time the line is read at, to decide the year.
+   * @return the time of the line, or -1 if the line has no time.
+   */
+  public long parse(CharSequence line, long now) {
+    if (!hasTime(line)) {
+      return -1;
+    }
+    int month = number(line, 0, 2);
+    int day = number(line, 3, 2);
+    int hour = number(line, 6, 2);
+    int minute = number(line, 9, 2);
+    int second = number(line, 12, 2);
+    int millis = number(line, 15, 3);
+    if (month < 1 || month > 12 || day < 1 || day > 31 || hour > 23 || minute > 59
+        || second > 60) {
+      return -1;
+    }
+
+    int key = ((month * 32 + day) * 24 + hour) * 60 + minute;
+    if (key != cachedMinute) {
+      calendar.setTimeInMillis(now);
+      int year = calendar.get(Calendar.YEAR);
+      long start = minuteStart(year, month, day, hour, minute);
+      if (start > now + DAY) {
+        start = minuteStart(year - 1, month, day, hour, minute);
+      }
+      cachedMinute = key;
+      cachedMinuteStart = start;
+    }
+    return cachedMinuteStart + second * 1000L + millis;
+  }
+
+  /**
+   * @return the pid of the line, or -1 if the line has no pid.
+   */
+  public static int parsePid(CharSequence line) {
+    int start = LENGTH;
+    while (start < line.length() && line.charAt(start) == ' ') {
+      start++;
+    }
+    if (start < line.length() && Character.isDigit(line.charAt(start))) {
+      // threadtime: "MM-dd HH:mm:ss.SSS  pid  tid D tag: message"
+      return parseInt(line, start, ' ');
+    }
+    // time: "MM-dd HH:mm:ss.SSS D/tag( pid): message"
+    start = LENGTH;
+    while (start < line.length() && line.charAt(start) != '(') {
+      start++;
+    }
+    start++;
+    while (start < line.length() && line.charAt(start) == ' ') {
+      start++;
+    }
+    return parseInt(line, start, ')');
+  }
+
+  /**
+   * @return the number that starts at the index and ends with the terminator, or -1.
+   */
+  private static int parseInt(CharSequence line, int start, char terminator) {
+    int value = -1;
+    for (int i = start; i < line.length(); i++) {
+      char c = line.charAt(i);
+      if (c == terminator) {
+        return value;
+      }
+      if (c < '0' || c > '9') {
+        return -1;
+      }
+      value = (value < 0 ? 0 : value * 10) + (c - '0');
+    }
+    return -1;
+  }
+
+  private long minuteStart(int year, int month, int day, int hour, int minute) {
+    calendar.clear();
+    calendar.set(year, month - 1, day, hour, minute, 0);
+    return calendar.getTimeInMillis();
+  }
+
+  private static int number(CharSequence line, int start, int length) {
+    int value = 0;
+    for (int i = start; i < start + length; i++) {
+      value = value * 10 + (line.charAt(i) - '0');
+    }
+    return value;
+  }
+}
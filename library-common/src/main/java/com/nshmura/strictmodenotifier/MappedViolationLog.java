@@ -0,0 +1,599 @@
+package com.nshmura.strictmodenotifier;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Ring buffer of violations in a memory mapped file.
+ *
+ * <pre>
+ * header  : magic(int) version(int) slotCount(int) payloadCapacity(int) codecVersion(int)
+ *           nextId(long) reserved(36)
+ * slots   : slotCount * slot
+ * slot    : commit(long) id(long) time(long) fingerprint(long) payloadOffset(long)
+ *           blockedMillis(long) payloadLength(int) type(short) flags(short)
+ *           droppedFrames(int) checksum(int)
+ * payload : payloadCapacity bytes of {@link ViolationCodec} records, compressed by
+ *           {@link ViolationCompressor} since version 2
+ * </pre>
+ *
+ * codecVersion is the version of {@link ViolationCodec} that wrote the records. 0 means 4.
+ * type is the {@link ViolationType#code} of the record, or -1 if it has none.
+ *
+ * The n-th appended record goes to slot n % slotCount, and its payload to the next free range
+ * of the payload ring. The commit word of a slot is the sequence number + 1, and 0 means empty.
+ *
+ * An append first clears the commit word of every record it is going to overwrite, then writes
+ * the payload and the slot, and writes the commit word last. The checksum covers the slot and
+ * the payload, so a record torn by a crash is never read, and records that are not overwritten
+ * are never touched. The state is recovered from the slots on open. The header holds the layout,
+ * and the next id so that ids are not reused after {@link #clear()}. Older files have 0 there, and
+ * the next id is taken from the slots then.
+ *
+ * The checksums are verified on open only. Slots that pass are kept in a bitmap, so reading the
+ * log checks the commit word and the flags of a slot but not its checksum.
+ *
+ * Index fields of the slots can be read without decoding the payload, see {@link Index}.
+ *
+ * The file is closed once it is mapped. The mapping stays valid after the file is deleted.
+ *
+ * The count of live records is kept up to date on every change, see {@link #getLiveCount()}.
+ *
+ * This class is not thread safe.
+ */
+public class MappedViolationLog {
+
+  private static final int MAGIC = 0x534d4e4d; // "SMNM"
+  private static final int VERSION = 2;
+
+  static final int HEADER_SIZE = 64;
+  static final int SLOT_SIZE = 64;
+
+  private static final int NEXT_ID = 20;
+
+  private static final int COMMIT = 0;
+  private static final int ID = 8;
+  private static final int TIME = 16;
+  private static final int FINGERPRINT = 24;
+  private static final int PAYLOAD_OFFSET = 32;
+  private static final int BLOCKED_MILLIS = 40;
+  private static final int PAYLOAD_LENGTH = 48;
+  private static final int TYPE = 52;
+  private static final int FLAGS = 54;
+  private static final int DROPPED_FRAMES = 56;
+  private static final int CHECKSUM = 60;
+
+  private static final short FLAG_DELETED = 1;
+  private static final short NO_TYPE = -1;
+
+  private final File file;
+  private final int slotCount;
+  private final int payloadCapacity;
+  private final MappedByteBuffer buffer;
+  private final ViolationCompressor compressor;
+  private final boolean ownsCompressor;
+  private final CRC32 crc = new CRC32();
+  private final byte[] slotFields = new byte[CHECKSUM];
+  private byte[] scratch = new byte[256];
+
+  /** Slots whose record passed the checksum. */
+  private final boolean[] valid;
+
+  private int version = VERSION;
+  private int codecVersion = ViolationCodec.VERSION;
+
+  private long nextSeq;
+  private long payloadHead;
+  private long nextId;
+  private int liveCount;
+
+  /**
+   * Open the file, or create it with the given layout. An existing file keeps its own layout.
+   */
+  public static MappedViolationLog open(File file, int slotCount, int payloadCapacity)
+      throws IOException {
+    return new MappedViolationLog(file, slotCount, payloadCapacity, null);
+  }
+
+  /**
+   * Open the file with a compressor that is shared with other logs. {@link #close()} does not
+   * end the shared compressor.
+   */
+  public static MappedViolationLog open(File file, int slotCount, int payloadCapacity,
+      ViolationCompressor compressor) throws IOException {
+    return new MappedViolationLog(file, slotCount, payloadCapacity, compressor);
+  }
+
+  private MappedViolationLog(File file, int slotCount, int payloadCapacity,
+      ViolationCompressor compressor) throws IOException {
+    this.file = file;
+    this.ownsCompressor = compressor == null;
+    this.compressor = compressor != null ? compressor : new ViolationCompressor();
+    RandomAccessFile raf = new RandomAccessFile(file, "rw");
+    try {
+      boolean existing = false;
+      if (raf.length() >= HEADER_SIZE) {
+        raf.seek(0);
+        int magic = raf.readInt();
+        int storedVersion = raf.readInt();
+        if (magic == MAGIC && storedVersion >= 1 && storedVersion <= VERSION) {
+          int storedSlotCount = raf.readInt();
+          int storedCapacity = raf.readInt();
+          if (storedSlotCount > 0 && storedCapacity > 0
+              && raf.length() == fileSize(storedSlotCount, storedCapacity)) {
+            int storedCodecVersion = raf.readInt();
+            if (storedCodecVersion == 0) {
+              storedCodecVersion = 4;
+            }
+            if (storedCodecVersion <= ViolationCodec.VERSION) {
+              slotCount = storedSlotCount;
+              payloadCapacity = storedCapacity;
+              version = storedVersion;
+              codecVersion = storedCodecVersion;
+              existing = true;
+            }
+          }
+        }
+      }
+      this.slotCount = slotCount;
+      this.payloadCapacity = payloadCapacity;
+      this.valid = new boolean[slotCount];
+
+      long size = fileSize(slotCount, payloadCapacity);
+      if (!existing) {
+        raf.setLength(0);
+        raf.setLength(size);
+      }
+      buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+      if (!existing) {
+        buffer.putInt(0, MAGIC);
+        buffer.putInt(4, VERSION);
+        buffer.putInt(8, slotCount);
+        buffer.putInt(12, payloadCapacity);
+        buffer.putInt(16, codecVersion);
+      }
+    } finally {
+      raf.close();
+    }
+    recover();
+    if (version < VERSION || codecVersion < ViolationCodec.VERSION) {
+      upgrade();
+    }
+  }
+
+  /**
+   * Rewrite the records in the current version.
+   */
+  private void upgrade() throws IOException {
+    ArrayList<StrictModeViolation> violations = new ArrayList<>();
+    Index index = index();
+    for (int i = 0; i < index.size(); i++) {
+      try {
+        violations.add(index.get(i));
+      } catch (IOException e) {
+        // drop the broken record
+      }
+    }
+    clear();
+    version = VERSION;
+    codecVersion = ViolationCodec.VERSION;
+    buffer.putInt(4, version);
+    buffer.putInt(16, codecVersion);
+    recover();
+    for (int i = violations.size() - 1; i >= 0; i--) {
+      append(violations.get(i));
+    }
+  }
+
+  private static long fileSize(int slotCount, int payloadCapacity) {
+    return HEADER_SIZE + (long) slotCount * SLOT_SIZE + payloadCapacity;
+  }
+
+  public File getFile() {
+    return file;
+  }
+
+  public void close() throws IOException {
+    if (ownsCompressor) {
+      compressor.end();
+    }
+  }
+
+  /**
+   * @return true if the next append may overwrite a record. A log that is never appended when
+   * full keeps every record it was given.
+   */
+  public boolean isFull() {
+    return nextSeq >= slotCount || payloadHead > payloadCapacity - payloadCapacity / 4;
+  }
+
+  /**
+   * @return bytes of the file that have been written. The rest of the file is sparse.
+   */
+  public long getUsedBytes() {
+    return HEADER_SIZE + Math.min(nextSeq, slotCount) * SLOT_SIZE
+        + Math.min(payloadHead, payloadCapacity);
+  }
+
+  /**
+   * Flush the mapped pages to the disk. Without this, appended records survive a crash of the
+   * process but may not survive a crash of the device.
+   */
+  public void force() {
+    buffer.force();
+  }
+
+  /**
+   * @return the appended violation that has an id.
+   * @throws IOException if the violation is too large for the payload region.
+   */
+  public StrictModeViolation append(StrictModeViolation violation) throws IOException {
+    long id = violation.id != 0 ? violation.id : nextId;
+    StrictModeViolation stored = violation.newBuilder().setId(id).build();
+    byte[] payload = encode(stored);
+    int length = payload.length;
+    if (length > payloadCapacity / 4) {
+      throw new IOException("violation too large: " + length + " bytes");
+    }
+
+    long seq = nextSeq;
+    int slot = (int) (seq % slotCount);
+
+    long offset = payloadHead;
+    int physical = (int) (offset % payloadCapacity);
+    if (physical + length > payloadCapacity) {
+      // do not wrap a record around the end of the ring
+      offset += payloadCapacity - physical;
+      physical = 0;
+    }
+
+    // 1. uncommit the records that are going to be overwritten
+    uncommit(slot);
+    long overwriteLimit = offset + length - payloadCapacity;
+    for (int i = 0; i < slotCount; i++) {
+      int base = slotBase(i);
+      if (valid[i] && buffer.getLong(base + PAYLOAD_OFFSET) < overwriteLimit) {
+        uncommit(i);
+      }
+    }
+
+    // 2. payload
+    ByteBuffer target = buffer.duplicate();
+    target.position(payloadBase() + physical);
+    target.put(payload, 0, length);
+
+    // 3. slot
+    int base = slotBase(slot);
+    buffer.putLong(base + ID, id);
+    buffer.putLong(base + TIME, stored.time);
+    buffer.putLong(base + FINGERPRINT, ViolationFingerprint.of(stored));
+    buffer.putLong(base + PAYLOAD_OFFSET, offset);
+    buffer.putLong(base + BLOCKED_MILLIS, stored.blockedMillis);
+    buffer.putInt(base + PAYLOAD_LENGTH, length);
+    buffer.putShort(base + TYPE, stored.violationType != null
+        ? (short) stored.violationType.code : NO_TYPE);
+    buffer.putShort(base + FLAGS, (short) 0);
+    buffer.putInt(base + DROPPED_FRAMES, stored.droppedFrames);
+    buffer.putInt(base + CHECKSUM, checksum(slot, seq + 1));
+
+    // 4. commit
+    buffer.putLong(base + COMMIT, seq + 1);
+    valid[slot] = true;
+    liveCount++;
+
+    nextSeq = seq + 1;
+    payloadHead = offset + length;
+    nextId = Math.max(nextId, id + 1);
+    buffer.putLong(NEXT_ID, nextId);
+    return stored;
+  }
+
+  /**
+   * Mark the record of the id as deleted.
+   *
+   * @return true if the record was found.
+   */
+  public boolean delete(long id) {
+    for (int i = 0; i < slotCount; i++) {
+      int base = slotBase(i);
+      if (valid[i] && buffer.getLong(base + ID) == id) {
+        deleteSlot(i);
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private void deleteSlot(int slot) {
+    if (isLive(slot)) {
+      liveCount--;
+    }
+    buffer.putShort(slotBase(slot) + FLAGS, FLAG_DELETED);
+  }
+
+  /**
+   * Remove all records. The ids of the removed records are not reused, also after a reopen.
+   */
+  public void clear() {
+    for (int i = 0; i < slotCount; i++) {
+      uncommit(i);
+    }
+  }
+
+  /**
+   * @return the number of live records, without taking an {@link #index()}.
+   */
+  public int getLiveCount() {
+    return liveCount;
+  }
+
+  /**
+   * @return the violation of the id, or null.
+   */
+  public StrictModeViolation get(long id) throws IOException {
+    for (int i = 0; i < slotCount; i++) {
+      if (isLive(i) && buffer.getLong(slotBase(i) + ID) == id) {
+        return decode(i);
+      }
+    }
+    return null;
+  }
+
+  /**
+   * @return all violations, newest first.
+   */
+  public ArrayList<StrictModeViolation> getAll() throws IOException {
+    Index index = index();
+    ArrayList<StrictModeViolation> violations = new ArrayList<>(index.size());
+    for (int i = 0; i < index.size(); i++) {
+      violations.add(index.get(i));
+    }
+    return violations;
+  }
+
+  /**
+   * @return the live records, newest first.
+   */
+  public Index index() {
+    int[] slots = new int[slotCount];
+    long[] seqs = new long[slotCount];
+    int count = 0;
+    for (int i = 0; i < slotCount; i++) {
+      if (isLive(i)) {
+        slots[count] = i;
+        seqs[count] = buffer.getLong(slotBase(i) + COMMIT);
+        count++;
+      }
+    }
+    // insertion sort by seq desc. slots are nearly sorted already.
+    for (int i = 1; i < count; i++) {
+      int slot = slots[i];
+      long seq = seqs[i];
+      int j = i - 1;
+      while (j >= 0 && seqs[j] < seq) {
+        slots[j + 1] = slots[j];
+        seqs[j + 1] = seqs[j];
+        j--;
+      }
+      slots[j + 1] = slot;
+      seqs[j + 1] = seq;
+    }
+    int[] result = new int[count];
+    System.arraycopy(slots, 0, result, 0, count);
+    MappedViolationLog[] logs = new MappedViolationLog[count];
+    for (int i = 0; i < count; i++) {
+      logs[i] = this;
+    }
+    return new Index(logs, result);
+  }
+
+  /**
+   * Live records in a fixed order. The fields are read from the mapped slots directly, so a
+   * record overwritten by a later append reads as the new record. Take a new index after append.
+   *
+   * An index may span several logs, see {@link #concat(List)}.
+   */
+  public static class Index {
+    private final MappedViolationLog[] logs;
+    private final int[] slots;
+
+    Index(MappedViolationLog[] logs, int[] slots) {
+      this.logs = logs;
+      this.slots = slots;
+    }
+
+    /**
+     * @return the records of the indexes in the order of the list.
+     */
+    static Index concat(List<Index> indexes) {
+      int size = 0;
+      for (Index index : indexes) {
+        size += index.size();
+      }
+      MappedViolationLog[] logs = new MappedViolationLog[size];
+      int[] slots = new int[size];
+      int position = 0;
+      for (Index index : indexes) {
+        System.arraycopy(index.logs, 0, logs, position, index.size());
+        System.arraycopy(index.slots, 0, slots, position, index.size());
+        position += index.size();
+      }
+      return new Index(logs, slots);
+    }
+
+    public int size() {
+      return slots.length;
+    }
+
+    public long getId(int position) {
+      return logs[position].buffer.getLong(base(position) + ID);
+    }
+
+    public long getTime(int position) {
+      return logs[position].buffer.getLong(base(position) + TIME);
+    }
+
+    public long getFingerprint(int position) {
+      return logs[position].buffer.getLong(base(position) + FINGERPRINT);
+    }
+
+    public long getBlockedMillis(int position) {
+      return logs[position].buffer.getLong(base(position) + BLOCKED_MILLIS);
+    }
+
+    public int getDroppedFrames(int position) {
+      return logs[position].buffer.getInt(base(position) + DROPPED_FRAMES);
+    }
+
+    /**
+     * @return the type, or null if the record has no type.
+     */
+    public ViolationType getViolationType(int position) {
+      short type = logs[position].buffer.getShort(base(position) + TYPE);
+      return type != NO_TYPE ? ViolationType.fromCode(type) : null;
+    }
+
+    public StrictModeViolation get(int position) throws IOException {
+      return logs[position].decode(slots[position]);
+    }
+
+    /**
+     * @return the log that holds the record.
+     */
+    MappedViolationLog getLog(int position) {
+      return logs[position];
+    }
+
+    /**
+     * Mark the record as deleted.
+     */
+    void delete(int position) {
+      logs[position].deleteSlot(slots[position]);
+    }
+
+    private int base(int position) {
+      return logs[position].slotBase(slots[position]);
+    }
+  }
+
+  private void recover() {
+    nextSeq = 0;
+    payloadHead = 0;
+    liveCount = 0;
+    nextId = Math.max(1, buffer.getLong(NEXT_ID));
+    for (int i = 0; i < slotCount; i++) {
+      if (!verify(i)) {
+        uncommit(i);
+        continue;
+      }
+      valid[i] = true;
+      if (isLive(i)) {
+        liveCount++;
+      }
+      int base = slotBase(i);
+      long seq = buffer.getLong(base + COMMIT) - 1;
+      if (seq + 1 > nextSeq) {
+        nextSeq = seq + 1;
+        payloadHead = buffer.getLong(base + PAYLOAD_OFFSET) + buffer.getInt(base + PAYLOAD_LENGTH);
+      }
+      nextId = Math.max(nextId, buffer.getLong(base + ID) + 1);
+    }
+  }
+
+  private boolean isLive(int slot) {
+    return valid[slot] && (buffer.getShort(slotBase(slot) + FLAGS) & FLAG_DELETED) == 0;
+  }
+
+  /**
+   * @return true if the slot holds a committed record that matches its checksum.
+   */
+  private boolean verify(int slot) {
+    int base = slotBase(slot);
+    long commit = buffer.getLong(base + COMMIT);
+    if (commit == 0 || (commit - 1) % slotCount != slot) {
+      return false;
+    }
+    int length = buffer.getInt(base + PAYLOAD_LENGTH);
+    long offset = buffer.getLong(base + PAYLOAD_OFFSET);
+    if (length <= 0 || length > payloadCapacity || offset < 0
+        || offset % payloadCapacity + length > payloadCapacity) {
+      return false;
+    }
+    return buffer.getInt(base + CHECKSUM) == checksum(slot, commit);
+  }
+
+  private void uncommit(int slot) {
+    if (isLive(slot)) {
+      liveCount--;
+    }
+    buffer.putLong(slotBase(slot) + COMMIT, 0);
+    valid[slot] = false;
+  }
+
+  private int checksum(int slot, long commit) {
+    int base = slotBase(slot);
+    read(base, slotFields, CHECKSUM);
+    ByteBuffer fields = ByteBuffer.wrap(slotFields);
+    fields.putLong(COMMIT, commit);
+    fields.putShort(FLAGS, (short) 0); // delete does not rewrite the checksum
+    crc.reset();
+    crc.update(slotFields, 0, CHECKSUM);
+
+    int length = buffer.getInt(base + PAYLOAD_LENGTH);
+    int physical = (int) (buffer.getLong(base + PAYLOAD_OFFSET) % payloadCapacity);
+    if (length > 0 && physical >= 0 && physical + length <= payloadCapacity) {
+      if (scratch.length < length) {
+        scratch = new byte[Math.max(length, scratch.length * 2)];
+      }
+      read(payloadBase() + physical, scratch, length);
+      crc.update(scratch, 0, length);
+    }
+    return (int) crc.getValue();
+  }
+
+  private StrictModeViolation decode(int slot) throws IOException {
+    int base = slotBase(slot);
+    int length = buffer.getInt(base + PAYLOAD_LENGTH);
+    int physical = (int) (buffer.getLong(base + PAYLOAD_OFFSET) % payloadCapacity);
+    byte[] payload = new byte[length];
+    read(payloadBase() + physical, payload, length);
+    if (version >= 2) {
+      payload = compressor.decompress(payload);
+    }
+    return ViolationCodec.decode(new DataInputStream(new ByteArrayInputStream(payload)),
+        codecVersion);
+  }
+
+  private byte[] encode(StrictModeViolation violation) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(bytes);
+    ViolationCodec.encode(violation, out);
+    out.flush();
+    return compressor.compress(bytes.toByteArray());
+  }
+
+  private void read(int position, byte[] dst, int length) {
+    ByteBuffer source = buffer.duplicate();
+    source.position(position);
+    source.get(dst, 0, length);
+  }
+
+  private int slotBase(int slot) {
+    return HEADER_SIZE + slot * SLOT_SIZE;
+  }
+
+  private int payloadBase() {
+    return HEADER_SIZE + slotCount * SLOT_SIZE;
+  }
+}
@@ -0,0 +1,141 @@
+package com.nshmura.strictmodenotifier;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Counts of the grouped notifications: a group per {@link ViolationType} with its last messages,
+ * under a summary of all the groups.
+ *
+ * A group counts the violations since its notification was last dismissed or opened, see
+ * {@link #reset(int)}. Each type has a fixed notification id, so that a group created again after
+ * a reset replaces no other group.
+ *
+ * This class is not thread safe.
+ */
+public final class NotificationGroups {
+
+  public static final int FIRST_NOTIFICATION_ID = 100;
+  public static final int MAX_LINES = 5;
+
+  public static final class Group {
+    public final int notificationId;
+    public final String title;
+    private final ArrayDeque<String> lines = new ArrayDeque<>(MAX_LINES);
+    private int count;
+    private long lastId;
+
+    Group(int notificationId, String title) {
+      this.notificationId = notificationId;
+      this.title = title;
+    }
+
+    /**
+     * @return the last messages, the oldest first.
+     */
+    public Collection<String> getLines() {
+      return Collections.unmodifiableCollection(lines);
+    }
+
+    public String getLastLine() {
+      return lines.peekLast();
+    }
+
+    public int getCount() {
+      return count;
+    }
+
+    /**
+     * @return the id of the last violation, to open from the notification.
+     */
+    public long getLastId() {
+      return lastId;
+    }
+  }
+
+  private final Map<ViolationType, Group> groups = new LinkedHashMap<>();
+  private final List<Group> changed = new ArrayList<>();
+
+  /**
+   * @param title title of the group, if the group is new.
+   * @return the group of the violation.
+   */
+  public Group add(StrictModeViolation violation, String title) {
+    Group group = groups.get(violation.violationType);
+    if (group == null) {
+      group = new Group(notificationIdOf(violation.violationType), title);
+      groups.put(violation.violationType, group);
+    }
+    group.count++;
+    group.lastId = violation.id;
+    if (group.lines.size() == MAX_LINES) {
+      group.lines.removeFirst();
+    }
+    group.lines.addLast(violation.message.trim());
+    if (!changed.contains(group)) {
+      changed.add(group);
+    }
+    return group;
+  }
+
+  /**
+   * @return the groups added to since {@link #clearChanged()}.
+   */
+  public List<Group> getChanged() {
+    return Collections.unmodifiableList(changed);
+  }
+
+  public void clearChanged() {
+    changed.clear();
+  }
+
+  /**
+   * @return all groups in the order they were created.
+   */
+  public Collection<Group> getGroups() {
+    return Collections.unmodifiableCollection(groups.values());
+  }
+
+  public int getTotalCount() {
+    int total = 0;
+    for (Group group : groups.values()) {
+      total += group.count;
+    }
+    return total;
+  }
+
+  /**
+   * Forget the group of the notification, e.g. when the notification is dismissed.
+   */
+  public void reset(int notificationId) {
+    Iterator<Group> iterator = groups.values().iterator();
+    while (iterator.hasNext()) {
+      Group group = iterator.next();
+      if (group.notificationId == notificationId) {
+        iterator.remove();
+        changed.remove(group);
+      }
+    }
+  }
+
+  /**
+   * Forget all groups, e.g. when the summary is dismissed.
+   */
+  public void resetAll() {
+    groups.clear();
+    changed.clear();
+  }
+
+  /**
+   * @param type the type, or null for violations without a type.
+   */
+  public static int notificationIdOf(ViolationType type) {
+    return FIRST_NOTIFICATION_ID + (type != null ? type.ordinal() : ViolationType.values().length);
+  }
+}
@@ -1,61 +1,443 @@
 package com.nshmura.strictmodenotifier;
 
+import com.nshmura.strictmodenotifier.detector.Detector;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
+/**
+ * Settings of strictmode-notifier.
+ *
+ * The settings are kept in an immutable {@link Snapshot} that is published through a volatile
+ * reference. Each setter publishes a modified copy, so the watcher thread reads a consistent view
+ * without locking while the app changes the settings. Use {@link #update(Snapshot)} to change
+ * several settings at once.
+ */
 public class NotifierConfig {
 
-  private static NotifierConfig instance;
+  private static final NotifierConfig instance = new NotifierConfig();
 
-  private List<CustomAction> customActions = new ArrayList<>();
-  private IgnoreAction ignoreAction;
-  private boolean debugMode;
-  private boolean headupEnabled = true;
+  private volatile Snapshot snapshot = new Snapshot.Builder().build();
 
   private NotifierConfig() {
 
   }
 
   public static NotifierConfig getInstance() {
-    if (instance == null) {
-      instance = new NotifierConfig();
-    }
     return instance;
   }
 
-  public NotifierConfig addCustomAction(CustomAction customAction) {
-    customActions.add(customAction);
+  /**
+   * @return the current settings. Read the settings of one violation from the same snapshot.
+   */
+  public Snapshot snapshot() {
+    return snapshot;
+  }
+
+  /**
+   * Replace all the settings.
+   *
+   * <pre>
+   * config.update(config.snapshot().newBuilder()
+   *     .setHeadupEnabled(false)
+   *     .setSlowCallThresholdMillis(50)
+   *     .build());
+   * </pre>
+   */
+  public synchronized NotifierConfig update(Snapshot snapshot) {
+    if (snapshot == null) {
+      throw new NullPointerException("snapshot == null");
+    }
+    this.snapshot = snapshot;
+    return this;
+  }
+
+  public synchronized NotifierConfig addCustomAction(CustomAction customAction) {
+    snapshot = snapshot.newBuilder().addCustomAction(customAction).build();
+    return this;
+  }
+
+  public synchronized NotifierConfig removeCustomAction(CustomAction customAction) {
+    snapshot = snapshot.newBuilder().removeCustomAction(customAction).build();
     return this;
   }
 
+  /**
+   * @return an unmodifiable copy of the custom actions at the time of the call. Use
+   * {@link #addCustomAction} and {@link #removeCustomAction} to change them; modifying the list
+   * throws UnsupportedOperationException.
+   */
   public List<CustomAction> getCustomActions() {
-    return customActions;
+    return snapshot.customActions;
   }
 
-  public NotifierConfig setIgnoreAction(IgnoreAction ignoreAction) {
-    this.ignoreAction = ignoreAction;
+  public synchronized NotifierConfig setIgnoreAction(IgnoreAction ignoreAction) {
+    snapshot = snapshot.newBuilder().setIgnoreAction(ignoreAction).build();
     return this;
   }
 
   public IgnoreAction getIgnoreAction() {
-    return ignoreAction;
+    return snapshot.ignoreAction;
   }
 
   public boolean isDebugMode() {
-    return debugMode;
+    return snapshot.debugMode;
   }
 
-  public NotifierConfig setDebugMode(boolean debugMode) {
-    this.debugMode = debugMode;
+  public synchronized NotifierConfig setDebugMode(boolean debugMode) {
+    snapshot = snapshot.newBuilder().setDebugMode(debugMode).build();
     return this;
   }
 
   public boolean isHeadupEnabled() {
-    return headupEnabled;
+    return snapshot.headupEnabled;
+  }
+
+  public synchronized NotifierConfig setHeadupEnabled(boolean headupEnabled) {
+    snapshot = snapshot.newBuilder().setHeadupEnabled(headupEnabled).build();
+    return this;
+  }
+
+  public boolean isGroupedNotificationsEnabled() {
+    return snapshot.groupedNotificationsEnabled;
+  }
+
+  /**
+   * Post a notification per {@link ViolationType} that lists its last violations, grouped under a
+   * summary, instead of one notification that shows the last violation.
+   */
+  public synchronized NotifierConfig setGroupedNotificationsEnabled(
+      boolean groupedNotificationsEnabled) {
+    snapshot = snapshot.newBuilder()
+        .setGroupedNotificationsEnabled(groupedNotificationsEnabled)
+        .build();
+    return this;
+  }
+
+  public long getNotificationIntervalMillis() {
+    return snapshot.notificationIntervalMillis;
+  }
+
+  /**
+   * Notifications are updated at most once in the interval. Violations in between are merged into
+   * the next update. 1000ms by default.
+   */
+  public synchronized NotifierConfig setNotificationIntervalMillis(
+      long notificationIntervalMillis) {
+    snapshot = snapshot.newBuilder().setNotificationIntervalMillis(notificationIntervalMillis).build();
+    return this;
+  }
+
+  public long getDedupeWindowMillis() {
+    return snapshot.dedupeWindowMillis;
+  }
+
+  /**
+   * Drop a violation if the same violation was reported within the window.
+   * 0 (default) disables deduplication.
+   */
+  public synchronized NotifierConfig setDedupeWindowMillis(long dedupeWindowMillis) {
+    snapshot = snapshot.newBuilder().setDedupeWindowMillis(dedupeWindowMillis).build();
+    return this;
+  }
+
+  public boolean isMainThreadMonitorEnabled() {
+    return snapshot.mainThreadMonitorEnabled;
+  }
+
+  /**
+   * Measure main thread stalls to annotate violations with the blocked time and dropped frames.
+   * Disabled by default. This sets the message logging Printer of the main Looper, so the Looper
+   * builds a string for every message. A Printer the app set before is still called, if the
+   * platform lets it be read.
+   */
+  public synchronized NotifierConfig setMainThreadMonitorEnabled(
+      boolean mainThreadMonitorEnabled) {
+    snapshot = snapshot.newBuilder().setMainThreadMonitorEnabled(mainThreadMonitorEnabled).build();
+    return this;
+  }
+
+  public long getSlowCallThresholdMillis() {
+    return snapshot.slowCallThresholdMillis;
+  }
+
+  /**
+   * Blocks traced by SlowCallTracer that take longer than this are reported as
+   * {@link ViolationType#CUSTOM_SLOW_CALL}.
+   */
+  public synchronized NotifierConfig setSlowCallThresholdMillis(long slowCallThresholdMillis) {
+    snapshot = snapshot.newBuilder().setSlowCallThresholdMillis(slowCallThresholdMillis).build();
+    return this;
+  }
+
+  public boolean isStreamServerEnabled() {
+    return snapshot.streamServerEnabled;
+  }
+
+  /**
+   * Stream violations as NDJSON on the local socket "strictmode_notifier_" + package name.
+   * e.g. `adb forward tcp:8765 localabstract:strictmode_notifier_com.example` and
+   * `curl -N localhost:8765`
+   */
+  public synchronized NotifierConfig setStreamServerEnabled(boolean streamServerEnabled) {
+    snapshot = snapshot.newBuilder().setStreamServerEnabled(streamServerEnabled).build();
+    return this;
+  }
+
+  public boolean isBackgroundPauseEnabled() {
+    return snapshot.backgroundPauseEnabled;
+  }
+
+  /**
+   * Stop the logcat process while no activity of the app is started, and resume reading after
+   * the last line read when an activity starts. Violations logged meanwhile are reported late,
+   * unless logcat has dropped them from its buffer.
+   */
+  public synchronized NotifierConfig setBackgroundPauseEnabled(boolean backgroundPauseEnabled) {
+    snapshot = snapshot.newBuilder().setBackgroundPauseEnabled(backgroundPauseEnabled).build();
+    return this;
+  }
+
+  public RetentionPolicy getRetentionPolicy() {
+    return snapshot.retentionPolicy;
+  }
+
+  /**
+   * How many stored violations to keep. {@link RetentionPolicy#DEFAULT} by default.
+   */
+  public synchronized NotifierConfig setRetentionPolicy(RetentionPolicy retentionPolicy) {
+    snapshot = snapshot.newBuilder().setRetentionPolicy(retentionPolicy).build();
+    return this;
+  }
+
+  public boolean isViolationTypeEnabled(ViolationType violationType) {
+    return snapshot.isViolationTypeEnabled(violationType);
+  }
+
+  /**
+   * Violations of a disabled type are neither stored nor notified. All types are enabled by
+   * default.
+   */
+  public synchronized NotifierConfig setViolationTypeEnabled(ViolationType violationType,
+      boolean enabled) {
+    snapshot = snapshot.newBuilder().setViolationTypeEnabled(violationType, enabled).build();
+    return this;
+  }
+
+  /**
+   * Classify logs that contain the exception class name as the violation type.
+   *
+   * @param className e.g. "android.os.strictmode.DiskReadViolation"
+   */
+  public synchronized NotifierConfig addExceptionClass(String className,
+      ViolationType violationType) {
+    snapshot = snapshot.newBuilder().addExceptionClass(className, violationType).build();
+    return this;
+  }
+
+  /**
+   * @return an unmodifiable copy of the app's exception classes at the time of the call.
+   */
+  public Map<String, ViolationType> getExceptionClasses() {
+    return snapshot.exceptionClasses;
   }
 
-  public NotifierConfig setHeadupEnabled(boolean headupEnabled) {
-    this.headupEnabled = headupEnabled;
+  /**
+   * Classify logs detected by the detector as the violation type.
+   * Detectors added here take precedence over the built-in ones.
+   */
+  public synchronized NotifierConfig addDetector(ViolationType violationType, Detector detector) {
+    snapshot = snapshot.newBuilder().addDetector(violationType, detector).build();
     return this;
   }
+
+  /**
+   * @return an unmodifiable copy of the app's detectors at the time of the call.
+   */
+  public Map<ViolationType, Detector> getDetectors() {
+    return snapshot.detectors;
+  }
+
+  /**
+   * Immutable settings. The collections are unmodifiable copies.
+   */
+  public static final class Snapshot {
+    public final List<CustomAction> customActions;
+    public final IgnoreAction ignoreAction;
+    public final boolean debugMode;
+    public final boolean headupEnabled;
+    public final boolean groupedNotificationsEnabled;
+    public final long notificationIntervalMillis;
+    public final long dedupeWindowMillis;
+    public final boolean mainThreadMonitorEnabled;
+    public final long slowCallThresholdMillis;
+    public final boolean streamServerEnabled;
+    public final boolean backgroundPauseEnabled;
+    public final RetentionPolicy retentionPolicy;
+    public final Set<ViolationType> disabledTypes;
+    public final Map<String, ViolationType> exceptionClasses;
+    public final Map<ViolationType, Detector> detectors;
+
+    private Snapshot(Builder builder) {
+      customActions = Collections.unmodifiableList(new ArrayList<>(builder.customActions));
+      ignoreAction = builder.ignoreAction;
+      debugMode = builder.debugMode;
+      headupEnabled = builder.headupEnabled;
+      groupedNotificationsEnabled = builder.groupedNotificationsEnabled;
+      notificationIntervalMillis = builder.notificationIntervalMillis;
+      dedupeWindowMillis = builder.dedupeWindowMillis;
+      mainThreadMonitorEnabled = builder.mainThreadMonitorEnabled;
+      slowCallThresholdMillis = builder.slowCallThresholdMillis;
+      streamServerEnabled = builder.streamServerEnabled;
+      backgroundPauseEnabled = builder.backgroundPauseEnabled;
+      retentionPolicy = builder.retentionPolicy;
+      disabledTypes = Collections.unmodifiableSet(EnumSet.copyOf(builder.disabledTypes));
+      exceptionClasses = Collections.unmodifiableMap(new HashMap<>(builder.exceptionClasses));
+      detectors = Collections.unmodifiableMap(new LinkedHashMap<>(builder.detectors));
+    }
+
+    public Builder newBuilder() {
+      return new Builder(this);
+    }
+
+    public boolean isViolationTypeEnabled(ViolationType violationType) {
+      return violationType == null || !disabledTypes.contains(violationType);
+    }
+
+    public static final class Builder {
+      private List<CustomAction> customActions = new ArrayList<>();
+      private IgnoreAction ignoreAction;
+      private boolean debugMode;
+      private boolean headupEnabled = true;
+      private boolean groupedNotificationsEnabled = false;
+      private long notificationIntervalMillis = 1000;
+      private long dedupeWindowMillis = 0;
+      private boolean mainThreadMonitorEnabled = false;
+      private long slowCallThresholdMillis = 16;
+      private boolean streamServerEnabled = false;
+      private boolean backgroundPauseEnabled = false;
+      private RetentionPolicy retentionPolicy = RetentionPolicy.DEFAULT;
+      private EnumSet<ViolationType> disabledTypes = EnumSet.noneOf(ViolationType.class);
+      private Map<String, ViolationType> exceptionClasses = new HashMap<>();
+      private Map<ViolationType, Detector> detectors = new LinkedHashMap<>();
+
+      public Builder() {
+      }
+
+      Builder(Snapshot snapshot) {
+        customActions = new ArrayList<>(snapshot.customActions);
+        ignoreAction = snapshot.ignoreAction;
+        debugMode = snapshot.debugMode;
+        headupEnabled = snapshot.headupEnabled;
+        groupedNotificationsEnabled = snapshot.groupedNotificationsEnabled;
+        notificationIntervalMillis = snapshot.notificationIntervalMillis;
+        dedupeWindowMillis = snapshot.dedupeWindowMillis;
+        mainThreadMonitorEnabled = snapshot.mainThreadMonitorEnabled;
+        slowCallThresholdMillis = snapshot.slowCallThresholdMillis;
+        streamServerEnabled = snapshot.streamServerEnabled;
+        backgroundPauseEnabled = snapshot.backgroundPauseEnabled;
+        retentionPolicy = snapshot.retentionPolicy;
+        disabledTypes = EnumSet.noneOf(ViolationType.class);
+        disabledTypes.addAll(snapshot.disabledTypes);
+        exceptionClasses = new HashMap<>(snapshot.exceptionClasses);
+        detectors = new LinkedHashMap<>(snapshot.detectors);
+      }
+
+      public Builder addCustomAction(CustomAction customAction) {
+        customActions.add(customAction);
+        return this;
+      }
+
+      public Builder removeCustomAction(CustomAction customAction) {
+        customActions.remove(customAction);
+        return this;
+      }
+
+      public Builder setIgnoreAction(IgnoreAction ignoreAction) {
+        this.ignoreAction = ignoreAction;
+        return this;
+      }
+
+      public Builder setDebugMode(boolean debugMode) {
+        this.debugMode = debugMode;
+        return this;
+      }
+
+      public Builder setHeadupEnabled(boolean headupEnabled) {
+        this.headupEnabled = headupEnabled;
+        return this;
+      }
+
+      public Builder setGroupedNotificationsEnabled(boolean groupedNotificationsEnabled) {
+        this.groupedNotificationsEnabled = groupedNotificationsEnabled;
+        return this;
+      }
+
+      public Builder setNotificationIntervalMillis(long notificationIntervalMillis) {
+        this.notificationIntervalMillis = notificationIntervalMillis;
+        return this;
+      }
+
+      public Builder setDedupeWindowMillis(long dedupeWindowMillis) {
+        this.dedupeWindowMillis = dedupeWindowMillis;
+        return this;
+      }
+
+      public Builder setMainThreadMonitorEnabled(boolean mainThreadMonitorEnabled) {
+        this.mainThreadMonitorEnabled = mainThreadMonitorEnabled;
+        return this;
+      }
+
+      public Builder setSlowCallThresholdMillis(long slowCallThresholdMillis) {
+        this.slowCallThresholdMillis = slowCallThresholdMillis;
+        return this;
+      }
+
+      public Builder setStreamServerEnabled(boolean streamServerEnabled) {
+        this.streamServerEnabled = streamServerEnabled;
+        return this;
+      }
+
+      public Builder setBackgroundPauseEnabled(boolean backgroundPauseEnabled) {
+        this.backgroundPauseEnabled = backgroundPauseEnabled;
+        return this;
+      }
+
+      public Builder setRetentionPolicy(RetentionPolicy retentionPolicy) {
+        if (retentionPolicy == null) {
+          throw new NullPointerException("retentionPolicy == null");
+        }
+        this.retentionPolicy = retentionPolicy;
+        return this;
+      }
+
+      public Builder setViolationTypeEnabled(ViolationType violationType, boolean enabled) {
+        if (enabled) {
+          disabledTypes.remove(violationType);
+        } else {
+          disabledTypes.add(violationType);
+        }
+        return this;
+      }
+
+      public Builder addExceptionClass(String className, ViolationType violationType) {
+        exceptionClasses.put(className, violationType);
+        return this;
+      }
+
+      public Builder addDetector(ViolationType violationType, Detector detector) {
+        detectors.put(violationType, detector);
+        return this;
+      }
+
+      public Snapshot build() {
+        return new Snapshot(this);
+      }
+    }
+  }
 }
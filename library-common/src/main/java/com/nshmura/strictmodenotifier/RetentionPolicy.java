@@ -0,0 +1,102 @@
+package com.nshmura.strictmodenotifier;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * How many stored violations to keep. 0 means no limit.
+ *
+ * <pre>
+ * new RetentionPolicy.Builder()
+ *     .setMaxAge(7, TimeUnit.DAYS)
+ *     .setMaxBytes(20 * 1024 * 1024)
+ *     .setMaxCount(ViolationType.NETWORK, 1000)
+ *     .setMaxCount(ViolationType.LEAKED_CLOSABLE_OBJECTS, 100)
+ *     .build();
+ * </pre>
+ *
+ * The age and the bytes are applied per segment of {@link SegmentedViolationLog}, so up to one
+ * segment more than the limit may be kept. The counts are exact.
+ */
+public final class RetentionPolicy {
+
+  public static final RetentionPolicy DEFAULT = new Builder()
+      .setMaxCount(1000)
+      .setMaxBytes(4 * 1024 * 1024)
+      .build();
+
+  public final long maxAgeMillis;
+  public final int maxCount;
+  public final long maxBytes;
+  public final Map<ViolationType, Integer> maxCountPerType;
+
+  private RetentionPolicy(Builder builder) {
+    maxAgeMillis = builder.maxAgeMillis;
+    maxCount = builder.maxCount;
+    maxBytes = builder.maxBytes;
+    maxCountPerType = Collections.unmodifiableMap(
+        new EnumMap<ViolationType, Integer>(builder.maxCountPerType));
+  }
+
+  public Builder newBuilder() {
+    return new Builder(this);
+  }
+
+  /**
+   * @return the max count of the type, or 0 if the type has no limit of its own.
+   */
+  public int getMaxCount(ViolationType violationType) {
+    Integer max = violationType != null ? maxCountPerType.get(violationType) : null;
+    return max != null ? max : 0;
+  }
+
+  public static final class Builder {
+    private long maxAgeMillis;
+    private int maxCount;
+    private long maxBytes;
+    private EnumMap<ViolationType, Integer> maxCountPerType = new EnumMap<>(ViolationType.class);
+
+    public Builder() {
+    }
+
+    Builder(RetentionPolicy policy) {
+      maxAgeMillis = policy.maxAgeMillis;
+      maxCount = policy.maxCount;
+      maxBytes = policy.maxBytes;
+      maxCountPerType.putAll(policy.maxCountPerType);
+    }
+
+    public Builder setMaxAge(long duration, TimeUnit unit) {
+      maxAgeMillis = unit.toMillis(duration);
+      return this;
+    }
+
+    public Builder setMaxCount(int maxCount) {
+      this.maxCount = maxCount;
+      return this;
+    }
+
+    public Builder setMaxBytes(long maxBytes) {
+      this.maxBytes = maxBytes;
+      return this;
+    }
+
+    /**
+     * Keep the newest violations of the type only. Applied in addition to the total count.
+     */
+    public Builder setMaxCount(ViolationType violationType, int maxCount) {
+      if (maxCount > 0) {
+        maxCountPerType.put(violationType, maxCount);
+      } else {
+        maxCountPerType.remove(violationType);
+      }
+      return this;
+    }
+
+    public RetentionPolicy build() {
+      return new RetentionPolicy(this);
+    }
+  }
+}
@@ -0,0 +1,330 @@
+package com.nshmura.strictmodenotifier;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.List;
+
+/**
+ * Violations in time-bucketed segments, each of which is a {@link MappedViolationLog} file.
+ *
+ * A violation is appended to the newest segment, unless the segment is of another time bucket or
+ * is full, in which case a new segment is created. A segment is never appended when full, so it
+ * keeps every record it was given, and the oldest violations are removed by deleting whole
+ * segments. See {@link #applyRetention}.
+ *
+ * Segment files are named "seq_bucketStart.seg". Ids are unique across the segments. The segments
+ * share one {@link ViolationCompressor}.
+ *
+ * This class is not thread safe.
+ */
+public class SegmentedViolationLog {
+
+  static final String SUFFIX = ".seg";
+
+  private final File dir;
+  private final long bucketMillis;
+  private final int slotCount;
+  private final int payloadCapacity;
+  private final ViolationCompressor compressor = new ViolationCompressor();
+
+  /** Oldest first. */
+  private final List<Segment> segments = new ArrayList<>();
+  private long nextSeq;
+  private long nextId = 1;
+
+  private static class Segment {
+    final long seq;
+    final long bucketStart;
+    final MappedViolationLog log;
+    long minId = Long.MAX_VALUE;
+    long maxId = Long.MIN_VALUE;
+
+    Segment(long seq, long bucketStart, MappedViolationLog log) {
+      this.seq = seq;
+      this.bucketStart = bucketStart;
+      this.log = log;
+    }
+
+    void add(long id) {
+      minId = Math.min(minId, id);
+      maxId = Math.max(maxId, id);
+    }
+
+    boolean mayContain(long id) {
+      return id >= minId && id <= maxId;
+    }
+  }
+
+  /**
+   * Open the segments in the directory, or create the directory.
+   *
+   * @param bucketMillis time span of a segment.
+   * @param slotCount slots of a new segment.
+   * @param payloadCapacity payload bytes of a new segment.
+   */
+  public static SegmentedViolationLog open(File dir, long bucketMillis, int slotCount,
+      int payloadCapacity) throws IOException {
+    return new SegmentedViolationLog(dir, bucketMillis, slotCount, payloadCapacity);
+  }
+
+  private SegmentedViolationLog(File dir, long bucketMillis, int slotCount, int payloadCapacity)
+      throws IOException {
+    this.dir = dir;
+    this.bucketMillis = bucketMillis;
+    this.slotCount = slotCount;
+    this.payloadCapacity = payloadCapacity;
+
+    if (!dir.isDirectory() && !dir.mkdirs()) {
+      throw new IOException("cannot create " + dir);
+    }
+    File[] files = dir.listFiles();
+    if (files != null) {
+      for (File file : files) {
+        openSegment(file);
+      }
+    }
+    Collections.sort(segments, new Comparator<Segment>() {
+      @Override public int compare(Segment a, Segment b) {
+        return a.seq < b.seq ? -1 : (a.seq == b.seq ? 0 : 1);
+      }
+    });
+  }
+
+  private void openSegment(File file) {
+    String name = file.getName();
+    int separator = name.indexOf('_');
+    if (!name.endsWith(SUFFIX) || separator < 0) {
+      return;
+    }
+    long seq;
+    long bucketStart;
+    try {
+      seq = Long.parseLong(name.substring(0, separator));
+      bucketStart = Long.parseLong(name.substring(separator + 1, name.length() - SUFFIX.length()));
+    } catch (NumberFormatException e) {
+      return;
+    }
+    MappedViolationLog log;
+    try {
+      log = MappedViolationLog.open(file, slotCount, payloadCapacity, compressor);
+    } catch (IOException e) {
+      file.delete();
+      return;
+    }
+    Segment segment = new Segment(seq, bucketStart, log);
+    MappedViolationLog.Index index = log.index();
+    for (int i = 0; i < index.size(); i++) {
+      segment.add(index.getId(i));
+    }
+    // ids of deleted records are not reused either
+    nextId = Math.max(nextId, segment.maxId + 1);
+    nextSeq = Math.max(nextSeq, seq + 1);
+    segments.add(segment);
+  }
+
+  public File getDir() {
+    return dir;
+  }
+
+  /**
+   * @return the appended violation that has a new id.
+   * @throws IOException if the violation is too large for a segment.
+   */
+  public StrictModeViolation append(StrictModeViolation violation) throws IOException {
+    long bucketStart = violation.time - violation.time % bucketMillis;
+    Segment segment = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+    if (segment == null || segment.bucketStart != bucketStart || segment.log.isFull()) {
+      segment = createSegment(bucketStart);
+    }
+    StrictModeViolation stored = segment.log.append(violation.newBuilder().setId(nextId).build());
+    segment.add(stored.id);
+    nextId = stored.id + 1;
+    return stored;
+  }
+
+  private Segment createSegment(long bucketStart) throws IOException {
+    long seq = nextSeq++;
+    File file = new File(dir, seq + "_" + bucketStart + SUFFIX);
+    Segment segment = new Segment(seq, bucketStart,
+        MappedViolationLog.open(file, slotCount, payloadCapacity, compressor));
+    segments.add(segment);
+    return segment;
+  }
+
+  /**
+   * @return the violation of the id, or null.
+   */
+  public StrictModeViolation get(long id) throws IOException {
+    for (int i = segments.size() - 1; i >= 0; i--) {
+      Segment segment = segments.get(i);
+      if (segment.mayContain(id)) {
+        StrictModeViolation violation = segment.log.get(id);
+        if (violation != null) {
+          return violation;
+        }
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Mark the record of the id as deleted.
+   *
+   * @return true if the record was found.
+   */
+  public boolean delete(long id) {
+    for (int i = segments.size() - 1; i >= 0; i--) {
+      Segment segment = segments.get(i);
+      if (segment.mayContain(id) && segment.log.delete(id)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Delete all segments. Ids are not reused.
+   */
+  public void clear() {
+    while (!segments.isEmpty()) {
+      drop(0);
+    }
+  }
+
+  /**
+   * @return the live records of all segments, newest first.
+   */
+  public MappedViolationLog.Index index() {
+    List<MappedViolationLog.Index> indexes = new ArrayList<>(segments.size());
+    for (int i = segments.size() - 1; i >= 0; i--) {
+      indexes.add(segments.get(i).log.index());
+    }
+    return MappedViolationLog.Index.concat(indexes);
+  }
+
+  /**
+   * @return all violations, newest first.
+   */
+  public ArrayList<StrictModeViolation> getAll() throws IOException {
+    MappedViolationLog.Index index = index();
+    ArrayList<StrictModeViolation> violations = new ArrayList<>(index.size());
+    for (int i = 0; i < index.size(); i++) {
+      violations.add(index.get(i));
+    }
+    return violations;
+  }
+
+  public int getSegmentCount() {
+    return segments.size();
+  }
+
+  /**
+   * @return bytes written to the segment files.
+   */
+  public long getUsedBytes() {
+    long bytes = 0;
+    for (Segment segment : segments) {
+      bytes += segment.log.getUsedBytes();
+    }
+    return bytes;
+  }
+
+  public void force() {
+    if (!segments.isEmpty()) {
+      segments.get(segments.size() - 1).log.force();
+    }
+  }
+
+  public void close() throws IOException {
+    for (Segment segment : segments) {
+      segment.log.close();
+    }
+    segments.clear();
+    compressor.end();
+  }
+
+  /**
+   * Take one step of the policy: drop a segment, or mark up to maxDeletes records as deleted.
+   * Call again while it returns true, so that the work can be spread over several turns.
+   *
+   * @param now the current time, to apply the max age.
+   * @return true if something was removed. Nothing is left to do when it returns false.
+   */
+  public boolean applyRetention(RetentionPolicy policy, long now, int maxDeletes) {
+    // expired buckets
+    if (policy.maxAgeMillis > 0) {
+      for (int i = 0; i < segments.size(); i++) {
+        if (segments.get(i).bucketStart + bucketMillis <= now - policy.maxAgeMillis) {
+          drop(i);
+          return true;
+        }
+      }
+    }
+
+    // the oldest segments over the bytes. the newest segment is kept.
+    if (policy.maxBytes > 0 && segments.size() > 1 && getUsedBytes() > policy.maxBytes) {
+      drop(0);
+      return true;
+    }
+
+    // segments whose records are all deleted
+    int total = 0;
+    for (int i = 0; i < segments.size(); i++) {
+      int live = segments.get(i).log.getLiveCount();
+      if (live == 0 && i < segments.size() - 1) {
+        drop(i);
+        return true;
+      }
+      total += live;
+    }
+
+    if (policy.maxCount > 0 && total > policy.maxCount && segments.size() > 1) {
+      if (total - segments.get(0).log.getLiveCount() >= policy.maxCount) {
+        drop(0);
+        return true;
+      }
+    }
+    if (policy.maxCountPerType.isEmpty() && (policy.maxCount <= 0 || total <= policy.maxCount)) {
+      return false;
+    }
+
+    // the records over the counts, newest first
+    MappedViolationLog.Index index = index();
+    int deleted = 0;
+    EnumMap<ViolationType, Integer> counts = new EnumMap<>(ViolationType.class);
+    for (int i = 0; i < index.size() && deleted < maxDeletes; i++) {
+      boolean over = policy.maxCount > 0 && i >= policy.maxCount;
+      ViolationType type = index.getViolationType(i);
+      int max = policy.getMaxCount(type);
+      if (max > 0) {
+        Integer count = counts.get(type);
+        int n = count != null ? count + 1 : 1;
+        counts.put(type, n);
+        over |= n > max;
+      }
+      if (over) {
+        index.delete(i);
+        deleted++;
+      }
+    }
+    return deleted > 0;
+  }
+
+  /**
+   * Close the segment and delete its file. An index taken before can still read the segment, as
+   * its mapping stays valid until it is collected and the compressor is shared.
+   */
+  private void drop(int position) {
+    Segment segment = segments.remove(position);
+    try {
+      segment.log.close();
+    } catch (IOException e) {
+      // the file is deleted anyway
+    }
+    segment.log.getFile().delete();
+  }
+}
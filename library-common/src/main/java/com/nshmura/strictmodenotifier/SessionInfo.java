@@ -0,0 +1,19 @@
+package com.nshmura.strictmodenotifier;
+
+/**
+ * The app build and the process that violations are reported from.
+ */
+public class SessionInfo {
+
+  public static final SessionInfo UNKNOWN = new SessionInfo(0, null, null);
+
+  public final long versionCode;
+  public final String buildFingerprint;
+  public final String sessionId;
+
+  public SessionInfo(long versionCode, String buildFingerprint, String sessionId) {
+    this.versionCode = versionCode;
+    this.buildFingerprint = buildFingerprint;
+    this.sessionId = sessionId;
+  }
+}
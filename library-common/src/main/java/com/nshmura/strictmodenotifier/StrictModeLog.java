@@ -0,0 +1,150 @@
+package com.nshmura.strictmodenotifier;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+public class StrictModeLog {
+
+  // "D/StrictMode( 1234):" of `-v time`, or " 1234  1250 D StrictMode:" of `-v threadtime`
+  private static final Pattern PARSE_PATTERN = Pattern.compile(
+      "(?:([0-9]+) +([0-9]+) [VDIWEFA] )?(StrictMode|System\\.err)(?:\\( *([0-9]+)\\))?:");
+
+  public final String tag;
+  public final String message;
+  public final long time;
+  /** Process id of the line. 0 if unknown. */
+  public final int pid;
+  /** Thread id of the line. 0 if unknown, e.g. the line is of `logcat -v time`. */
+  public final int tid;
+
+  public StrictModeLog(String tag, String message, long time) {
+    this(tag, message, time, 0, 0);
+  }
+
+  public StrictModeLog(String tag, String message, long time, int pid, int tid) {
+    this.tag = tag;
+    this.message = message;
+    this.time = time;
+    this.pid = pid;
+    this.tid = tid;
+  }
+
+  /**
+   * Parse a line of `logcat -v time` or `logcat -v threadtime` output.
+   *
+   * @return StrictModeLog whose tag is "StrictMode" or "System.err", or null if the line is not a
+   * StrictMode or System.err line.
+   */
+  public static StrictModeLog parse(String line, long time) {
+    Parser parser = new Parser();
+    return parser.match(line) ? parser.toLog(time) : null;
+  }
+
+  /**
+   * @return a copy whose message is replaced.
+   */
+  public StrictModeLog withMessage(String message) {
+    return new StrictModeLog(tag, message, time, pid, tid);
+  }
+
+  public boolean isAt() {
+    return isAt(message, 0);
+  }
+
+  /**
+   * @return true if the text from the index is whitespace followed by "at", like "\tat ...".
+   */
+  static boolean isAt(CharSequence text, int start) {
+    int i = start;
+    while (i < text.length() && Character.isWhitespace(text.charAt(i))) {
+      i++;
+    }
+    return i > start && startsWith(text, "at", i);
+  }
+
+  static boolean startsWith(CharSequence text, String prefix, int start) {
+    if (start < 0 || start + prefix.length() > text.length()) {
+      return false;
+    }
+    for (int i = 0; i < prefix.length(); i++) {
+      if (text.charAt(start + i) != prefix.charAt(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Reusable parser of a thread. A line is matched without allocation, so that the caller can
+   * decide to drop it before its message is copied by {@link #toLog}. The line may be a view of
+   * a buffer, e.g. of {@link LogcatReader}, that is valid until toLog is called.
+   */
+  static final class Parser {
+    private static final String STRICT_MODE = "StrictMode";
+    private static final String SYSTEM_ERR = "System.err";
+
+    private final Matcher matcher = PARSE_PATTERN.matcher("");
+    private CharSequence line;
+    private String tag;
+    private int messageStart;
+    private int pid;
+    private int tid;
+
+    /**
+     * @return true if the line is a StrictMode or System.err line.
+     */
+    boolean match(CharSequence line) {
+      this.line = null;
+      matcher.reset(line);
+      if (!matcher.find()) {
+        return false;
+      }
+      int end = matcher.end();
+      int length = line.length() - end;
+      if (length == 0 || length == 4 && startsWith(line, "null", end)) {
+        return false;
+      }
+      this.line = line;
+      tag = startsWith(line, SYSTEM_ERR, matcher.start(3)) ? SYSTEM_ERR : STRICT_MODE;
+      messageStart = end;
+      if (matcher.start(2) >= 0) {
+        pid = parseInt(line, matcher.start(1), matcher.end(1));
+        tid = parseInt(line, matcher.start(2), matcher.end(2));
+      } else if (matcher.start(4) >= 0) {
+        pid = parseInt(line, matcher.start(4), matcher.end(4));
+        tid = 0;
+      } else {
+        pid = 0;
+        tid = 0;
+      }
+      return true;
+    }
+
+    /**
+     * @return the tag of the matched line, "StrictMode" or "System.err".
+     */
+    String tag() {
+      return tag;
+    }
+
+    boolean isAt() {
+      return StrictModeLog.isAt(line, messageStart);
+    }
+
+    StrictModeLog toLog(long time) {
+      String message = line.subSequence(messageStart, line.length()).toString();
+      return new StrictModeLog(tag, message, time, pid, tid);
+    }
+
+    private static int parseInt(CharSequence text, int start, int end) {
+      if (end - start > 9) {
+        return 0;
+      }
+      int value = 0;
+      for (int i = start; i < end; i++) {
+        value = value * 10 + (text.charAt(i) - '0');
+      }
+      return value;
+    }
+  }
+}
@@ -1,32 +1,73 @@
 package com.nshmura.strictmodenotifier;
 
-import android.content.Context;
-import android.text.format.DateUtils;
 import java.io.Serializable;
 import java.util.ArrayList;
 
-import static android.text.format.DateUtils.FORMAT_SHOW_DATE;
-import static android.text.format.DateUtils.FORMAT_SHOW_TIME;
-
 public class StrictModeViolation implements Serializable {
 
+  // keep reports stored by java serialization of the older versions readable
+  private static final long serialVersionUID = -4474902038129005770L;
+
+  /** Stable id assigned by the store. 0 if not stored. */
+  public final long id;
   public final ViolationType violationType;
   public final String message;
   public final String logKey;
   public final ArrayList<String> stacktreace;
   public final long time;
 
+  /** versionCode of the app that reported this violation. 0 if unknown. */
+  public final long versionCode;
+  /** android.os.Build.FINGERPRINT of the device. null if unknown. */
+  public final String buildFingerprint;
+  /** Identifies the process that reported this violation. null if unknown. */
+  public final String sessionId;
+
+  /** How long the main thread was blocked by this violation. 0 if unknown. */
+  public final long blockedMillis;
+  /** Frames dropped while the main thread was blocked. */
+  public final int droppedFrames;
+
+  /**
+   * When this violation happened on the clock of systrace and Perfetto (CLOCK_BOOTTIME,
+   * SystemClock.elapsedRealtimeNanos()). 0 if unknown.
+   */
+  public final long traceTimeNanos;
+
+  /** Id of the thread that caused this violation. 0 if unknown. */
+  public final int tid;
+  /** Name of the thread that caused this violation. null if unknown. */
+  public final String threadName;
+
   public StrictModeViolation(ViolationType violationType, String message, String logKey,
       ArrayList<String> stacktreace, long time) {
-    this.violationType = violationType;
-    this.message = message;
-    this.logKey = logKey;
-    this.stacktreace = stacktreace;
-    this.time = time;
+    this(new Builder()
+        .setViolationType(violationType)
+        .setMessage(message)
+        .setLogKey(logKey)
+        .setStacktreace(stacktreace)
+        .setTime(time));
   }
 
-  public String getDateText(Context context) {
-    return DateUtils.formatDateTime(context, time, FORMAT_SHOW_TIME | FORMAT_SHOW_DATE);
+  private StrictModeViolation(Builder builder) {
+    this.id = builder.id;
+    this.violationType = builder.violationType;
+    this.message = builder.message;
+    this.logKey = builder.logKey;
+    this.stacktreace = builder.stacktreace;
+    this.time = builder.time;
+    this.versionCode = builder.versionCode;
+    this.buildFingerprint = builder.buildFingerprint;
+    this.sessionId = builder.sessionId;
+    this.blockedMillis = builder.blockedMillis;
+    this.droppedFrames = builder.droppedFrames;
+    this.traceTimeNanos = builder.traceTimeNanos;
+    this.tid = builder.tid;
+    this.threadName = builder.threadName;
+  }
+
+  public Builder newBuilder() {
+    return new Builder(this);
   }
 
   public String getStacktraceText() {
@@ -39,4 +80,122 @@ public class StrictModeViolation implements Serializable {
     }
     return builder.toString();
   }
+
+  public static class Builder {
+    private long id;
+    private ViolationType violationType;
+    private String message;
+    private String logKey;
+    private ArrayList<String> stacktreace = new ArrayList<>();
+    private long time;
+    private long versionCode;
+    private String buildFingerprint;
+    private String sessionId;
+    private long blockedMillis;
+    private int droppedFrames;
+    private long traceTimeNanos;
+    private int tid;
+    private String threadName;
+
+    public Builder() {
+    }
+
+    Builder(StrictModeViolation violation) {
+      id = violation.id;
+      violationType = violation.violationType;
+      message = violation.message;
+      logKey = violation.logKey;
+      stacktreace = violation.stacktreace;
+      time = violation.time;
+      versionCode = violation.versionCode;
+      buildFingerprint = violation.buildFingerprint;
+      sessionId = violation.sessionId;
+      blockedMillis = violation.blockedMillis;
+      droppedFrames = violation.droppedFrames;
+      traceTimeNanos = violation.traceTimeNanos;
+      tid = violation.tid;
+      threadName = violation.threadName;
+    }
+
+    public Builder setId(long id) {
+      this.id = id;
+      return this;
+    }
+
+    public Builder setViolationType(ViolationType violationType) {
+      this.violationType = violationType;
+      return this;
+    }
+
+    public Builder setMessage(String message) {
+      this.message = message;
+      return this;
+    }
+
+    public Builder setLogKey(String logKey) {
+      this.logKey = logKey;
+      return this;
+    }
+
+    public Builder setStacktreace(ArrayList<String> stacktreace) {
+      this.stacktreace = stacktreace;
+      return this;
+    }
+
+    public Builder setTime(long time) {
+      this.time = time;
+      return this;
+    }
+
+    public Builder setSessionInfo(SessionInfo sessionInfo) {
+      this.versionCode = sessionInfo.versionCode;
+      this.buildFingerprint = sessionInfo.buildFingerprint;
+      this.sessionId = sessionInfo.sessionId;
+      return this;
+    }
+
+    public Builder setVersionCode(long versionCode) {
+      this.versionCode = versionCode;
+      return this;
+    }
+
+    public Builder setBuildFingerprint(String buildFingerprint) {
+      this.buildFingerprint = buildFingerprint;
+      return this;
+    }
+
+    public Builder setSessionId(String sessionId) {
+      this.sessionId = sessionId;
+      return this;
+    }
+
+    public Builder setBlockedMillis(long blockedMillis) {
+      this.blockedMillis = blockedMillis;
+      return this;
+    }
+
+    public Builder setDroppedFrames(int droppedFrames) {
+      this.droppedFrames = droppedFrames;
+      return this;
+    }
+
+    public Builder setTraceTimeNanos(long traceTimeNanos) {
+      this.traceTimeNanos = traceTimeNanos;
+      return this;
+    }
+
+    public Builder setTid(int tid) {
+      this.tid = tid;
+      return this;
+    }
+
+    public Builder setThreadName(String threadName) {
+      this.threadName = threadName;
+      return this;
+    }
+
+    public StrictModeViolation build() {
+      return new StrictModeViolation(this);
+    }
+  }
 }
@@ -0,0 +1,136 @@
+package com.nshmura.strictmodenotifier;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Counts violations and their cost per thread group, e.g. "main", "RenderThread", "Binder:N_N"
+ * or "pool-N-thread-N".
+ *
+ * Groups are kept in an open addressing table whose slots are claimed by compareAndSet, and the
+ * counters of each slot are updated atomically. Threads that report violations of different groups
+ * touch different slots, and no lock is taken. Groups that do not fit into the table are counted
+ * as {@link #OTHER}.
+ */
+public final class ThreadHotspots {
+
+  public static final String UNKNOWN = "unknown";
+  public static final String OTHER = "other";
+
+  static final int CAPACITY = 64;
+
+  private static final int COUNT = 0;
+  private static final int BLOCKED_MILLIS = 1;
+  private static final int DROPPED_FRAMES = 2;
+  private static final int FIELDS = 3;
+
+  private final AtomicReferenceArray<String> groups = new AtomicReferenceArray<>(CAPACITY + 1);
+  private final AtomicLongArray counters = new AtomicLongArray((CAPACITY + 1) * FIELDS);
+
+  public static class Entry {
+    public final String group;
+    public final long count;
+    public final long blockedMillis;
+    public final long droppedFrames;
+
+    Entry(String group, long count, long blockedMillis, long droppedFrames) {
+      this.group = group;
+      this.count = count;
+      this.blockedMillis = blockedMillis;
+      this.droppedFrames = droppedFrames;
+    }
+  }
+
+  public ThreadHotspots() {
+    groups.set(CAPACITY, OTHER);
+  }
+
+  public void record(StrictModeViolation violation) {
+    record(violation.threadName, violation.blockedMillis, violation.droppedFrames);
+  }
+
+  public void record(String threadName, long blockedMillis, int droppedFrames) {
+    int slot = slotOf(group(threadName));
+    int base = slot * FIELDS;
+    counters.incrementAndGet(base + COUNT);
+    if (blockedMillis > 0) {
+      counters.addAndGet(base + BLOCKED_MILLIS, blockedMillis);
+    }
+    if (droppedFrames > 0) {
+      counters.addAndGet(base + DROPPED_FRAMES, droppedFrames);
+    }
+  }
+
+  private int slotOf(String group) {
+    int start = (group.hashCode() & 0x7fffffff) % CAPACITY;
+    for (int i = 0; i < CAPACITY; i++) {
+      int slot = (start + i) % CAPACITY;
+      String current = groups.get(slot);
+      if (current == null) {
+        if (groups.compareAndSet(slot, null, group)) {
+          return slot;
+        }
+        current = groups.get(slot);
+      }
+      if (current.equals(group)) {
+        return slot;
+      }
+    }
+    return CAPACITY;
+  }
+
+  /**
+   * @return the groups sorted by the count, the largest first.
+   */
+  public List<Entry> snapshot() {
+    List<Entry> entries = new ArrayList<>();
+    for (int slot = 0; slot <= CAPACITY; slot++) {
+      String group = groups.get(slot);
+      int base = slot * FIELDS;
+      long count = counters.get(base + COUNT);
+      if (group != null && count > 0) {
+        entries.add(new Entry(group, count, counters.get(base + BLOCKED_MILLIS),
+            counters.get(base + DROPPED_FRAMES)));
+      }
+    }
+    Collections.sort(entries, new Comparator<Entry>() {
+      @Override public int compare(Entry lhs, Entry rhs) {
+        return lhs.count < rhs.count ? 1 : (lhs.count == rhs.count ? 0 : -1);
+      }
+    });
+    return entries;
+  }
+
+  /**
+   * @return the name of the thread with digits replaced by "N", so that threads of a pool are
+   * counted together.
+   */
+  static String group(String threadName) {
+    if (threadName == null || threadName.length() == 0) {
+      return UNKNOWN;
+    }
+    StringBuilder builder = null;
+    boolean inDigits = false;
+    for (int i = 0; i < threadName.length(); i++) {
+      char c = threadName.charAt(i);
+      boolean digit = c >= '0' && c <= '9';
+      if (digit && builder == null) {
+        builder = new StringBuilder(threadName.length());
+        builder.append(threadName, 0, i);
+      }
+      if (builder != null) {
+        if (!digit) {
+          builder.append(c);
+        } else if (!inDigits) {
+          builder.append('N');
+        }
+      }
+      inDigits = digit;
+    }
+    return builder != null ? builder.toString() : threadName;
+  }
+}
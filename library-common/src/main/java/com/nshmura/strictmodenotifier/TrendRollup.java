@@ -0,0 +1,236 @@
+package com.nshmura.strictmodenotifier;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Violation counts per fingerprint, rolled up per app build (versionCode).
+ *
+ * The rollup is kept apart from the raw violations, so it survives clearing the store and
+ * answers build comparisons without reading the raw violations.
+ *
+ * A build keeps up to {@link #MAX_ENTRIES} fingerprints. A new fingerprint beyond that replaces
+ * the least counted one, so that a flood of distinct violations does not grow the file.
+ *
+ * This class is not thread safe.
+ */
+public class TrendRollup {
+
+  private static final int MAGIC = 0x534d4e54; // "SMNT"
+  private static final int VERSION = 1;
+  private static final int MAX_BUILDS = 20;
+  public static final int MAX_ENTRIES = 500;
+
+  public static class Entry {
+    public final long fingerprint;
+    public final ViolationType violationType;
+    public final String message;
+    public int count;
+
+    Entry(long fingerprint, ViolationType violationType, String message, int count) {
+      this.fingerprint = fingerprint;
+      this.violationType = violationType;
+      this.message = message;
+      this.count = count;
+    }
+  }
+
+  public static class Comparison {
+    public final long baseVersionCode;
+    public final long targetVersionCode;
+    /** Violations that are found in the target build only. */
+    public final List<Entry> added = new ArrayList<>();
+    /** Violations that are found in the base build only. */
+    public final List<Entry> removed = new ArrayList<>();
+    /** Count of the target build minus count of the base build. */
+    public final Map<ViolationType, Integer> countDiffs = new EnumMap<>(ViolationType.class);
+
+    Comparison(long baseVersionCode, long targetVersionCode) {
+      this.baseVersionCode = baseVersionCode;
+      this.targetVersionCode = targetVersionCode;
+    }
+  }
+
+  private final TreeMap<Long, Map<Long, Entry>> builds = new TreeMap<>();
+
+  public void add(StrictModeViolation violation) {
+    Map<Long, Entry> entries = builds.get(violation.versionCode);
+    if (entries == null) {
+      entries = new HashMap<>();
+      builds.put(violation.versionCode, entries);
+      while (builds.size() > MAX_BUILDS) {
+        builds.remove(builds.firstKey());
+      }
+    }
+
+    long fingerprint = ViolationFingerprint.of(violation);
+    Entry entry = entries.get(fingerprint);
+    if (entry == null) {
+      if (entries.size() >= MAX_ENTRIES) {
+        removeLeastCounted(entries);
+      }
+      // as decode() reads them, and EnumMap has no null key
+      ViolationType type = violation.violationType != null ? violation.violationType
+          : ViolationType.UNKNOWN;
+      entry = new Entry(fingerprint, type, violation.message, 0);
+      entries.put(fingerprint, entry);
+    }
+    entry.count++;
+  }
+
+  private static void removeLeastCounted(Map<Long, Entry> entries) {
+    Entry least = null;
+    for (Entry entry : entries.values()) {
+      if (least == null || entry.count < least.count) {
+        least = entry;
+      }
+    }
+    if (least != null) {
+      entries.remove(least.fingerprint);
+    }
+  }
+
+  /**
+   * @return versionCodes in ascending order.
+   */
+  public List<Long> getVersionCodes() {
+    return new ArrayList<>(builds.keySet());
+  }
+
+  /**
+   * @return the versionCode of the newest build before the given one, or null.
+   */
+  public Long getPreviousVersionCode(long versionCode) {
+    return builds.lowerKey(versionCode);
+  }
+
+  public Map<Long, Entry> getEntries(long versionCode) {
+    Map<Long, Entry> entries = builds.get(versionCode);
+    return entries != null ? Collections.unmodifiableMap(entries)
+        : Collections.<Long, Entry>emptyMap();
+  }
+
+  public Map<ViolationType, Integer> countByType(long versionCode) {
+    Map<ViolationType, Integer> counts = new EnumMap<>(ViolationType.class);
+    for (Entry entry : getEntries(versionCode).values()) {
+      Integer count = counts.get(entry.violationType);
+      counts.put(entry.violationType, (count != null ? count : 0) + entry.count);
+    }
+    return counts;
+  }
+
+  public Comparison compare(long baseVersionCode, long targetVersionCode) {
+    Map<Long, Entry> base = getEntries(baseVersionCode);
+    Map<Long, Entry> target = getEntries(targetVersionCode);
+
+    Comparison comparison = new Comparison(baseVersionCode, targetVersionCode);
+    for (Entry entry : target.values()) {
+      if (!base.containsKey(entry.fingerprint)) {
+        comparison.added.add(entry);
+      }
+    }
+    for (Entry entry : base.values()) {
+      if (!target.containsKey(entry.fingerprint)) {
+        comparison.removed.add(entry);
+      }
+    }
+
+    Map<ViolationType, Integer> baseCounts = countByType(baseVersionCode);
+    Map<ViolationType, Integer> targetCounts = countByType(targetVersionCode);
+    for (ViolationType type : ViolationType.values()) {
+      Integer baseCount = baseCounts.get(type);
+      Integer targetCount = targetCounts.get(type);
+      int diff = (targetCount != null ? targetCount : 0) - (baseCount != null ? baseCount : 0);
+      if (diff != 0) {
+        comparison.countDiffs.put(type, diff);
+      }
+    }
+    return comparison;
+  }
+
+  public byte[] encode() throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(bytes);
+    out.writeInt(MAGIC);
+    out.writeByte(VERSION);
+    out.writeInt(builds.size());
+    for (Map.Entry<Long, Map<Long, Entry>> build : builds.entrySet()) {
+      out.writeLong(build.getKey());
+      out.writeInt(build.getValue().size());
+      for (Entry entry : build.getValue().values()) {
+        out.writeLong(entry.fingerprint);
+        out.writeUTF(entry.violationType != null ? entry.violationType.name() : "");
+        out.writeUTF(truncate(entry.message));
+        out.writeInt(entry.count);
+      }
+    }
+    out.flush();
+    return bytes.toByteArray();
+  }
+
+  /**
+   * @throws IOException if the data is not an encoded rollup, or is broken.
+   */
+  public static TrendRollup decode(byte[] data) throws IOException {
+    DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+    if (in.readInt() != MAGIC) {
+      throw new IOException("not a trend rollup");
+    }
+    int version = in.readByte();
+    if (version > VERSION) {
+      throw new IOException("unsupported version: " + version);
+    }
+
+    TrendRollup rollup = new TrendRollup();
+    int buildCount = in.readInt();
+    if (buildCount < 0 || buildCount > MAX_BUILDS) {
+      throw new IOException("broken build count: " + buildCount);
+    }
+    for (int i = 0; i < buildCount; i++) {
+      long versionCode = in.readLong();
+      int entryCount = in.readInt();
+      if (entryCount < 0 || entryCount > MAX_ENTRIES) {
+        throw new IOException("broken entry count: " + entryCount);
+      }
+      Map<Long, Entry> entries = new HashMap<>(entryCount * 2);
+      for (int j = 0; j < entryCount; j++) {
+        long fingerprint = in.readLong();
+        ViolationType type = toViolationType(in.readUTF());
+        String message = in.readUTF();
+        int count = in.readInt();
+        if (count < 0) {
+          throw new IOException("broken count: " + count);
+        }
+        entries.put(fingerprint, new Entry(fingerprint, type, message, count));
+      }
+      rollup.builds.put(versionCode, entries);
+    }
+    return rollup;
+  }
+
+  private static String truncate(String message) {
+    if (message == null) {
+      return "";
+    }
+    // writeUTF is limited to 64KB, and the summary does not need long messages.
+    return message.length() > 200 ? message.substring(0, 200) : message;
+  }
+
+  private static ViolationType toViolationType(String name) {
+    try {
+      return ViolationType.valueOf(name);
+    } catch (IllegalArgumentException e) {
+      return ViolationType.UNKNOWN;
+    }
+  }
+}
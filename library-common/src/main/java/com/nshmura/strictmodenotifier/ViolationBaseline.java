@@ -0,0 +1,101 @@
+package com.nshmura.strictmodenotifier;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Set of known violation fingerprints that should not be reported again.
+ *
+ * The baseline file is a sorted list of hex fingerprints, one per line. Lines starting with '#'
+ * are comments.
+ *
+ * @see ViolationFingerprint
+ */
+public class ViolationBaseline {
+
+  public static final ViolationBaseline EMPTY = new ViolationBaseline(new HashSet<Long>());
+
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+  private static final String HEADER = "# strictmode-notifier baseline v1";
+
+  private final Set<Long> fingerprints;
+
+  private ViolationBaseline(Set<Long> fingerprints) {
+    this.fingerprints = fingerprints;
+  }
+
+  public boolean contains(long fingerprint) {
+    return fingerprints.contains(fingerprint);
+  }
+
+  public boolean contains(StrictModeViolation violation) {
+    return !fingerprints.isEmpty() && contains(ViolationFingerprint.of(violation));
+  }
+
+  public int size() {
+    return fingerprints.size();
+  }
+
+  public boolean isEmpty() {
+    return fingerprints.isEmpty();
+  }
+
+  public static ViolationBaseline read(InputStream in) throws IOException {
+    Set<Long> fingerprints = new HashSet<>();
+    BufferedReader reader = new BufferedReader(new InputStreamReader(in, UTF_8));
+    try {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        line = line.trim();
+        if (line.length() == 0 || line.charAt(0) == '#') {
+          continue;
+        }
+        try {
+          fingerprints.add(ViolationFingerprint.fromHex(line));
+        } catch (NumberFormatException e) {
+          //ignore broken line
+        }
+      }
+    } finally {
+      reader.close();
+    }
+    return new ViolationBaseline(fingerprints);
+  }
+
+  /**
+   * Write the fingerprints of this baseline and the given violations as a new baseline file.
+   */
+  public void write(Collection<StrictModeViolation> violations, OutputStream out)
+      throws IOException {
+    Set<Long> merged = new HashSet<>(fingerprints);
+    for (StrictModeViolation violation : violations) {
+      merged.add(ViolationFingerprint.of(violation));
+    }
+
+    long[] sorted = new long[merged.size()];
+    int i = 0;
+    for (Long fingerprint : merged) {
+      sorted[i++] = fingerprint;
+    }
+    Arrays.sort(sorted);
+
+    Writer writer = new OutputStreamWriter(out, UTF_8);
+    writer.write(HEADER);
+    writer.write('\n');
+    for (long fingerprint : sorted) {
+      writer.write(ViolationFingerprint.toHex(fingerprint));
+      writer.write('\n');
+    }
+    writer.flush();
+  }
+}
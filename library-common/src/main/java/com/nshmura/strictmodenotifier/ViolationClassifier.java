@@ -0,0 +1,294 @@
+package com.nshmura.strictmodenotifier;
+
+import com.nshmura.strictmodenotifier.detector.ActivityLeaksDetector;
+import com.nshmura.strictmodenotifier.detector.ClassInstanceLimitDetector;
+import com.nshmura.strictmodenotifier.detector.CleartextNetworkDetector;
+import com.nshmura.strictmodenotifier.detector.Detector;
+import com.nshmura.strictmodenotifier.detector.FileUriExposureDetector;
+import com.nshmura.strictmodenotifier.detector.LeakedClosableObjectsDetector;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Decides the {@link ViolationType} of a frame of logs.
+ *
+ * The violation line of StrictMode contains the class name of the violation, e.g.
+ * "StrictMode policy violation; ~duration=5 ms: android.os.strictmode.DiskReadViolation".
+ * Class names are looked up in a table, so the cost does not grow with the number of types.
+ * Logs without a known class name fall back to the message {@link Detector}s.
+ *
+ * Apps can extend the table with {@link NotifierConfig#addExceptionClass} and
+ * {@link NotifierConfig#addDetector}. App detectors are checked first.
+ *
+ * {@link #isSelfViolation} tells the violations caused by this library, e.g. by its
+ * SharedPreferences, Binder calls or notification icons, from the violations of the app.
+ *
+ * This class is not thread safe. It is used by a {@link ViolationEngine}.
+ */
+public class ViolationClassifier {
+
+  // frames of these packages are skipped to find the frame that triggered a violation
+  private static final String[] PLATFORM_PACKAGES = {
+      "android.", "androidx.", "com.android.", "dalvik.", "java.", "javax.", "kotlin.",
+      "kotlinx.", "libcore.", "sun.",
+  };
+  // e.g. "com.nshmura.strictmodenotifier."
+  private static final String LIBRARY_PACKAGE = ViolationClassifier.class.getName()
+      .substring(0, ViolationClassifier.class.getName().lastIndexOf('.') + 1);
+  // sub packages of the library. the other ones, e.g. ".testapp.", are apps.
+  private static final String[] LIBRARY_SUB_PACKAGES = {
+      LIBRARY_PACKAGE + "detector.",
+  };
+
+  // the built-in table only. not used by classify(), so it is safe to share.
+  private static final ViolationClassifier BUILT_IN = new ViolationClassifier(null);
+
+  private final NotifierConfig notifierConfig;
+  private final Map<String, ViolationType> exceptionClasses = new HashMap<>();
+  private final Map<ViolationType, Detector> fallbackDetectors = new LinkedHashMap<>();
+  private final ViolationType[] fallbackTypes;
+  private final Detector[] fallbackDetectorArray;
+  private final Detector activityLeaksDetector = new ActivityLeaksDetector();
+
+  // String.hashCode() of the class names, to look up tokens without creating strings
+  private final int[] builtInHashes;
+  private Map<String, ViolationType> appClassesOfHashes;
+  private int[] appHashes = new int[0];
+
+  public ViolationClassifier(NotifierConfig notifierConfig) {
+    this.notifierConfig = notifierConfig;
+
+    // ThreadPolicy
+    register(ViolationType.CUSTOM_SLOW_CALL,
+        "android.os.StrictMode$StrictModeCustomViolation",
+        "android.os.strictmode.CustomViolation");
+    register(ViolationType.NETWORK,
+        "android.os.StrictMode$StrictModeNetworkViolation",
+        "android.os.strictmode.NetworkViolation");
+    register(ViolationType.RESOURCE_MISMATCHES,
+        "android.os.StrictMode$StrictModeResourceMismatchViolation",
+        "android.os.strictmode.ResourceMismatchViolation");
+    register(ViolationType.DISK_READ,
+        "android.os.StrictMode$StrictModeDiskReadViolation",
+        "android.os.strictmode.DiskReadViolation");
+    register(ViolationType.DISK_WRITE,
+        "android.os.StrictMode$StrictModeDiskWriteViolation",
+        "android.os.strictmode.DiskWriteViolation");
+    register(ViolationType.UNBUFFERED_IO,
+        "android.os.StrictMode$StrictModeUnbufferedIOViolation",
+        "android.os.strictmode.UnbufferedIoViolation");
+
+    // VmPolicy
+    register(ViolationType.CLASS_INSTANCE_LIMIT,
+        "android.os.StrictMode$InstanceCountViolation",
+        "android.os.strictmode.InstanceCountViolation");
+    register(ViolationType.CLEARTEXT_NETWORK,
+        "android.os.strictmode.CleartextNetworkViolation");
+    register(ViolationType.FILE_URI_EXPOSURE,
+        "android.os.FileUriExposedException",
+        "android.os.strictmode.FileUriExposedViolation");
+    register(ViolationType.LEAKED_CLOSABLE_OBJECTS,
+        "android.os.strictmode.LeakedClosableViolation");
+    register(ViolationType.LEAKED_REGISTRATION_OBJECTS,
+        "android.app.IntentReceiverLeaked",
+        "android.app.ServiceConnectionLeaked",
+        "android.os.strictmode.IntentReceiverLeakedViolation",
+        "android.os.strictmode.ServiceConnectionLeakedViolation");
+    register(ViolationType.LEAKED_SQL_LITE_OBJECTS,
+        "android.database.sqlite.DatabaseObjectNotClosedException",
+        "android.os.strictmode.SqliteObjectLeakedViolation");
+    register(ViolationType.CONTENT_URI_WITHOUT_PERMISSION,
+        "android.os.strictmode.ContentUriWithoutPermissionViolation");
+    register(ViolationType.UNTAGGED_SOCKET,
+        "android.os.strictmode.UntaggedSocketViolation");
+    register(ViolationType.NON_SDK_API_USED,
+        "android.os.strictmode.NonSdkApiUsedViolation");
+    register(ViolationType.IMPLICIT_DIRECT_BOOT,
+        "android.os.strictmode.ImplicitDirectBootViolation");
+    register(ViolationType.CREDENTIAL_PROTECTED_WHILE_LOCKED,
+        "android.os.strictmode.CredentialProtectedWhileLockedViolation");
+    register(ViolationType.INCORRECT_CONTEXT_USE,
+        "android.os.strictmode.IncorrectContextUseViolation");
+    register(ViolationType.UNSAFE_INTENT_LAUNCH,
+        "android.os.strictmode.UnsafeIntentLaunchViolation");
+
+    // logs of old platforms that have no dedicated class name
+    fallbackDetectors.put(ViolationType.CLASS_INSTANCE_LIMIT, new ClassInstanceLimitDetector());
+    fallbackDetectors.put(ViolationType.CLEARTEXT_NETWORK, new CleartextNetworkDetector());
+    fallbackDetectors.put(ViolationType.FILE_URI_EXPOSURE, new FileUriExposureDetector());
+    fallbackDetectors.put(ViolationType.LEAKED_CLOSABLE_OBJECTS,
+        new LeakedClosableObjectsDetector());
+
+    builtInHashes = hashesOf(exceptionClasses);
+    fallbackTypes = fallbackDetectors.keySet().toArray(new ViolationType[0]);
+    fallbackDetectorArray = fallbackDetectors.values().toArray(new Detector[0]);
+  }
+
+  private static int[] hashesOf(Map<String, ViolationType> classes) {
+    int[] hashes = new int[classes.size()];
+    int i = 0;
+    for (String className : classes.keySet()) {
+      hashes[i++] = className.hashCode();
+    }
+    Arrays.sort(hashes);
+    return hashes;
+  }
+
+  private void register(ViolationType type, String... classNames) {
+    for (String className : classNames) {
+      exceptionClasses.put(className, type);
+    }
+  }
+
+  public ViolationType classify(List<StrictModeLog> logs) {
+    return classify(logs, notifierConfig.snapshot());
+  }
+
+  /**
+   * @param config the settings to classify with, e.g. the settings of the whole violation.
+   */
+  public ViolationType classify(List<StrictModeLog> logs, NotifierConfig.Snapshot config) {
+    //App Detectors
+    Map<ViolationType, Detector> appDetectors = config.detectors;
+    if (!appDetectors.isEmpty()) {
+      for (StrictModeLog log : logs) {
+        for (Map.Entry<ViolationType, Detector> entry : appDetectors.entrySet()) {
+          if (entry.getValue().detect(log)) {
+            return entry.getKey();
+          }
+        }
+      }
+    }
+
+    //Exception classes
+    Map<String, ViolationType> appExceptionClasses = config.exceptionClasses;
+    if (appExceptionClasses != appClassesOfHashes) {
+      appHashes = hashesOf(appExceptionClasses);
+      appClassesOfHashes = appExceptionClasses;
+    }
+    for (int i = 0; i < logs.size(); i++) {
+      StrictModeLog log = logs.get(i);
+      if (log.isAt()) {
+        continue;
+      }
+      ViolationType type = lookupExceptionClass(log.message, appExceptionClasses);
+      if (type == ViolationType.CLASS_INSTANCE_LIMIT && activityLeaksDetector.detect(log)) {
+        return ViolationType.ACTIVITY_LEAKS;
+      }
+      if (type != null) {
+        return type;
+      }
+    }
+
+    //Fallback
+    for (int i = 0; i < logs.size(); i++) {
+      StrictModeLog log = logs.get(i);
+      for (int j = 0; j < fallbackDetectorArray.length; j++) {
+        if (fallbackDetectorArray[j].detect(log)) {
+          return fallbackTypes[j];
+        }
+      }
+    }
+    return ViolationType.UNKNOWN;
+  }
+
+  /**
+   * Look up the built-in StrictMode class names in a message, without the app entries.
+   * Thread safe.
+   *
+   * @return the type of the first known class name, or null.
+   */
+  public static ViolationType lookupBuiltIn(String message) {
+    return BUILT_IN.lookupExceptionClass(message, Collections.<String, ViolationType>emptyMap());
+  }
+
+  /**
+   * @param stacktreace lines of a violation, e.g. {@link StrictModeViolation#stacktreace}.
+   * @return true if the first frame outside the platform packages is a class of this library.
+   */
+  public boolean isSelfViolation(List<String> stacktreace) {
+    for (int i = 0; i < stacktreace.size(); i++) {
+      String line = stacktreace.get(i);
+      int start = frameStart(line);
+      if (start < 0 || startsWithAny(line, start, PLATFORM_PACKAGES)) {
+        continue;
+      }
+      return isLibraryClass(line, start);
+    }
+    return false;
+  }
+
+  /**
+   * @return the index of the class name of a "\tat ..." line, or -1.
+   */
+  private static int frameStart(String line) {
+    int i = 0;
+    while (i < line.length() && Character.isWhitespace(line.charAt(i))) {
+      i++;
+    }
+    return i > 0 && line.startsWith("at ", i) ? i + 3 : -1;
+  }
+
+  private static boolean isLibraryClass(String line, int start) {
+    if (!line.startsWith(LIBRARY_PACKAGE, start)) {
+      return false;
+    }
+    // classes of the root package start with an upper case letter
+    int next = start + LIBRARY_PACKAGE.length();
+    return next < line.length() && Character.isUpperCase(line.charAt(next))
+        || startsWithAny(line, start, LIBRARY_SUB_PACKAGES);
+  }
+
+  private static boolean startsWithAny(String line, int start, String[] prefixes) {
+    for (String prefix : prefixes) {
+      if (line.startsWith(prefix, start)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Look up each dotted token of the message, e.g. "android.os.strictmode.DiskReadViolation:".
+   */
+  private ViolationType lookupExceptionClass(String message,
+      Map<String, ViolationType> appExceptionClasses) {
+    int length = message.length();
+    int start = 0;
+    while (start < length) {
+      while (start < length && !isClassNameChar(message.charAt(start))) {
+        start++;
+      }
+      int end = start;
+      boolean dotted = false;
+      int hash = 0;
+      while (end < length && isClassNameChar(message.charAt(end))) {
+        char c = message.charAt(end);
+        dotted |= c == '.';
+        hash = 31 * hash + c;
+        end++;
+      }
+      if (dotted && (Arrays.binarySearch(builtInHashes, hash) >= 0
+          || Arrays.binarySearch(appHashes, hash) >= 0)) {
+        String token = message.substring(start, end);
+        ViolationType type = appExceptionClasses.get(token);
+        if (type == null) {
+          type = exceptionClasses.get(token);
+        }
+        if (type != null) {
+          return type;
+        }
+      }
+      start = end;
+    }
+    return null;
+  }
+
+  private static boolean isClassNameChar(char c) {
+    return Character.isJavaIdentifierPart(c) || c == '.' || c == '$';
+  }
+}
@@ -0,0 +1,167 @@
+package com.nshmura.strictmodenotifier;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compact binary format of {@link StrictModeViolation}s for the store.
+ *
+ * list   := MAGIC(int) VERSION(byte) count(int) record*
+ * record := type(string) message(string) logKey(string) time(long) lines(int) line(string)*
+ *           versionCode(long) buildFingerprint(string) sessionId(string)   (since version 2)
+ *           blockedMillis(long) droppedFrames(int)                          (since version 3)
+ *           id(long)                                                        (since version 4)
+ *           traceTimeNanos(long)                                            (since version 5)
+ *           tid(int) threadName(string)                                     (since version 6)
+ * string := length(int, -1 for null) utf8 bytes
+ */
+public final class ViolationCodec {
+
+  private static final int MAGIC = 0x534d4e43; // "SMNC"
+  static final int VERSION = 6;
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+  private ViolationCodec() {
+  }
+
+  public static boolean isEncoded(byte[] data) {
+    return data.length >= 4
+        && ((data[0] & 0xff) << 24 | (data[1] & 0xff) << 16 | (data[2] & 0xff) << 8
+        | (data[3] & 0xff)) == MAGIC;
+  }
+
+  public static byte[] encodeList(List<StrictModeViolation> violations) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(bytes);
+    out.writeInt(MAGIC);
+    out.writeByte(VERSION);
+    out.writeInt(violations.size());
+    for (StrictModeViolation violation : violations) {
+      encode(violation, out);
+    }
+    out.flush();
+    return bytes.toByteArray();
+  }
+
+  public static ArrayList<StrictModeViolation> decodeList(byte[] data) throws IOException {
+    DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+    if (in.readInt() != MAGIC) {
+      throw new IOException("not a violation list");
+    }
+    int version = in.readByte();
+    if (version > VERSION) {
+      throw new IOException("unsupported version: " + version);
+    }
+    int count = in.readInt();
+    ArrayList<StrictModeViolation> violations = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      violations.add(decode(in, version));
+    }
+    return violations;
+  }
+
+  public static void encode(StrictModeViolation violation, DataOutput out) throws IOException {
+    writeString(out, violation.violationType != null ? violation.violationType.name() : null);
+    writeString(out, violation.message);
+    writeString(out, violation.logKey);
+    out.writeLong(violation.time);
+    out.writeInt(violation.stacktreace.size());
+    for (String line : violation.stacktreace) {
+      writeString(out, line);
+    }
+    out.writeLong(violation.versionCode);
+    writeString(out, violation.buildFingerprint);
+    writeString(out, violation.sessionId);
+    out.writeLong(violation.blockedMillis);
+    out.writeInt(violation.droppedFrames);
+    out.writeLong(violation.id);
+    out.writeLong(violation.traceTimeNanos);
+    out.writeInt(violation.tid);
+    writeString(out, violation.threadName);
+  }
+
+  public static StrictModeViolation decode(DataInput in) throws IOException {
+    return decode(in, VERSION);
+  }
+
+  /**
+   * Decode a record written by the given version of {@link #encode}.
+   */
+  static StrictModeViolation decode(DataInput in, int version) throws IOException {
+    ViolationType violationType = toViolationType(readString(in));
+    String message = readString(in);
+    String logKey = readString(in);
+    long time = in.readLong();
+    int lineCount = in.readInt();
+    ArrayList<String> stacktreace = new ArrayList<>(lineCount);
+    for (int i = 0; i < lineCount; i++) {
+      stacktreace.add(readString(in));
+    }
+    StrictModeViolation.Builder builder = new StrictModeViolation.Builder()
+        .setViolationType(violationType)
+        .setMessage(message)
+        .setLogKey(logKey)
+        .setStacktreace(stacktreace)
+        .setTime(time);
+    if (version >= 2) {
+      builder.setVersionCode(in.readLong())
+          .setBuildFingerprint(readString(in))
+          .setSessionId(readString(in));
+    }
+    if (version >= 3) {
+      builder.setBlockedMillis(in.readLong())
+          .setDroppedFrames(in.readInt());
+    }
+    if (version >= 4) {
+      builder.setId(in.readLong());
+    }
+    if (version >= 5) {
+      builder.setTraceTimeNanos(in.readLong());
+    }
+    if (version >= 6) {
+      builder.setTid(in.readInt())
+          .setThreadName(readString(in));
+    }
+    return builder.build();
+  }
+
+  private static ViolationType toViolationType(String name) {
+    if (name == null) {
+      return null;
+    }
+    try {
+      return ViolationType.valueOf(name);
+    } catch (IllegalArgumentException e) {
+      // written by a newer version
+      return ViolationType.UNKNOWN;
+    }
+  }
+
+  private static void writeString(DataOutput out, String value) throws IOException {
+    if (value == null) {
+      out.writeInt(-1);
+      return;
+    }
+    byte[] bytes = value.getBytes(UTF_8);
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  private static String readString(DataInput in) throws IOException {
+    int length = in.readInt();
+    if (length < 0) {
+      return null;
+    }
+    byte[] bytes = new byte[length];
+    in.readFully(bytes);
+    return new String(bytes, UTF_8);
+  }
+}
@@ -0,0 +1,232 @@
+package com.nshmura.strictmodenotifier;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compresses encoded violations with deflate and a preset dictionary of the frames that most
+ * StrictMode stack traces share.
+ *
+ * <pre>
+ * data := RAW(byte) bytes
+ *       | DEFLATE(byte) length(int) deflated
+ *       | DICTIONARY(byte) length(int) deflated   (deflated with {@link #DICTIONARY})
+ * </pre>
+ *
+ * The dictionary is part of the format: change it only together with the DICTIONARY flag.
+ *
+ * This class is not thread safe.
+ */
+public class ViolationCompressor {
+
+  static final byte RAW = 0;
+  static final byte DEFLATE = 1;
+  static final byte DICTIONARY = 2;
+
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+  /**
+   * Common frames and texts, the most frequent last as deflate prefers close matches.
+   */
+  private static final String[] FRAMES = {
+      "UNBUFFERED_IO", "UNTAGGED_SOCKET", "NON_SDK_API_USED", "CONTENT_URI_WITHOUT_PERMISSION",
+      "CLEARTEXT_NETWORK", "FILE_URI_EXPOSURE", "LEAKED_CLOSABLE_OBJECTS",
+      "CLASS_INSTANCE_LIMIT", "ACTIVITY_LEAKS", "RESOURCE_MISMATCHES", "CUSTOM_SLOW_CALL",
+      "NETWORK", "DISK_WRITE", "DISK_READ",
+      "\tat android.app.Instrumentation.callApplicationOnCreate(Instrumentation.java:",
+      "\tat android.app.ActivityThread.handleBindApplication(ActivityThread.java:",
+      "\tat android.app.Instrumentation.callActivityOnCreate(Instrumentation.java:",
+      "\tat android.app.ActivityThread.performLaunchActivity(ActivityThread.java:",
+      "\tat android.app.ActivityThread.handleLaunchActivity(ActivityThread.java:",
+      "\tat android.app.servertransaction.LaunchActivityItem.execute(LaunchActivityItem.java:",
+      "\tat android.app.servertransaction.TransactionExecutor.executeCallbacks"
+          + "(TransactionExecutor.java:",
+      "\tat android.app.servertransaction.TransactionExecutor.execute(TransactionExecutor.java:",
+      "\tat android.app.ActivityThread$H.handleMessage(ActivityThread.java:",
+      "\tat android.app.Activity.performCreate(Activity.java:",
+      "\tat android.app.Activity.performResume(Activity.java:",
+      "\tat android.app.SharedPreferencesImpl.awaitLoadedLocked(SharedPreferencesImpl.java:",
+      "\tat android.app.SharedPreferencesImpl.getString(SharedPreferencesImpl.java:",
+      "\tat android.app.SharedPreferencesImpl$EditorImpl.commit(SharedPreferencesImpl.java:",
+      "\tat android.app.ContextImpl.getSharedPreferences(ContextImpl.java:",
+      "\tat android.content.ContextWrapper.getSharedPreferences(ContextWrapper.java:",
+      "\tat android.database.sqlite.SQLiteConnection.nativeExecuteForCursorWindow(Native Method)",
+      "\tat android.database.sqlite.SQLiteDatabase.rawQueryWithFactory(SQLiteDatabase.java:",
+      "\tat android.database.sqlite.SQLiteOpenHelper.getDatabaseLocked(SQLiteOpenHelper.java:",
+      "\tat java.io.FileOutputStream.<init>(FileOutputStream.java:",
+      "\tat java.io.FileOutputStream.write(FileOutputStream.java:",
+      "\tat java.io.FileInputStream.<init>(FileInputStream.java:",
+      "\tat java.io.FileInputStream.read(FileInputStream.java:",
+      "\tat java.io.File.exists(File.java:",
+      "\tat java.io.UnixFileSystem.getBooleanAttributes(UnixFileSystem.java:",
+      "\tat libcore.io.BlockGuardOs.write(BlockGuardOs.java:",
+      "\tat libcore.io.BlockGuardOs.read(BlockGuardOs.java:",
+      "\tat libcore.io.BlockGuardOs.open(BlockGuardOs.java:",
+      "\tat libcore.io.BlockGuardOs.access(BlockGuardOs.java:",
+      "\tat libcore.io.BlockGuardOs.stat(BlockGuardOs.java:",
+      "\tat libcore.io.IoBridge.open(IoBridge.java:",
+      "\tat java.net.InetAddress.getAllByName(InetAddress.java:",
+      "\tat java.net.Socket.connect(Socket.java:",
+      "\tat libcore.io.BlockGuardOs.connect(BlockGuardOs.java:",
+      "\tat dalvik.system.CloseGuard.open(CloseGuard.java:",
+      "\tat android.os.StrictMode$AndroidCloseGuardReporter.report(StrictMode.java:",
+      "\tat android.os.StrictMode.onVmPolicyViolation(StrictMode.java:",
+      "\tat android.os.StrictMode$AndroidBlockGuardPolicy.onNetwork(StrictMode.java:",
+      "\tat android.os.StrictMode$AndroidBlockGuardPolicy.onWriteToDisk(StrictMode.java:",
+      "\tat android.os.StrictMode$AndroidBlockGuardPolicy.onReadFromDisk(StrictMode.java:",
+      "android.os.strictmode.LeakedClosableViolation: A resource was acquired at attached stack "
+          + "trace but never released. See java.io.Closeable for information on avoiding "
+          + "resource leaks.",
+      "android.os.strictmode.NetworkViolation",
+      "android.os.strictmode.DiskWriteViolation",
+      "android.os.strictmode.DiskReadViolation",
+      "android.os.StrictMode$StrictModeNetworkViolation: policy=",
+      "android.os.StrictMode$StrictModeDiskWriteViolation: policy=",
+      "android.os.StrictMode$StrictModeDiskReadViolation: policy=",
+      "StrictMode policy violation; ~duration=",
+      "StrictMode policy violation: ",
+      "\tat com.android.internal.os.ZygoteInit.main(ZygoteInit.java:",
+      "\tat com.android.internal.os.RuntimeInit$MethodAndArgsCaller.run(RuntimeInit.java:",
+      "\tat com.android.internal.os.ZygoteInit$MethodAndArgsCaller.run(ZygoteInit.java:",
+      "\tat java.lang.reflect.Method.invoke(Native Method)",
+      "\tat android.app.ActivityThread.main(ActivityThread.java:",
+      "\tat android.os.Looper.loop(Looper.java:",
+      "\tat android.os.Looper.loopOnce(Looper.java:",
+      "\tat android.os.Handler.dispatchMessage(Handler.java:",
+      "\tat android.os.Handler.handleCallback(Handler.java:",
+      " ms: ",
+  };
+
+  static final byte[] DICTIONARY_BYTES = buildDictionary();
+
+  private final boolean useDictionary;
+  private final Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION, true);
+  private final Inflater inflater = new Inflater(true);
+  private byte[] buffer = new byte[4096];
+
+  public ViolationCompressor() {
+    this(true);
+  }
+
+  /**
+   * @param useDictionary false to compress with plain deflate.
+   */
+  public ViolationCompressor(boolean useDictionary) {
+    this.useDictionary = useDictionary;
+  }
+
+  /**
+   * @return the compressed data, or the data with the RAW flag if deflate does not pay.
+   */
+  public byte[] compress(byte[] data) {
+    deflater.reset();
+    if (useDictionary) {
+      deflater.setDictionary(DICTIONARY_BYTES);
+    }
+    deflater.setInput(data);
+    deflater.finish();
+
+    int length = 0;
+    while (!deflater.finished()) {
+      if (length == buffer.length) {
+        buffer = grow(buffer, length);
+      }
+      length += deflater.deflate(buffer, length, buffer.length - length);
+    }
+
+    if (length + 4 >= data.length) {
+      byte[] raw = new byte[data.length + 1];
+      raw[0] = RAW;
+      System.arraycopy(data, 0, raw, 1, data.length);
+      return raw;
+    }
+    byte[] compressed = new byte[length + 5];
+    compressed[0] = useDictionary ? DICTIONARY : DEFLATE;
+    putInt(compressed, 1, data.length);
+    System.arraycopy(buffer, 0, compressed, 5, length);
+    return compressed;
+  }
+
+  public byte[] decompress(byte[] data) throws IOException {
+    return decompress(data, 0, data.length);
+  }
+
+  public byte[] decompress(byte[] data, int offset, int length) throws IOException {
+    if (length < 1) {
+      throw new IOException("empty data");
+    }
+    byte flag = data[offset];
+    if (flag == RAW) {
+      byte[] raw = new byte[length - 1];
+      System.arraycopy(data, offset + 1, raw, 0, raw.length);
+      return raw;
+    }
+    if ((flag != DEFLATE && flag != DICTIONARY) || length < 5) {
+      throw new IOException("unknown compression: " + flag);
+    }
+    int rawLength = getInt(data, offset + 1);
+    if (rawLength < 0) {
+      throw new IOException("broken length: " + rawLength);
+    }
+
+    inflater.reset();
+    if (flag == DICTIONARY) {
+      inflater.setDictionary(DICTIONARY_BYTES);
+    }
+    inflater.setInput(data, offset + 5, length - 5);
+    byte[] raw = new byte[rawLength];
+    try {
+      int inflated = 0;
+      while (inflated < rawLength) {
+        int count = inflater.inflate(raw, inflated, rawLength - inflated);
+        if (count == 0 && (inflater.finished() || inflater.needsInput())) {
+          break;
+        }
+        inflated += count;
+      }
+      if (inflated != rawLength) {
+        throw new IOException("truncated data");
+      }
+    } catch (DataFormatException e) {
+      throw new IOException(e.getMessage());
+    }
+    return raw;
+  }
+
+  /**
+   * Release the native memory of deflate.
+   */
+  public void end() {
+    deflater.end();
+    inflater.end();
+  }
+
+  private static byte[] buildDictionary() {
+    StringBuilder builder = new StringBuilder();
+    for (String frame : FRAMES) {
+      builder.append(frame).append('\n');
+    }
+    return builder.toString().getBytes(UTF_8);
+  }
+
+  private static byte[] grow(byte[] buffer, int length) {
+    byte[] grown = new byte[buffer.length * 2];
+    System.arraycopy(buffer, 0, grown, 0, length);
+    return grown;
+  }
+
+  private static void putInt(byte[] data, int offset, int value) {
+    data[offset] = (byte) (value >>> 24);
+    data[offset + 1] = (byte) (value >>> 16);
+    data[offset + 2] = (byte) (value >>> 8);
+    data[offset + 3] = (byte) value;
+  }
+
+  private static int getInt(byte[] data, int offset) {
+    return (data[offset] & 0xff) << 24 | (data[offset + 1] & 0xff) << 16
+        | (data[offset + 2] & 0xff) << 8 | (data[offset + 3] & 0xff);
+  }
+}
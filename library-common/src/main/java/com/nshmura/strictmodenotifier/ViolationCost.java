@@ -0,0 +1,84 @@
+package com.nshmura.strictmodenotifier;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Ranking of violations by the main thread time they cost.
+ */
+public final class ViolationCost {
+
+  private ViolationCost() {
+  }
+
+  /**
+   * Sort the violations so that the violation that blocked the main thread longest in total comes
+   * first. Violations with the same fingerprint are summed up, and the newer one comes first in
+   * the same group.
+   */
+  public static void sortByCumulativeCost(List<StrictModeViolation> violations) {
+    final Map<StrictModeViolation, Long> fingerprints = new HashMap<>();
+    final Map<Long, Long> costs = new HashMap<>();
+    for (StrictModeViolation violation : violations) {
+      long fingerprint = ViolationFingerprint.of(violation);
+      fingerprints.put(violation, fingerprint);
+      Long cost = costs.get(fingerprint);
+      costs.put(fingerprint, (cost != null ? cost : 0) + violation.blockedMillis);
+    }
+
+    Collections.sort(violations, new Comparator<StrictModeViolation>() {
+      @Override public int compare(StrictModeViolation lhs, StrictModeViolation rhs) {
+        long lhsFingerprint = fingerprints.get(lhs);
+        long rhsFingerprint = fingerprints.get(rhs);
+        int result = compareLong(costs.get(rhsFingerprint), costs.get(lhsFingerprint));
+        if (result == 0) {
+          result = compareLong(lhsFingerprint, rhsFingerprint);
+        }
+        if (result == 0) {
+          result = compareLong(rhs.time, lhs.time);
+        }
+        return result;
+      }
+    });
+  }
+
+  /**
+   * Same order as {@link #sortByCumulativeCost(List)}, computed from the index fields only.
+   *
+   * @return positions of the index in the order.
+   */
+  public static Integer[] sortByCumulativeCost(final MappedViolationLog.Index index) {
+    final Map<Long, Long> costs = new HashMap<>();
+    Integer[] positions = new Integer[index.size()];
+    for (int i = 0; i < positions.length; i++) {
+      positions[i] = i;
+      long fingerprint = index.getFingerprint(i);
+      Long cost = costs.get(fingerprint);
+      costs.put(fingerprint, (cost != null ? cost : 0) + index.getBlockedMillis(i));
+    }
+
+    Arrays.sort(positions, new Comparator<Integer>() {
+      @Override public int compare(Integer lhs, Integer rhs) {
+        long lhsFingerprint = index.getFingerprint(lhs);
+        long rhsFingerprint = index.getFingerprint(rhs);
+        int result = compareLong(costs.get(rhsFingerprint), costs.get(lhsFingerprint));
+        if (result == 0) {
+          result = compareLong(lhsFingerprint, rhsFingerprint);
+        }
+        if (result == 0) {
+          result = compareLong(index.getTime(rhs), index.getTime(lhs));
+        }
+        return result;
+      }
+    });
+    return positions;
+  }
+
+  private static int compareLong(long lhs, long rhs) {
+    return lhs < rhs ? -1 : (lhs == rhs ? 0 : 1);
+  }
+}
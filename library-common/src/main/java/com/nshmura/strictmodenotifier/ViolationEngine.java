@@ -0,0 +1,471 @@
+package com.nshmura.strictmodenotifier;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Android independent pipeline that turns logcat lines into {@link StrictModeViolation}s.
+ *
+ * parse -> frame -> classify -> self -> ignore -> dedupe -> {@link Callback#onViolation}
+ *
+ * The pending frame is bounded by {@link #setFrameLimits}. Lines beyond the limits are elided
+ * from the middle of the frame, so that the violation keeps its first and last lines.
+ *
+ * System.err frames are kept only if their message lines classify as a known violation.
+ * Stacktrace lines of the other System.err frames are discarded as they are read.
+ *
+ * This class is not thread safe. Callers should serialize {@link #onLine} and {@link #flush}.
+ */
+public class ViolationEngine {
+
+  private static final String EXCEPTION_KEY = "System.err";
+  private static final String DURATION_KEY = "~duration=";
+  static final int MAX_DEDUPE_ENTRIES = 1024;
+
+  public static final int DEFAULT_MAX_FRAME_LINES = 256;
+  public static final int DEFAULT_MAX_FRAME_CHARS = 64 * 1024;
+  static final int MAX_LINE_CHARS = 4 * 1024;
+  static final int TAIL_LINES = 16;
+
+  public static abstract class Callback {
+
+    /**
+     * Called when a violation survived all filters. Store or notify it here.
+     */
+    public abstract void onViolation(StrictModeViolation violation);
+
+    /**
+     * Called instead of {@link #onViolation(StrictModeViolation)} with the settings the violation
+     * was filtered with, to handle it with the same settings. Calls the former by default.
+     */
+    public void onViolation(StrictModeViolation violation, NotifierConfig.Snapshot config) {
+      onViolation(violation);
+    }
+
+    /**
+     * Called when a frame turns out to be a violation, on its first lines. The frame is emitted
+     * after its last line, when the thread may have ended.
+     *
+     * @return the name of the thread, or null if it is not known.
+     */
+    public String getThreadName(int tid) {
+      return null;
+    }
+
+    /**
+     * Called for a violation caused by this library. It is not stored.
+     */
+    public void onSelfViolation(StrictModeViolation violation) {
+    }
+
+    public void onIgnored(StrictModeViolation violation) {
+    }
+
+    public void onBaselineMatched(StrictModeViolation violation) {
+    }
+
+    public void onDuplicated(StrictModeViolation violation) {
+    }
+  }
+
+  public static class Stats {
+    public long lines;
+    public long logs;
+    public long frames;
+    public long violations;
+    /** Violations caused by this library. */
+    public long selfViolations;
+    public long ignored;
+    public long baselineMatched;
+    public long duplicated;
+    /** System.err lines that could not be a part of a violation. */
+    public long discardedLines;
+    /** Lines cut at {@link #MAX_LINE_CHARS}. */
+    public long truncatedLines;
+    /** Lines elided from frames over the limits. */
+    public long elidedLines;
+    /** Frames that lines were elided from. */
+    public long truncatedFrames;
+  }
+
+  private final NotifierConfig notifierConfig;
+  private final ViolationClassifier classifier;
+  private final Callback callback;
+  private final Stats stats = new Stats();
+
+  private int maxFrameLines = DEFAULT_MAX_FRAME_LINES;
+  private int maxFrameChars = DEFAULT_MAX_FRAME_CHARS;
+
+  // the pending frame: head lines, then a ring of the last lines
+  private final StrictModeLog.Parser parser = new StrictModeLog.Parser();
+  private final List<StrictModeLog> frame = new ArrayList<>();
+  // the stacktrace of the frame, copied only for violations that pass the filters
+  private final ArrayList<String> frameLines = new ArrayList<>();
+  private final StrictModeLog[] tail = new StrictModeLog[TAIL_LINES];
+  private int tailStart = 0;
+  private int tailCount = 0;
+  private int frameChars = 0;
+  private int elidedLines = 0;
+  private String frameTag;
+  private boolean frameRelevant;
+  private boolean frameThreadResolved;
+  private String frameThreadName;
+  private boolean prevIsAt = false;
+  private long lastLogTime = 0;
+
+  private ViolationBaseline baseline = ViolationBaseline.EMPTY;
+  private SessionInfo sessionInfo = SessionInfo.UNKNOWN;
+  // fingerprint -> time last seen, the least recently seen first. a storm of distinct
+  // fingerprints evicts the oldest ones, so the map stays at the cap.
+  private final Map<Long, Long> recentFingerprints =
+      new LinkedHashMap<Long, Long>(16, 0.75f, true) {
+        @Override protected boolean removeEldestEntry(Map.Entry<Long, Long> eldest) {
+          return size() > MAX_DEDUPE_ENTRIES;
+        }
+      };
+
+  public ViolationEngine(NotifierConfig notifierConfig, Callback callback) {
+    this(notifierConfig, new ViolationClassifier(notifierConfig), callback);
+  }
+
+  public ViolationEngine(NotifierConfig notifierConfig, ViolationClassifier classifier,
+      Callback callback) {
+    this.notifierConfig = notifierConfig;
+    this.classifier = classifier;
+    this.callback = callback;
+  }
+
+  public void setBaseline(ViolationBaseline baseline) {
+    this.baseline = baseline;
+  }
+
+  public void setSessionInfo(SessionInfo sessionInfo) {
+    this.sessionInfo = sessionInfo;
+  }
+
+  /**
+   * @param maxLines max lines of a frame, including the {@link #TAIL_LINES} last lines.
+   * @param maxChars max chars of the lines before the last lines.
+   */
+  public void setFrameLimits(int maxLines, int maxChars) {
+    if (maxLines <= TAIL_LINES || maxChars <= 0) {
+      throw new IllegalArgumentException("maxLines must be > " + TAIL_LINES
+          + " and maxChars must be > 0");
+    }
+    this.maxFrameLines = maxLines;
+    this.maxFrameChars = maxChars;
+  }
+
+  public Stats getStats() {
+    return stats;
+  }
+
+  /**
+   * Feed a line of `logcat -v time` or `logcat -v threadtime` output. The line may be a view of
+   * a reused buffer, e.g. of {@link LogcatReader}. It is not kept after this call.
+   *
+   * @return true if the line is a StrictMode or System.err log.
+   */
+  public boolean onLine(CharSequence line, long time) {
+    stats.lines++;
+    if (!parser.match(line)) {
+      return false;
+    }
+    // the message is copied only if the line is kept
+    if (admit(parser.tag(), parser.isAt(), time)) {
+      append(parser.toLog(time));
+    }
+    return true;
+  }
+
+  public void onLog(StrictModeLog log) {
+    if (admit(log.tag, log.isAt(), log.time)) {
+      append(log);
+    }
+  }
+
+  /**
+   * Start or end frames for the next log.
+   *
+   * @return true if the log should be appended to the frame, false if it is discarded.
+   */
+  private boolean admit(String tag, boolean isAt, long time) {
+    stats.logs++;
+
+    // a frame ends when a message line follows stacktrace lines, or the tag changes
+    if (hasPendingLogs()) {
+      if (!tag.equals(frameTag)) {
+        if (isAt) {
+          // a stray stacktrace line of the other tag
+          stats.discardedLines++;
+          return false;
+        }
+        emitFrame();
+      } else if (!isAt && prevIsAt) {
+        emitFrame();
+      }
+    }
+
+    if (!hasPendingLogs()) {
+      boolean systemErr = EXCEPTION_KEY.equals(tag);
+      if (isAt && systemErr) {
+        stats.discardedLines++;
+        return false;
+      }
+      frameTag = tag;
+      frameRelevant = !systemErr;
+    }
+    prevIsAt = isAt;
+    lastLogTime = time;
+
+    if (!frameRelevant && isAt) {
+      stats.discardedLines++;
+      return false;
+    }
+    return true;
+  }
+
+  private void append(StrictModeLog log) {
+    appendLine(log);
+    if (!frameRelevant) {
+      frameRelevant = classifier.classify(frame) != ViolationType.UNKNOWN;
+    }
+    if (frameRelevant && !frameThreadResolved) {
+      frameThreadResolved = true;
+      int tid = frame.get(0).tid;
+      frameThreadName = tid > 0 ? callback.getThreadName(tid) : null;
+    }
+  }
+
+  private void appendLine(StrictModeLog log) {
+    if (log.message.length() > MAX_LINE_CHARS) {
+      stats.truncatedLines++;
+      log = log.withMessage(log.message.substring(0, MAX_LINE_CHARS));
+    }
+    int length = log.message.length();
+    if (tailCount == 0 && frame.size() < maxFrameLines - TAIL_LINES
+        && frameChars + length <= maxFrameChars) {
+      frame.add(log);
+      frameChars += length;
+      return;
+    }
+    if (tailCount < TAIL_LINES) {
+      tail[(tailStart + tailCount) % TAIL_LINES] = log;
+      tailCount++;
+    } else {
+      tail[tailStart] = log;
+      tailStart = (tailStart + 1) % TAIL_LINES;
+      elidedLines++;
+      stats.elidedLines++;
+    }
+  }
+
+  /**
+   * Feed a violation that was detected in process, not through logcat.
+   * It is filtered the same way as violations parsed from logcat.
+   */
+  public void onViolation(StrictModeViolation violation) {
+    if (violation.sessionId == null) {
+      violation = violation.newBuilder().setSessionInfo(sessionInfo).build();
+    }
+    NotifierConfig.Snapshot config = notifierConfig.snapshot();
+    violation = accept(violation, config);
+    if (violation != null) {
+      stats.violations++;
+      callback.onViolation(violation, config);
+    }
+  }
+
+  public boolean hasPendingLogs() {
+    return frame.size() > 0 || tailCount > 0;
+  }
+
+  /**
+   * Emit the pending frame if no log has been read for the idle time. The time is measured from
+   * the time of the last log, so use {@link #flush()} for logs read well after they were logged.
+   *
+   * @return true if logs are still pending.
+   */
+  public boolean flush(long now, long idleTime) {
+    if (hasPendingLogs() && now - lastLogTime >= idleTime) {
+      emitFrame();
+    }
+    return hasPendingLogs();
+  }
+
+  /**
+   * Emit the pending frame. Call this at the end of input.
+   */
+  public void flush() {
+    if (hasPendingLogs()) {
+      emitFrame();
+    }
+  }
+
+  private void emitFrame() {
+    stats.frames++;
+    StrictModeViolation violation = null;
+    // one snapshot for the whole violation, so that a concurrent update applies to it or not
+    NotifierConfig.Snapshot config = notifierConfig.snapshot();
+    if (frameRelevant) {
+      if (elidedLines > 0) {
+        stats.truncatedFrames++;
+        frame.add(new StrictModeLog(frameTag, "\t... " + elidedLines + " lines elided",
+            tail[tailStart].time));
+      }
+      for (int i = 0; i < tailCount; i++) {
+        frame.add(tail[(tailStart + i) % TAIL_LINES]);
+      }
+      violation = createViolation(frame, config);
+    } else {
+      stats.discardedLines += frame.size();
+    }
+
+    frame.clear();
+    for (int i = 0; i < TAIL_LINES; i++) {
+      tail[i] = null;
+    }
+    tailStart = 0;
+    tailCount = 0;
+    frameChars = 0;
+    elidedLines = 0;
+    prevIsAt = false;
+    frameThreadResolved = false;
+    frameThreadName = null;
+
+    if (violation != null) {
+      violation = accept(violation, config);
+    }
+    if (violation != null) {
+      stats.violations++;
+      callback.onViolation(detach(violation), config);
+    }
+    frameLines.clear();
+  }
+
+  /**
+   * @return the violation with its own stacktrace, if it has {@link #frameLines}. The reused
+   * buffer is never handed to code outside of the engine.
+   */
+  private StrictModeViolation detach(StrictModeViolation violation) {
+    if (violation.stacktreace != frameLines) {
+      return violation;
+    }
+    return violation.newBuilder().setStacktreace(new ArrayList<>(frameLines)).build();
+  }
+
+  /**
+   * @return the violation of the frame, whose stacktrace is {@link #frameLines}, or null.
+   */
+  private StrictModeViolation createViolation(List<StrictModeLog> logs,
+      NotifierConfig.Snapshot config) {
+    ArrayList<String> stacktreace = frameLines;
+    stacktreace.clear();
+    String title = "";
+    String logKey = "";
+    long time = 0;
+    int tid = 0;
+    for (int i = 0; i < logs.size(); i++) {
+      StrictModeLog log = logs.get(i);
+      if (title.length() == 0) {
+        title = log.message;
+        logKey = log.tag;
+        time = log.time;
+        tid = log.tid;
+      }
+      stacktreace.add(log.message);
+    }
+
+    ViolationType violationType = classifier.classify(logs, config);
+    if (violationType == ViolationType.UNKNOWN && EXCEPTION_KEY.equals(logKey)) {
+      return null;
+    }
+
+    return new StrictModeViolation.Builder()
+        .setViolationType(violationType)
+        .setMessage(title)
+        .setLogKey(logKey)
+        .setStacktreace(stacktreace)
+        .setTime(time)
+        .setTid(tid)
+        .setThreadName(frameThreadName)
+        .setSessionInfo(sessionInfo)
+        .setBlockedMillis(parseDuration(title))
+        .build();
+  }
+
+  /**
+   * Read the duration that StrictMode measured for violations on the main thread.
+   * e.g. "StrictMode policy violation; ~duration=52 ms: android.os.strictmode.DiskReadViolation"
+   *
+   * @return the duration in milliseconds, or 0 if the message has no duration.
+   */
+  static long parseDuration(String message) {
+    int index = message.indexOf(DURATION_KEY);
+    if (index < 0) {
+      return 0;
+    }
+    long duration = 0;
+    for (int i = index + DURATION_KEY.length(); i < message.length(); i++) {
+      char c = message.charAt(i);
+      if (c < '0' || c > '9') {
+        break;
+      }
+      duration = duration * 10 + (c - '0');
+    }
+    return duration;
+  }
+
+  /**
+   * @return the violation if it passed the filters, or null. The stacktrace of the violation is
+   * copied once the violation is given to an {@link IgnoreAction} or a {@link Callback}.
+   */
+  private StrictModeViolation accept(StrictModeViolation violation,
+      NotifierConfig.Snapshot config) {
+    //Self Violations
+    if (classifier.isSelfViolation(violation.stacktreace)) {
+      stats.selfViolations++;
+      callback.onSelfViolation(detach(violation));
+      return null;
+    }
+
+    //Ignore Action
+    IgnoreAction ignoreAction = config.ignoreAction;
+    boolean ignored = !config.isViolationTypeEnabled(violation.violationType);
+    if (!ignored && ignoreAction != null) {
+      violation = detach(violation);
+      ignored = ignoreAction.ignore(violation);
+    }
+    if (ignored) {
+      stats.ignored++;
+      callback.onIgnored(detach(violation));
+      return null;
+    }
+
+    long dedupeWindow = config.dedupeWindowMillis;
+    if (baseline.isEmpty() && dedupeWindow <= 0) {
+      return violation;
+    }
+    long fingerprint = ViolationFingerprint.of(violation);
+
+    //Baseline
+    if (baseline.contains(fingerprint)) {
+      stats.baselineMatched++;
+      callback.onBaselineMatched(detach(violation));
+      return null;
+    }
+
+    //Dedupe
+    if (dedupeWindow > 0) {
+      Long lastTime = recentFingerprints.put(fingerprint, violation.time);
+      if (lastTime != null && violation.time - lastTime < dedupeWindow) {
+        stats.duplicated++;
+        callback.onDuplicated(detach(violation));
+        return null;
+      }
+    }
+    return violation;
+  }
+}
@@ -0,0 +1,122 @@
+package com.nshmura.strictmodenotifier;
+
+import java.util.List;
+
+/**
+ * Stable 64bit identity of a violation, used to recognize the same violation across runs.
+ *
+ * The fingerprint is a FNV-1a hash of the violation type and the top stack frames. Line numbers
+ * are dropped from the frames so that unrelated edits of a file do not change the fingerprint.
+ * If the stacktrace has no frames, the first message line with its digits removed is used instead.
+ */
+public final class ViolationFingerprint {
+
+  private static final int MAX_FRAMES = 16;
+  private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+  private static final long FNV_PRIME = 0x100000001b3L;
+
+  private ViolationFingerprint() {
+  }
+
+  public static long of(StrictModeViolation violation) {
+    long hash = FNV_OFFSET_BASIS;
+    if (violation.violationType != null) {
+      hash = hash(hash, violation.violationType.name(), 0, violation.violationType.name().length(),
+          false);
+    }
+
+    List<String> lines = violation.stacktreace;
+    int frames = 0;
+    for (int i = 0; i < lines.size() && frames < MAX_FRAMES; i++) {
+      String line = lines.get(i);
+      if (isFrame(line)) {
+        hash = hashFrame(hash, line);
+        frames++;
+      }
+    }
+
+    if (frames == 0 && violation.message != null) {
+      hash = hash(hash, violation.message, 0, violation.message.length(), true);
+    }
+    return hash;
+  }
+
+  public static String toHex(long fingerprint) {
+    String hex = Long.toHexString(fingerprint);
+    StringBuilder builder = new StringBuilder(16);
+    for (int i = hex.length(); i < 16; i++) {
+      builder.append('0');
+    }
+    return builder.append(hex).toString();
+  }
+
+  public static long fromHex(String hex) {
+    if (hex.length() == 0 || hex.length() > 16) {
+      throw new NumberFormatException("invalid fingerprint: " + hex);
+    }
+    long value = 0;
+    for (int i = 0; i < hex.length(); i++) {
+      int digit = Character.digit(hex.charAt(i), 16);
+      if (digit < 0) {
+        throw new NumberFormatException("invalid fingerprint: " + hex);
+      }
+      value = (value << 4) | digit;
+    }
+    return value;
+  }
+
+  static boolean isFrame(String line) {
+    int length = line.length();
+    int i = 0;
+    while (i < length && Character.isWhitespace(line.charAt(i))) {
+      i++;
+    }
+    return i > 0 && line.startsWith("at ", i);
+  }
+
+  /**
+   * Hash the trimmed frame without its line number, e.g. "at com.example.Foo.bar(Foo.java)" of
+   * "\tat com.example.Foo.bar(Foo.java:12)", without creating the string.
+   */
+  private static long hashFrame(long hash, String line) {
+    int start = 0;
+    int end = line.length();
+    while (start < end && line.charAt(start) <= ' ') {
+      start++;
+    }
+    while (end > start && line.charAt(end - 1) <= ' ') {
+      end--;
+    }
+    int colon = line.lastIndexOf(':', end - 1);
+    if (colon > start && line.charAt(end - 1) == ')') {
+      hash = mix(hash, line, start, colon, false);
+      hash ^= ')';
+      hash *= FNV_PRIME;
+      return separate(hash);
+    }
+    return hash(hash, line, start, end, false);
+  }
+
+  private static long hash(long hash, String text, int start, int end, boolean skipDigits) {
+    return separate(mix(hash, text, start, end, skipDigits));
+  }
+
+  private static long mix(long hash, String text, int start, int end, boolean skipDigits) {
+    for (int i = start; i < end; i++) {
+      char c = text.charAt(i);
+      if (skipDigits && c >= '0' && c <= '9') {
+        continue;
+      }
+      hash ^= c;
+      hash *= FNV_PRIME;
+    }
+    return hash;
+  }
+
+  // separator, so that "ab"+"c" and "a"+"bc" differ
+  private static long separate(long hash) {
+    hash ^= 0xff;
+    hash *= FNV_PRIME;
+    return hash;
+  }
+}
@@ -0,0 +1,84 @@
+package com.nshmura.strictmodenotifier;
+
+/**
+ * Single line JSON of {@link StrictModeViolation}, for NDJSON streams.
+ *
+ * {"id":1,"type":"DISK_READ","fingerprint":"0123456789abcdef","message":"...","logKey":"...",
+ * "time":0,"versionCode":0,"buildFingerprint":"...","sessionId":"...","blockedMillis":0,
+ * "droppedFrames":0,"traceTimeNanos":0,"tid":0,"thread":"main","stacktrace":["..."]}
+ */
+public final class ViolationJson {
+
+  private ViolationJson() {
+  }
+
+  public static String encode(StrictModeViolation violation) {
+    StringBuilder builder = new StringBuilder(256);
+    builder.append("{\"id\":").append(violation.id);
+    builder.append(",\"type\":");
+    appendString(builder, violation.violationType != null ? violation.violationType.name() : null);
+    builder.append(",\"fingerprint\":");
+    appendString(builder, ViolationFingerprint.toHex(ViolationFingerprint.of(violation)));
+    builder.append(",\"message\":");
+    appendString(builder, violation.message);
+    builder.append(",\"logKey\":");
+    appendString(builder, violation.logKey);
+    builder.append(",\"time\":").append(violation.time);
+    builder.append(",\"versionCode\":").append(violation.versionCode);
+    builder.append(",\"buildFingerprint\":");
+    appendString(builder, violation.buildFingerprint);
+    builder.append(",\"sessionId\":");
+    appendString(builder, violation.sessionId);
+    builder.append(",\"blockedMillis\":").append(violation.blockedMillis);
+    builder.append(",\"droppedFrames\":").append(violation.droppedFrames);
+    builder.append(",\"traceTimeNanos\":").append(violation.traceTimeNanos);
+    builder.append(",\"tid\":").append(violation.tid);
+    builder.append(",\"thread\":");
+    appendString(builder, violation.threadName);
+    builder.append(",\"stacktrace\":[");
+    for (int i = 0; i < violation.stacktreace.size(); i++) {
+      if (i > 0) {
+        builder.append(',');
+      }
+      appendString(builder, violation.stacktreace.get(i));
+    }
+    builder.append("]}");
+    return builder.toString();
+  }
+
+  static void appendString(StringBuilder builder, String value) {
+    if (value == null) {
+      builder.append("null");
+      return;
+    }
+    builder.append('"');
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      switch (c) {
+        case '"':
+          builder.append("\\\"");
+          break;
+        case '\\':
+          builder.append("\\\\");
+          break;
+        case '\n':
+          builder.append("\\n");
+          break;
+        case '\r':
+          builder.append("\\r");
+          break;
+        case '\t':
+          builder.append("\\t");
+          break;
+        default:
+          // control chars, and the line separators that JavaScript does not allow in strings
+          if (c < 0x20 || c == 0x2028 || c == 0x2029) {
+            builder.append(String.format("\\u%04x", (int) c));
+          } else {
+            builder.append(c);
+          }
+      }
+    }
+    builder.append('"');
+  }
+}
@@ -0,0 +1,189 @@
+package com.nshmura.strictmodenotifier;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Serializes the mutations of a {@link SegmentedViolationLog} on a single writer.
+ *
+ * Appends, deletes, clears and retention steps are tasks of the writer executor, so a mutation is
+ * applied as a whole before the next one starts, whatever thread submitted it. Reads take the lock
+ * of the log, which the writer holds for one task at a time only.
+ *
+ * The {@link RetentionPolicy} of the config is applied after appends, a step per task, so that
+ * appends submitted meanwhile are not held up by a long cleanup.
+ */
+public class ViolationLogWriter {
+
+  private static final int RETENTION_BATCH = 64;
+
+  private final SegmentedViolationLog log;
+  private final Executor writer;
+  private final NotifierConfig config;
+  private final Runnable onRetention;
+
+  // accessed on the writer only
+  private boolean retentionScheduled;
+
+  /**
+   * @param writer a single thread executor. Tasks must run one at a time, in order.
+   * @param onRetention run on the writer after a retention step removed violations, or null.
+   */
+  public ViolationLogWriter(SegmentedViolationLog log, Executor writer, NotifierConfig config,
+      Runnable onRetention) {
+    this.log = log;
+    this.writer = writer;
+    this.config = config;
+    this.onRetention = onRetention;
+  }
+
+  /**
+   * @return the stored violation that has a new id. Do not wait for it on the writer.
+   */
+  public Future<StrictModeViolation> append(final StrictModeViolation violation) {
+    FutureTask<StrictModeViolation> task =
+        new FutureTask<>(new Callable<StrictModeViolation>() {
+          @Override public StrictModeViolation call() throws IOException {
+            StrictModeViolation stored;
+            synchronized (log) {
+              stored = log.append(violation);
+            }
+            scheduleRetention();
+            return stored;
+          }
+        });
+    writer.execute(task);
+    return task;
+  }
+
+  /**
+   * Mark the violation of the id as deleted. Returns without waiting for the writer.
+   */
+  public void delete(final long id) {
+    writer.execute(new Runnable() {
+      @Override public void run() {
+        synchronized (log) {
+          log.delete(id);
+        }
+      }
+    });
+  }
+
+  /**
+   * Delete all violations. Returns without waiting for the writer.
+   */
+  public void clear() {
+    writer.execute(new Runnable() {
+      @Override public void run() {
+        synchronized (log) {
+          log.clear();
+        }
+      }
+    });
+  }
+
+  /**
+   * Apply the retention policy, e.g. after the log is opened or the policy is changed.
+   */
+  public void applyRetention() {
+    writer.execute(new Runnable() {
+      @Override public void run() {
+        scheduleRetention();
+      }
+    });
+  }
+
+  /**
+   * @return a future that is done when the mutations submitted before are applied.
+   */
+  public Future<Void> sync() {
+    FutureTask<Void> task = new FutureTask<>(new Runnable() {
+      @Override public void run() {
+      }
+    }, null);
+    writer.execute(task);
+    return task;
+  }
+
+  /**
+   * @return the live records, newest first. The fields are read from the mapped files, see
+   * {@link MappedViolationLog.Index}.
+   */
+  public MappedViolationLog.Index index() {
+    synchronized (log) {
+      return log.index();
+    }
+  }
+
+  /**
+   * Decodes the records of the index that have no type, so that a list can show their messages
+   * without decoding on the main thread.
+   *
+   * @return the messages by index position, null for the records that have a type or cannot be
+   * read.
+   */
+  public String[] getUntypedMessages(MappedViolationLog.Index index) {
+    String[] messages = new String[index.size()];
+    synchronized (log) {
+      for (int i = 0; i < index.size(); i++) {
+        if (index.getViolationType(i) != null) {
+          continue;
+        }
+        try {
+          messages[i] = index.get(i).message;
+        } catch (IOException e) {
+          e.printStackTrace();
+        }
+      }
+    }
+    return messages;
+  }
+
+  /**
+   * @return the violation of the id, or null.
+   */
+  public StrictModeViolation get(long id) throws IOException {
+    synchronized (log) {
+      return log.get(id);
+    }
+  }
+
+  /**
+   * @return all violations, newest first.
+   */
+  public ArrayList<StrictModeViolation> getAll() throws IOException {
+    synchronized (log) {
+      return log.getAll();
+    }
+  }
+
+  private void scheduleRetention() {
+    if (!retentionScheduled) {
+      retentionScheduled = true;
+      writer.execute(retentionStep);
+    }
+  }
+
+  private final Runnable retentionStep = new Runnable() {
+    @Override public void run() {
+      boolean removed;
+      synchronized (log) {
+        removed = log.applyRetention(config.getRetentionPolicy(), System.currentTimeMillis(),
+            RETENTION_BATCH);
+      }
+      if (!removed) {
+        retentionScheduled = false;
+        return;
+      }
+      if (onRetention != null) {
+        onRetention.run();
+      }
+      // the next step goes after the tasks submitted meanwhile
+      writer.execute(this);
+    }
+  };
+}
@@ -0,0 +1,321 @@
+package com.nshmura.strictmodenotifier;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Streams violations as NDJSON, one {@link ViolationJson} per line, to the connected clients.
+ *
+ * A client that sends an HTTP request first gets an HTTP response, e.g. `curl -N`. Other clients
+ * get the bare stream, e.g. `nc`. Both get the last violations from the replay buffer first.
+ *
+ * {@link #publish} never blocks. Each client has a bounded queue; when a slow client falls
+ * behind, the oldest lines are dropped and {"dropped":N} is written before the next line.
+ */
+public class ViolationStreamServer {
+
+  public static final int DEFAULT_REPLAY_SIZE = 100;
+  public static final int DEFAULT_QUEUE_SIZE = 256;
+
+  private static final int MAX_SUBSCRIBERS = 4;
+  private static final int HANDSHAKE_TIMEOUT = 200; //ms
+  private static final int MAX_REQUEST_HEADER = 8 * 1024;
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+  /**
+   * Server side of the transport, e.g. a TCP or a local socket.
+   */
+  public interface Acceptor {
+    Connection accept() throws IOException;
+
+    void close() throws IOException;
+  }
+
+  public interface Connection {
+    InputStream getInputStream() throws IOException;
+
+    OutputStream getOutputStream() throws IOException;
+
+    void setReadTimeout(int millis) throws IOException;
+
+    void close() throws IOException;
+  }
+
+  private final Acceptor acceptor;
+  private final int replaySize;
+  private final int queueSize;
+  private final ArrayDeque<String> replay = new ArrayDeque<>();
+  private final List<Subscriber> subscribers = new ArrayList<>();
+  private Thread acceptThread;
+  private volatile boolean running;
+
+  public ViolationStreamServer(Acceptor acceptor) {
+    this(acceptor, DEFAULT_REPLAY_SIZE, DEFAULT_QUEUE_SIZE);
+  }
+
+  public ViolationStreamServer(Acceptor acceptor, int replaySize, int queueSize) {
+    this.acceptor = acceptor;
+    this.replaySize = replaySize;
+    this.queueSize = queueSize;
+  }
+
+  public synchronized void start() {
+    if (running) {
+      return;
+    }
+    running = true;
+    acceptThread = new Thread(new Runnable() {
+      @Override public void run() {
+        acceptLoop();
+      }
+    }, "ViolationStreamServer");
+    acceptThread.setDaemon(true);
+    acceptThread.start();
+  }
+
+  public void stop() {
+    List<Subscriber> closing;
+    synchronized (this) {
+      if (!running) {
+        return;
+      }
+      running = false;
+      closing = new ArrayList<>(subscribers);
+      subscribers.clear();
+    }
+    try {
+      acceptor.close();
+    } catch (IOException e) {
+      //ignore
+    }
+    for (Subscriber subscriber : closing) {
+      subscriber.close();
+    }
+  }
+
+  public void publish(StrictModeViolation violation) {
+    String line = ViolationJson.encode(violation);
+    synchronized (this) {
+      replay.addLast(line);
+      if (replay.size() > replaySize) {
+        replay.removeFirst();
+      }
+      for (Subscriber subscriber : subscribers) {
+        subscriber.offer(line);
+      }
+    }
+  }
+
+  public synchronized int getSubscriberCount() {
+    return subscribers.size();
+  }
+
+  private void acceptLoop() {
+    while (running) {
+      Connection connection;
+      try {
+        connection = acceptor.accept();
+      } catch (IOException e) {
+        // closed by stop()
+        break;
+      }
+
+      Subscriber subscriber = null;
+      synchronized (this) {
+        if (running && subscribers.size() < MAX_SUBSCRIBERS) {
+          subscriber = new Subscriber(connection);
+          for (String line : replay) {
+            subscriber.offer(line);
+          }
+          subscribers.add(subscriber);
+        }
+      }
+      if (subscriber == null) {
+        closeQuietly(connection);
+        continue;
+      }
+
+      Thread thread = new Thread(subscriber, "ViolationStreamServer-subscriber");
+      thread.setDaemon(true);
+      thread.start();
+    }
+  }
+
+  private synchronized void remove(Subscriber subscriber) {
+    subscribers.remove(subscriber);
+  }
+
+  private static void closeQuietly(Connection connection) {
+    try {
+      connection.close();
+    } catch (IOException e) {
+      //ignore
+    }
+  }
+
+  private class Subscriber implements Runnable {
+    private final Connection connection;
+    private final ArrayDeque<String> queue = new ArrayDeque<>();
+    private int dropped;
+    private boolean closed;
+
+    Subscriber(Connection connection) {
+      this.connection = connection;
+    }
+
+    synchronized void offer(String line) {
+      if (closed) {
+        return;
+      }
+      if (queue.size() >= queueSize) {
+        queue.removeFirst();
+        dropped++;
+      }
+      queue.addLast(line);
+      notifyAll();
+    }
+
+    void close() {
+      synchronized (this) {
+        closed = true;
+        notifyAll();
+      }
+      closeQuietly(connection);
+    }
+
+    @Override public void run() {
+      try {
+        Writer writer = new OutputStreamWriter(connection.getOutputStream(), UTF_8);
+        if (readHttpRequest()) {
+          writer.write("HTTP/1.1 200 OK\r\n"
+              + "Content-Type: application/x-ndjson\r\n"
+              + "Cache-Control: no-cache\r\n"
+              + "Connection: close\r\n"
+              + "\r\n");
+          writer.flush();
+        }
+
+        List<String> lines = new ArrayList<>();
+        while (true) {
+          int droppedLines;
+          synchronized (this) {
+            while (queue.isEmpty() && !closed) {
+              wait();
+            }
+            if (closed) {
+              break;
+            }
+            lines.addAll(queue);
+            queue.clear();
+            droppedLines = dropped;
+            dropped = 0;
+          }
+
+          if (droppedLines > 0) {
+            writer.write("{\"dropped\":" + droppedLines + "}\n");
+          }
+          for (String line : lines) {
+            writer.write(line);
+            writer.write('\n');
+          }
+          writer.flush();
+          lines.clear();
+        }
+      } catch (IOException e) {
+        // disconnected
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      } finally {
+        remove(this);
+        close();
+      }
+    }
+
+    /**
+     * Consume the request header if the client speaks HTTP.
+     *
+     * @return true if the client sent an HTTP request.
+     */
+    private boolean readHttpRequest() {
+      try {
+        connection.setReadTimeout(HANDSHAKE_TIMEOUT);
+        InputStream in = connection.getInputStream();
+        int first = in.read();
+        if (first != 'G' && first != 'H') {
+          return false;
+        }
+        // read until the blank line
+        int matched = 0;
+        for (int i = 0; i < MAX_REQUEST_HEADER; i++) {
+          int c = in.read();
+          if (c < 0) {
+            break;
+          }
+          if (c == '\n') {
+            matched++;
+            if (matched == 2) {
+              break;
+            }
+          } else if (c != '\r') {
+            matched = 0;
+          }
+        }
+        connection.setReadTimeout(0);
+        return true;
+      } catch (IOException e) {
+        // no request within the timeout
+        try {
+          connection.setReadTimeout(0);
+        } catch (IOException ignored) {
+          //ignore
+        }
+        return false;
+      }
+    }
+  }
+
+  /**
+   * {@link Acceptor} of a TCP server socket, for the JVM and tests.
+   */
+  public static class SocketAcceptor implements Acceptor {
+    private final ServerSocket serverSocket;
+
+    public SocketAcceptor(ServerSocket serverSocket) {
+      this.serverSocket = serverSocket;
+    }
+
+    @Override public Connection accept() throws IOException {
+      final Socket socket = serverSocket.accept();
+      return new Connection() {
+        @Override public InputStream getInputStream() throws IOException {
+          return socket.getInputStream();
+        }
+
+        @Override public OutputStream getOutputStream() throws IOException {
+          return socket.getOutputStream();
+        }
+
+        @Override public void setReadTimeout(int millis) throws IOException {
+          socket.setSoTimeout(millis);
+        }
+
+        @Override public void close() throws IOException {
+          socket.close();
+        }
+      };
+    }
+
+    @Override public void close() throws IOException {
+      serverSocket.close();
+    }
+  }
+}
@@ -1,21 +1,64 @@
 package com.nshmura.strictmodenotifier;
 
+/**
+ * Each type has a stable {@link #code}, see {@link MappedViolationLog}.
+ */
 public enum ViolationType {
 
   // ThreadPolicy
-  CUSTOM_SLOW_CALL,
-  NETWORK,
-  RESOURCE_MISMATCHES,
+  CUSTOM_SLOW_CALL(0),
+  NETWORK(1),
+  RESOURCE_MISMATCHES(2),
+  DISK_READ(3),
+  DISK_WRITE(4),
+  UNBUFFERED_IO(5),
 
   // VmPolicy
-  CLASS_INSTANCE_LIMIT,
-  CLEARTEXT_NETWORK,
-  FILE_URI_EXPOSURE,
-  LEAKED_CLOSABLE_OBJECTS,
-  ACTIVITY_LEAKS,
-  LEAKED_REGISTRATION_OBJECTS,
-  LEAKED_SQL_LITE_OBJECTS,
+  CLASS_INSTANCE_LIMIT(6),
+  CLEARTEXT_NETWORK(7),
+  FILE_URI_EXPOSURE(8),
+  LEAKED_CLOSABLE_OBJECTS(9),
+  ACTIVITY_LEAKS(10),
+  LEAKED_REGISTRATION_OBJECTS(11),
+  LEAKED_SQL_LITE_OBJECTS(12),
+  CONTENT_URI_WITHOUT_PERMISSION(13),
+  UNTAGGED_SOCKET(14),
+  NON_SDK_API_USED(15),
+  IMPLICIT_DIRECT_BOOT(16),
+  CREDENTIAL_PROTECTED_WHILE_LOCKED(17),
+  INCORRECT_CONTEXT_USE(18),
+  UNSAFE_INTENT_LAUNCH(19),
 
   //UNKNOWN
-  UNKNOWN
+  UNKNOWN(20);
+
+  private static final ViolationType[] BY_CODE;
+
+  static {
+    int max = 0;
+    for (ViolationType type : values()) {
+      max = Math.max(max, type.code);
+    }
+    BY_CODE = new ViolationType[max + 1];
+    for (ViolationType type : values()) {
+      BY_CODE[type.code] = type;
+    }
+  }
+
+  /**
+   * Stored in the files instead of the ordinal, so that constants can be added anywhere. Never
+   * change or reuse a code; a new constant takes the next unused one.
+   */
+  public final int code;
+
+  ViolationType(int code) {
+    this.code = code;
+  }
+
+  /**
+   * @return the type of the code, or null if the code is unknown.
+   */
+  public static ViolationType fromCode(int code) {
+    return code >= 0 && code < BY_CODE.length ? BY_CODE[code] : null;
+  }
 }
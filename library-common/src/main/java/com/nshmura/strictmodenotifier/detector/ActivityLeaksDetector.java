@@ -2,9 +2,9 @@ package com.nshmura.strictmodenotifier.detector;
 
 import com.nshmura.strictmodenotifier.StrictModeLog;
 
-public class NetworkDetector implements Detector {
+public class ActivityLeaksDetector implements Detector {
 
   @Override public boolean detect(StrictModeLog log) {
-    return log.message.contains("StrictMode$StrictModeNetworkViolation");
+    return log.message.contains("Activity; instances=");
   }
 }
@@ -0,0 +1,17 @@
+package com.nshmura.strictmodenotifier.detector;
+
+import com.nshmura.strictmodenotifier.StrictModeLog;
+import com.nshmura.strictmodenotifier.ViolationClassifier;
+import com.nshmura.strictmodenotifier.ViolationType;
+
+/**
+ * @deprecated Violations are classified by the class names of {@link ViolationClassifier}. This
+ * detector looks the message up in that table.
+ */
+@Deprecated
+public class NetworkDetector implements Detector {
+
+  @Override public boolean detect(StrictModeLog log) {
+    return ViolationClassifier.lookupBuiltIn(log.message) == ViolationType.NETWORK;
+  }
+}
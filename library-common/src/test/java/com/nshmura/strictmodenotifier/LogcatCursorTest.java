@@ -0,0 +1,49 @@
+package com.nshmura.strictmodenotifier;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class LogcatCursorTest {
+
+  private final LogcatCursor cursor = new LogcatCursor();
+
+  @Test public void keepsTheTimeOfTheLastLine() {
+    assertNull(cursor.getTime());
+    assertTrue(cursor.onLine("10-19 12:34:56.789  1234  1250 D StrictMode: a"));
+    assertTrue(cursor.onLine("10-19 12:34:56.790  1234  1250 D StrictMode: b"));
+    assertEquals("10-19 12:34:56.790", cursor.getTime());
+  }
+
+  @Test public void skipsTheLinesOfTheSameMillisecondAfterRestart() {
+    cursor.onLine("10-19 12:34:56.789  1234  1250 D StrictMode: a");
+    cursor.onLine("10-19 12:34:56.790  1234  1250 D StrictMode: b");
+    cursor.onLine("10-19 12:34:56.790  1234  1250 D StrictMode: c");
+    cursor.restart();
+
+    // logcat -T 10-19 12:34:56.790 prints b and c again
+    assertFalse(cursor.onLine("10-19 12:34:56.790  1234  1250 D StrictMode: b"));
+    assertFalse(cursor.onLine("10-19 12:34:56.790  1234  1250 D StrictMode: c"));
+    assertTrue(cursor.onLine("10-19 12:34:56.790  1234  1250 D StrictMode: d"));
+    assertTrue(cursor.onLine("10-19 12:34:56.791  1234  1250 D StrictMode: e"));
+
+    // d and e are new after a second restart
+    cursor.restart();
+    assertFalse(cursor.onLine("10-19 12:34:56.791  1234  1250 D StrictMode: e"));
+    assertTrue(cursor.onLine("10-19 12:34:56.791  1234  1250 D StrictMode: f"));
+  }
+
+  @Test public void stopsSkippingAtALaterTime() {
+    cursor.onLine("10-19 12:34:56.790  1234  1250 D StrictMode: a");
+    cursor.onLine("10-19 12:34:56.790  1234  1250 D StrictMode: b");
+    cursor.restart();
+
+    // the lines of the same millisecond left the buffer
+    assertTrue(cursor.onLine("10-19 12:34:56.800  1234  1250 D StrictMode: c"));
+    assertTrue(cursor.onLine("10-19 12:34:56.800  1234  1250 D StrictMode: d"));
+    assertEquals("10-19 12:34:56.800", cursor.getTime());
+  }
+}
@@ -0,0 +1,85 @@
+package com.nshmura.strictmodenotifier;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class LogcatReaderTest {
+
+  @Test public void readsLines() throws IOException {
+    assertEquals(list("a", "", "bc", "d"), readAll("a\n\r\nbc\r\nd", 16));
+  }
+
+  @Test public void decodesCharsSplitAcrossReads() throws IOException {
+    String text = "E: \u3042\u3044\u3046 \ud83d\ude00";
+    // one byte per read, so that each char is split
+    InputStream in = new ByteArrayInputStream((text + "\n" + text + "\n").getBytes("UTF-8")) {
+      @Override public synchronized int read(byte[] b, int off, int len) {
+        return super.read(b, off, Math.min(len, 1));
+      }
+    };
+    assertEquals(list(text, text), readAll(new LogcatReader(in, 16)));
+  }
+
+  @Test public void cutsLongLines() throws IOException {
+    LogcatReader reader = reader("0123456789abcdefghij\nshort\n", 16);
+    assertEquals(list("0123456789abcdef", "short"), readAll(reader));
+    assertEquals(1, reader.getTruncatedLines());
+  }
+
+  @Test public void cutsBeforeSurrogatePair() throws IOException {
+    LogcatReader reader = reader("0123456789abcde\ud83d\ude00\nshort\n", 16);
+    assertEquals(list("0123456789abcde", "short"), readAll(reader));
+    assertEquals(1, reader.getTruncatedLines());
+  }
+
+  @Test public void keepsLinesAcrossFills() throws IOException {
+    StringBuilder text = new StringBuilder();
+    List<String> expected = new ArrayList<>();
+    for (int i = 0; i < 100; i++) {
+      expected.add("line " + i);
+      text.append("line ").append(i).append('\n');
+    }
+    assertEquals(expected, readAll(text.toString(), 16));
+  }
+
+  @Test public void parsesView() throws IOException {
+    LogcatReader reader =
+        reader("10-19 12:00:00.000  1234  1250 D StrictMode: StrictMode policy violation\n", 128);
+    StrictModeLog.Parser parser = new StrictModeLog.Parser();
+    assertEquals(true, parser.match(reader.readLine()));
+    StrictModeLog log = parser.toLog(0);
+    assertEquals(" StrictMode policy violation", log.message);
+    assertEquals(1250, log.tid);
+  }
+
+  private static LogcatReader reader(String text, int bufferSize) throws IOException {
+    return new LogcatReader(new ByteArrayInputStream(text.getBytes("UTF-8")), bufferSize);
+  }
+
+  private static List<String> readAll(String text, int bufferSize) throws IOException {
+    return readAll(reader(text, bufferSize));
+  }
+
+  private static List<String> readAll(LogcatReader reader) throws IOException {
+    List<String> lines = new ArrayList<>();
+    CharSequence line;
+    while ((line = reader.readLine()) != null) {
+      lines.add(line.toString());
+    }
+    return lines;
+  }
+
+  private static List<String> list(String... values) {
+    List<String> list = new ArrayList<>();
+    for (String value : values) {
+      list.add(value);
+    }
+    return list;
+  }
+}
@@ -0,0 +1,95 @@
+package com.nshmura.strictmodenotifier;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+
+public class LogcatReplayTest {
+
+  private static final String DISK_READ =
+      "D/StrictMode( 1234): StrictMode policy violation: android.os.strictmode.DiskReadViolation\n"
+          + "10-19 12:00:00.000 D/StrictMode( 1234): \tat com.example.Foo.load(Foo.java:1)\n";
+
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  private final NotifierConfig config = NotifierConfig.getInstance();
+  private final NotifierConfig.Snapshot original = config.snapshot();
+  private final List<StrictModeViolation> violations = new ArrayList<>();
+
+  @After public void tearDown() {
+    config.update(original);
+  }
+
+  @Test public void stampsViolationsWithTheTimeOfTheirLines() throws Exception {
+    File dump = dump("10-19 12:00:00.000 " + DISK_READ
+        + "10-19 12:30:00.250 " + DISK_READ);
+    replay(dump);
+
+    assertEquals(2, violations.size());
+    assertEquals(time(10, 19, 12, 0, 0), violations.get(0).time);
+    assertEquals(time(10, 19, 12, 30, 0) + 250, violations.get(1).time);
+  }
+
+  @Test public void dedupesByTheTimeOfTheDump() throws Exception {
+    config.setDedupeWindowMillis(60 * 1000);
+    File dump = dump("10-19 12:00:00.000 " + DISK_READ
+        + "10-19 12:00:30.000 " + DISK_READ
+        + "10-19 12:05:00.000 " + DISK_READ);
+    ViolationEngine engine = replay(dump);
+
+    assertEquals(2, violations.size());
+    assertEquals(1, engine.getStats().duplicated);
+  }
+
+  @Test public void countsLongLines() throws Exception {
+    StringBuilder longLine = new StringBuilder("10-19 12:00:00.000 I/Other( 1234): ");
+    for (int i = 0; i < 70 * 1024; i++) {
+      longLine.append('x');
+    }
+    File dump = dump(longLine + "\n10-19 12:00:01.000 " + DISK_READ);
+    LogcatReplay replay = new LogcatReplay(newEngine());
+    replay.replay(dump);
+
+    assertEquals(1, replay.getTruncatedLines());
+    assertEquals(1, violations.size());
+  }
+
+  private ViolationEngine replay(File dump) throws Exception {
+    ViolationEngine engine = newEngine();
+    new LogcatReplay(engine).replay(dump);
+    return engine;
+  }
+
+  private ViolationEngine newEngine() {
+    return new ViolationEngine(config, new ViolationEngine.Callback() {
+      @Override public void onViolation(StrictModeViolation violation) {
+        violations.add(violation);
+      }
+    });
+  }
+
+  private File dump(String text) throws Exception {
+    File file = folder.newFile();
+    FileOutputStream out = new FileOutputStream(file);
+    out.write(text.getBytes("UTF-8"));
+    out.close();
+    // the year of the lines is the one of the dump
+    file.setLastModified(time(10, 20, 0, 0, 0));
+    return file;
+  }
+
+  private static long time(int month, int day, int hour, int minute, int second) {
+    Calendar calendar = Calendar.getInstance();
+    calendar.clear();
+    calendar.set(2026, month - 1, day, hour, minute, second);
+    return calendar.getTimeInMillis();
+  }
+}
@@ -0,0 +1,65 @@
+package com.nshmura.strictmodenotifier;
+
+import java.util.Calendar;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class LogcatTimeTest {
+
+  private final LogcatTime logcatTime = new LogcatTime();
+
+  @Test public void parsesThreadTimeAndTime() {
+    long now = time(2026, 10, 19, 13, 0, 0, 0);
+    assertEquals(time(2026, 10, 19, 12, 34, 56, 789),
+        logcatTime.parse("10-19 12:34:56.789  1234  1250 D StrictMode: hello", now));
+    assertEquals(time(2026, 10, 19, 12, 34, 57, 1),
+        logcatTime.parse("10-19 12:34:57.001 D/StrictMode( 1234): hello", now));
+    // another minute after the cached one
+    assertEquals(time(2026, 10, 18, 23, 59, 59, 999),
+        logcatTime.parse("10-18 23:59:59.999  1234  1250 D StrictMode: hello", now));
+  }
+
+  @Test public void takesThePreviousYearForLinesInTheFuture() {
+    long now = time(2027, 1, 1, 0, 0, 5, 0);
+    assertEquals(time(2026, 12, 31, 23, 59, 59, 0),
+        logcatTime.parse("12-31 23:59:59.000  1234  1250 D StrictMode: hello", now));
+    assertEquals(time(2027, 1, 1, 0, 0, 1, 0),
+        logcatTime.parse("01-01 00:00:01.000  1234  1250 D StrictMode: hello", now));
+  }
+
+  @Test public void rejectsLinesWithoutTime() {
+    long now = System.currentTimeMillis();
+    assertEquals(-1, logcatTime.parse("--------- beginning of main", now));
+    assertEquals(-1, logcatTime.parse("10-19 12:34", now));
+    assertEquals(-1, logcatTime.parse("13-19 12:34:56.789  1234  1250 D StrictMode: x", now));
+    assertEquals(-1, logcatTime.parse("10-19 12:3x:56.789  1234  1250 D StrictMode: x", now));
+  }
+
+  @Test public void hasTime() {
+    assertTrue(LogcatTime.hasTime("10-19 12:34:56.789"));
+    assertTrue(LogcatTime.hasTime("10-19 12:34:56.789 D/StrictMode( 1234): hello"));
+    assertFalse(LogcatTime.hasTime("10-19 12:34:56"));
+    assertFalse(LogcatTime.hasTime("logcat: unknown option -- T"));
+    assertFalse(LogcatTime.hasTime("10/19 12:34:56.789 D/StrictMode( 1234): hello"));
+  }
+
+  @Test public void parsesPid() {
+    assertEquals(1234, LogcatTime.parsePid("10-19 12:34:56.789  1234  1250 D StrictMode: hello"));
+    assertEquals(1234, LogcatTime.parsePid("10-19 12:34:56.789 D/StrictMode( 1234): hello"));
+    assertEquals(56, LogcatTime.parsePid("10-19 12:34:56.789 D/StrictMode(56): hello"));
+    assertEquals(-1, LogcatTime.parsePid("10-19 12:34:56.789 D/StrictMode: hello"));
+    assertEquals(-1, LogcatTime.parsePid("10-19 12:34:56.789  12x4  1250 D StrictMode: hello"));
+    assertEquals(-1, LogcatTime.parsePid("10-19 12:34:56.789  1234"));
+  }
+
+  private static long time(int year, int month, int day, int hour, int minute, int second,
+      int millis) {
+    Calendar calendar = Calendar.getInstance();
+    calendar.clear();
+    calendar.set(year, month - 1, day, hour, minute, second);
+    return calendar.getTimeInMillis() + millis;
+  }
+}
@@ -0,0 +1,302 @@
+package com.nshmura.strictmodenotifier;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class MappedViolationLogTest {
+
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test public void appendAndReopen() throws Exception {
+    File file = folder.newFile();
+    MappedViolationLog log = MappedViolationLog.open(file, 16, 16 * 1024);
+    for (int i = 0; i < 10; i++) {
+      StrictModeViolation stored = log.append(violation(i));
+      assertEquals(i + 1, stored.id);
+    }
+    log.close();
+
+    log = MappedViolationLog.open(file, 16, 16 * 1024);
+    List<StrictModeViolation> violations = log.getAll();
+    assertEquals(10, violations.size());
+    for (int i = 0; i < 10; i++) {
+      assertViolation(violation(9 - i), violations.get(i));
+      assertEquals(10 - i, violations.get(i).id);
+    }
+    assertEquals(11, log.append(violation(10)).id);
+    log.close();
+  }
+
+  @Test public void keepsLayoutOfExistingFile() throws Exception {
+    File file = folder.newFile();
+    MappedViolationLog log = MappedViolationLog.open(file, 8, 8 * 1024);
+    log.append(violation(0));
+    log.close();
+
+    log = MappedViolationLog.open(file, 32, 64 * 1024);
+    assertEquals(1, log.index().size());
+    log.close();
+  }
+
+  @Test public void evictsOldestSlots() throws Exception {
+    MappedViolationLog log = MappedViolationLog.open(folder.newFile(), 8, 64 * 1024);
+    for (int i = 0; i < 20; i++) {
+      log.append(violation(i));
+    }
+    MappedViolationLog.Index index = log.index();
+    assertEquals(8, index.size());
+    for (int i = 0; i < 8; i++) {
+      assertEquals(20 - i, index.getId(i));
+      assertViolation(violation(19 - i), index.get(i));
+    }
+    log.close();
+  }
+
+  @Test public void evictsOverwrittenPayloads() throws Exception {
+    MappedViolationLog log = MappedViolationLog.open(folder.newFile(), 64, 4 * 1024);
+    for (int i = 0; i < 200; i++) {
+      log.append(violation(i));
+    }
+    List<StrictModeViolation> violations = log.getAll();
+    assertTrue(violations.size() > 1);
+    assertTrue(violations.size() < 64);
+    for (int i = 0; i < violations.size(); i++) {
+      assertViolation(violation(199 - i), violations.get(i));
+    }
+    log.close();
+  }
+
+  @Test public void readsIndexFields() throws Exception {
+    MappedViolationLog log = MappedViolationLog.open(folder.newFile(), 8, 8 * 1024);
+    StrictModeViolation stored = log.append(violation(3).newBuilder()
+        .setBlockedMillis(120)
+        .setDroppedFrames(7)
+        .build());
+    log.append(violation(4).newBuilder().setViolationType(null).build());
+
+    MappedViolationLog.Index index = log.index();
+    assertNull(index.getViolationType(0));
+    assertEquals(ViolationType.DISK_READ, index.getViolationType(1));
+    assertEquals(stored.time, index.getTime(1));
+    assertEquals(120, index.getBlockedMillis(1));
+    assertEquals(7, index.getDroppedFrames(1));
+    assertEquals(ViolationFingerprint.of(stored), index.getFingerprint(1));
+    log.close();
+  }
+
+  @Test public void deleteAndClear() throws Exception {
+    File file = folder.newFile();
+    MappedViolationLog log = MappedViolationLog.open(file, 8, 8 * 1024);
+    for (int i = 0; i < 3; i++) {
+      log.append(violation(i));
+    }
+    assertTrue(log.delete(2));
+    assertNull(log.get(2));
+    assertNotNull(log.get(3));
+    log.close();
+
+    log = MappedViolationLog.open(file, 8, 8 * 1024);
+    assertEquals(2, log.index().size());
+    log.clear();
+    assertEquals(0, log.index().size());
+    assertEquals(4, log.append(violation(3)).id);
+    log.close();
+  }
+
+  @Test public void keepsIdsAfterClearAndReopen() throws Exception {
+    File file = folder.newFile();
+    MappedViolationLog log = MappedViolationLog.open(file, 8, 8 * 1024);
+    for (int i = 0; i < 3; i++) {
+      log.append(violation(i));
+    }
+    log.clear();
+    log.close();
+
+    log = MappedViolationLog.open(file, 8, 8 * 1024);
+    assertEquals(0, log.index().size());
+    assertEquals(4, log.append(violation(3)).id);
+    log.close();
+  }
+
+  @Test public void rejectsTooLargeViolation() throws Exception {
+    MappedViolationLog log = MappedViolationLog.open(folder.newFile(), 8, 1024);
+    Random random = new Random(1);
+    ArrayList<String> lines = new ArrayList<>();
+    for (int i = 0; i < 100; i++) {
+      lines.add("at com.example.Foo" + Long.toHexString(random.nextLong()) + ".bar(Foo.java:" + i
+          + ")");
+    }
+    try {
+      log.append(violation(0).newBuilder().setStacktreace(lines).build());
+      fail();
+    } catch (IOException expected) {
+    }
+    assertEquals(0, log.index().size());
+    log.close();
+  }
+
+  /**
+   * A crash can leave any subset of the bytes of an append written. Whatever subset was written,
+   * the records that the append does not evict must read back intact, and the appended record
+   * must be either intact or absent.
+   */
+  @Test public void tornAppendKeepsOtherRecords() throws Exception {
+    Random random = new Random(42);
+    File file = folder.newFile();
+    int slotCount = 8;
+    int payloadCapacity = 2 * 1024;
+
+    MappedViolationLog log = MappedViolationLog.open(file, slotCount, payloadCapacity);
+    for (int n = 0; n < 40; n++) {
+      byte[] before = read(file);
+      Map<Long, StrictModeViolation> beforeRecords = records(log);
+      StrictModeViolation appended = log.append(violation(n));
+      byte[] after = read(file);
+      Map<Long, StrictModeViolation> afterRecords = records(log);
+
+      List<Integer> changed = new ArrayList<>();
+      for (int i = 0; i < before.length; i++) {
+        if (before[i] != after[i]) {
+          changed.add(i);
+        }
+      }
+
+      for (int trial = 0; trial < 50; trial++) {
+        byte[] torn = before.clone();
+        for (int i : changed) {
+          if (trial == 0 || random.nextBoolean()) {
+            torn[i] = after[i];
+          }
+        }
+        File tornFile = folder.newFile();
+        write(tornFile, torn);
+
+        MappedViolationLog recovered = MappedViolationLog.open(tornFile, slotCount,
+            payloadCapacity);
+        Map<Long, StrictModeViolation> records = records(recovered);
+        for (Map.Entry<Long, StrictModeViolation> entry : afterRecords.entrySet()) {
+          if (entry.getKey() != appended.id) {
+            assertViolation(entry.getValue(), records.get(entry.getKey()));
+          }
+        }
+        for (Map.Entry<Long, StrictModeViolation> entry : records.entrySet()) {
+          StrictModeViolation expected = entry.getKey() == appended.id
+              ? appended : beforeRecords.get(entry.getKey());
+          assertNotNull("unknown record " + entry.getKey(), expected);
+          assertViolation(expected, entry.getValue());
+        }
+        if (trial == 0) {
+          assertViolation(appended, records.get(appended.id));
+        }
+
+        // the recovered log must accept appends
+        recovered.append(violation(1000));
+        recovered.close();
+        tornFile.delete();
+      }
+    }
+    log.close();
+  }
+
+  @Test public void dropsCorruptedPayloadOnly() throws Exception {
+    File file = folder.newFile();
+    MappedViolationLog log = MappedViolationLog.open(file, 8, 8 * 1024);
+    for (int i = 0; i < 3; i++) {
+      log.append(violation(i));
+    }
+    log.close();
+
+    RandomAccessFile raf = new RandomAccessFile(file, "rw");
+    raf.seek(MappedViolationLog.HEADER_SIZE + 8 * MappedViolationLog.SLOT_SIZE + 10);
+    raf.write(0x7f);
+    raf.close();
+
+    log = MappedViolationLog.open(file, 8, 8 * 1024);
+    List<StrictModeViolation> violations = log.getAll();
+    assertEquals(2, violations.size());
+    assertEquals(3, violations.get(0).id);
+    assertEquals(2, violations.get(1).id);
+    log.close();
+  }
+
+  @Test public void countsLiveRecords() throws Exception {
+    File file = folder.newFile();
+    MappedViolationLog log = MappedViolationLog.open(file, 8, 64 * 1024);
+    for (int i = 0; i < 10; i++) {
+      log.append(violation(i));
+    }
+    assertEquals(8, log.getLiveCount());
+    assertTrue(log.delete(10));
+    log.delete(10);
+    assertEquals(7, log.getLiveCount());
+    log.close();
+
+    log = MappedViolationLog.open(file, 8, 64 * 1024);
+    assertEquals(7, log.getLiveCount());
+    assertEquals(log.index().size(), log.getLiveCount());
+    log.clear();
+    assertEquals(0, log.getLiveCount());
+    log.close();
+  }
+
+  private static StrictModeViolation violation(int n) {
+    ArrayList<String> lines = new ArrayList<>();
+    lines.add("StrictMode policy violation; ~duration=" + n + " ms: android.os.StrictMode");
+    lines.add("at android.os.StrictMode.onReadFromDisk(StrictMode.java:1263)");
+    lines.add("at com.example.Foo.load" + n + "(Foo.java:" + n + ")");
+    return new StrictModeViolation.Builder()
+        .setViolationType(ViolationType.DISK_READ)
+        .setMessage("message " + n)
+        .setLogKey("key" + n)
+        .setStacktreace(lines)
+        .setTime(1000L + n)
+        .build();
+  }
+
+  private static void assertViolation(StrictModeViolation expected, StrictModeViolation actual) {
+    assertNotNull(actual);
+    assertEquals(expected.violationType, actual.violationType);
+    assertEquals(expected.message, actual.message);
+    assertEquals(expected.time, actual.time);
+    assertEquals(expected.getStacktraceText(), actual.getStacktraceText());
+  }
+
+  private static Map<Long, StrictModeViolation> records(MappedViolationLog log)
+      throws IOException {
+    Map<Long, StrictModeViolation> records = new HashMap<>();
+    for (StrictModeViolation violation : log.getAll()) {
+      records.put(violation.id, violation);
+    }
+    return records;
+  }
+
+  private static byte[] read(File file) throws IOException {
+    RandomAccessFile raf = new RandomAccessFile(file, "r");
+    byte[] data = new byte[(int) raf.length()];
+    raf.readFully(data);
+    raf.close();
+    return data;
+  }
+
+  private static void write(File file, byte[] data) throws IOException {
+    FileOutputStream out = new FileOutputStream(file);
+    out.write(data);
+    out.close();
+  }
+}
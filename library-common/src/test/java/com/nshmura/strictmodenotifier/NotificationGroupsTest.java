@@ -0,0 +1,94 @@
+package com.nshmura.strictmodenotifier;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class NotificationGroupsTest {
+
+  private final NotificationGroups groups = new NotificationGroups();
+
+  @Test public void countsPerType() {
+    groups.add(violation(1, ViolationType.DISK_READ), "Disk read");
+    groups.add(violation(2, ViolationType.NETWORK), "Network");
+    NotificationGroups.Group group = groups.add(violation(3, ViolationType.DISK_READ), "ignored");
+
+    assertEquals(2, groups.getGroups().size());
+    assertEquals("Disk read", group.title);
+    assertEquals(2, group.getCount());
+    assertEquals(3, group.getLastId());
+    assertEquals("message 3", group.getLastLine());
+    assertEquals(3, groups.getTotalCount());
+  }
+
+  @Test public void keepsTheLastLines() {
+    NotificationGroups.Group group = null;
+    for (int i = 0; i < NotificationGroups.MAX_LINES + 2; i++) {
+      group = groups.add(violation(i, ViolationType.DISK_READ), "Disk read");
+    }
+    List<String> lines = new ArrayList<>(group.getLines());
+    assertEquals(NotificationGroups.MAX_LINES, lines.size());
+    assertEquals("message 2", lines.get(0));
+    assertEquals("message " + (NotificationGroups.MAX_LINES + 1), lines.get(lines.size() - 1));
+  }
+
+  @Test public void tracksChangedGroups() {
+    NotificationGroups.Group diskRead = groups.add(violation(1, ViolationType.DISK_READ), "a");
+    groups.add(violation(2, ViolationType.DISK_READ), "a");
+    assertEquals(1, groups.getChanged().size());
+
+    groups.clearChanged();
+    NotificationGroups.Group network = groups.add(violation(3, ViolationType.NETWORK), "b");
+    assertEquals(1, groups.getChanged().size());
+    assertSame(network, groups.getChanged().get(0));
+    assertTrue(groups.getGroups().contains(diskRead));
+  }
+
+  @Test public void resetsDismissedGroup() {
+    NotificationGroups.Group diskRead = groups.add(violation(1, ViolationType.DISK_READ), "a");
+    groups.add(violation(2, ViolationType.NETWORK), "b");
+
+    groups.reset(diskRead.notificationId);
+    assertEquals(1, groups.getGroups().size());
+    assertEquals(1, groups.getChanged().size());
+    assertEquals(1, groups.getTotalCount());
+
+    NotificationGroups.Group again = groups.add(violation(3, ViolationType.DISK_READ), "a");
+    assertEquals(1, again.getCount());
+    assertEquals(diskRead.notificationId, again.notificationId);
+
+    groups.resetAll();
+    assertEquals(0, groups.getGroups().size());
+    assertEquals(0, groups.getChanged().size());
+    assertEquals(0, groups.getTotalCount());
+  }
+
+  @Test public void usesFixedNotificationIds() {
+    NotificationGroups.Group untyped = groups.add(violation(1, null), "untyped");
+    NotificationGroups.Group network = groups.add(violation(2, ViolationType.NETWORK), "b");
+    assertEquals(NotificationGroups.notificationIdOf(null), untyped.notificationId);
+    assertEquals(NotificationGroups.notificationIdOf(ViolationType.NETWORK),
+        network.notificationId);
+    assertNotEquals(untyped.notificationId, network.notificationId);
+    for (ViolationType type : ViolationType.values()) {
+      assertNotEquals(NotificationGroups.notificationIdOf(null),
+          NotificationGroups.notificationIdOf(type));
+      assertTrue(NotificationGroups.notificationIdOf(type)
+          >= NotificationGroups.FIRST_NOTIFICATION_ID);
+    }
+  }
+
+  private static StrictModeViolation violation(long id, ViolationType type) {
+    return new StrictModeViolation.Builder()
+        .setId(id)
+        .setViolationType(type)
+        .setMessage(" message " + id)
+        .setStacktreace(new ArrayList<String>())
+        .build();
+  }
+}
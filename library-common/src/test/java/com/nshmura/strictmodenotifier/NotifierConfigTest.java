@@ -0,0 +1,74 @@
+package com.nshmura.strictmodenotifier;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+
+public class NotifierConfigTest {
+
+  private final NotifierConfig config = NotifierConfig.getInstance();
+  private NotifierConfig.Snapshot original;
+
+  @Before public void setUp() {
+    original = config.snapshot();
+  }
+
+  @After public void tearDown() {
+    config.update(original);
+  }
+
+  @Test public void settersPublishNewSnapshot() {
+    NotifierConfig.Snapshot before = config.snapshot();
+    config.setSlowCallThresholdMillis(50).setHeadupEnabled(false);
+
+    NotifierConfig.Snapshot after = config.snapshot();
+    assertNotSame(before, after);
+    assertEquals(16, before.slowCallThresholdMillis);
+    assertTrue(before.headupEnabled);
+    assertEquals(50, after.slowCallThresholdMillis);
+    assertFalse(after.headupEnabled);
+  }
+
+  @Test public void backgroundPauseIsOptIn() {
+    assertFalse(new NotifierConfig.Snapshot.Builder().build().backgroundPauseEnabled);
+    config.setBackgroundPauseEnabled(true);
+    assertTrue(config.isBackgroundPauseEnabled());
+    assertTrue(config.snapshot().newBuilder().build().backgroundPauseEnabled);
+  }
+
+  @Test public void snapshotCollectionsDoNotChange() {
+    NotifierConfig.Snapshot before = config.snapshot();
+    CustomAction action = new CustomAction() {
+      @Override public void onViolation(StrictModeViolation violation) {
+      }
+    };
+    config.addCustomAction(action);
+
+    assertEquals(0, before.customActions.size());
+    assertEquals(1, config.getCustomActions().size());
+
+    config.removeCustomAction(action);
+    assertEquals(0, config.getCustomActions().size());
+  }
+
+  @Test(expected = UnsupportedOperationException.class)
+  public void snapshotCollectionsAreUnmodifiable() {
+    config.snapshot().customActions.add(null);
+  }
+
+  @Test public void updatesSeveralSettingsAtOnce() {
+    config.update(config.snapshot().newBuilder()
+        .setDedupeWindowMillis(1000)
+        .setViolationTypeEnabled(ViolationType.DISK_READ, false)
+        .build());
+
+    assertEquals(1000, config.getDedupeWindowMillis());
+    assertFalse(config.isViolationTypeEnabled(ViolationType.DISK_READ));
+    assertTrue(config.isViolationTypeEnabled(ViolationType.NETWORK));
+  }
+}
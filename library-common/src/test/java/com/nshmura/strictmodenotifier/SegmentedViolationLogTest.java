@@ -0,0 +1,194 @@
+package com.nshmura.strictmodenotifier;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class SegmentedViolationLogTest {
+
+  private static final long BUCKET = 1000;
+
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test public void appendAndReopen() throws Exception {
+    File dir = folder.newFolder();
+    SegmentedViolationLog log = open(dir);
+    for (int i = 0; i < 20; i++) {
+      assertEquals(i + 1, log.append(violation(i, ViolationType.DISK_READ, i * 100)).id);
+    }
+    assertEquals(2, log.getSegmentCount());
+    log.close();
+
+    log = open(dir);
+    List<StrictModeViolation> violations = log.getAll();
+    assertEquals(20, violations.size());
+    for (int i = 0; i < 20; i++) {
+      assertEquals(20 - i, violations.get(i).id);
+      assertEquals("message " + (19 - i), violations.get(i).message);
+    }
+    assertEquals(21, log.append(violation(20, ViolationType.DISK_READ, 2000)).id);
+    log.close();
+  }
+
+  @Test public void rollsOverFullSegments() throws Exception {
+    SegmentedViolationLog log = open(folder.newFolder());
+    for (int i = 0; i < 40; i++) {
+      log.append(violation(i, ViolationType.DISK_READ, 0));
+    }
+    // 16 slots per segment. nothing is overwritten.
+    assertEquals(3, log.getSegmentCount());
+    assertEquals(40, log.index().size());
+    log.close();
+  }
+
+  @Test public void getAndDelete() throws Exception {
+    SegmentedViolationLog log = open(folder.newFolder());
+    for (int i = 0; i < 20; i++) {
+      log.append(violation(i, ViolationType.DISK_READ, i * 100));
+    }
+    assertEquals("message 4", log.get(5).message);
+    assertTrue(log.delete(5));
+    assertNull(log.get(5));
+    assertFalse(log.delete(100));
+    assertEquals(19, log.index().size());
+
+    log.clear();
+    assertEquals(0, log.getSegmentCount());
+    assertEquals(21, log.append(violation(0, ViolationType.DISK_READ, 0)).id);
+    log.close();
+  }
+
+  @Test public void dropsExpiredBuckets() throws Exception {
+    SegmentedViolationLog log = open(folder.newFolder());
+    for (int i = 0; i < 30; i++) {
+      log.append(violation(i, ViolationType.DISK_READ, i * 100));
+    }
+    RetentionPolicy policy = new RetentionPolicy.Builder()
+        .setMaxAge(1000, TimeUnit.MILLISECONDS)
+        .build();
+    applyAll(log, policy, 3000);
+
+    // the buckets that end at 1000 and 2000 are older than 1000ms
+    assertEquals(1, log.getSegmentCount());
+    List<StrictModeViolation> violations = log.getAll();
+    assertEquals(10, violations.size());
+    assertEquals("message 20", violations.get(9).message);
+    log.close();
+  }
+
+  @Test public void dropsOldestSegmentsOverBytes() throws Exception {
+    SegmentedViolationLog log = open(folder.newFolder());
+    for (int i = 0; i < 40; i++) {
+      log.append(violation(i, ViolationType.DISK_READ, 0));
+    }
+    long bytes = log.getUsedBytes();
+    RetentionPolicy policy = new RetentionPolicy.Builder().setMaxBytes(bytes / 2).build();
+    applyAll(log, policy, 0);
+
+    assertTrue(log.getUsedBytes() <= bytes / 2);
+    List<StrictModeViolation> violations = log.getAll();
+    assertEquals("message 39", violations.get(0).message);
+    log.close();
+  }
+
+  @Test public void keepsNewestByCount() throws Exception {
+    SegmentedViolationLog log = open(folder.newFolder());
+    for (int i = 0; i < 30; i++) {
+      log.append(violation(i, ViolationType.DISK_READ, 0));
+    }
+    applyAll(log, new RetentionPolicy.Builder().setMaxCount(13).build(), 0);
+
+    List<StrictModeViolation> violations = log.getAll();
+    assertEquals(13, violations.size());
+    assertEquals("message 29", violations.get(0).message);
+    assertEquals("message 17", violations.get(12).message);
+    // the segment below the count is dropped, not marked
+    assertEquals(1, log.getSegmentCount());
+    log.close();
+  }
+
+  @Test public void keepsNewestPerType() throws Exception {
+    SegmentedViolationLog log = open(folder.newFolder());
+    for (int i = 0; i < 30; i++) {
+      log.append(violation(i, i % 2 == 0 ? ViolationType.NETWORK
+          : ViolationType.LEAKED_CLOSABLE_OBJECTS, 0));
+    }
+    RetentionPolicy policy = new RetentionPolicy.Builder()
+        .setMaxCount(ViolationType.NETWORK, 10)
+        .setMaxCount(ViolationType.LEAKED_CLOSABLE_OBJECTS, 2)
+        .build();
+    applyAll(log, policy, 0);
+
+    int network = 0;
+    List<String> leaked = new ArrayList<>();
+    for (StrictModeViolation violation : log.getAll()) {
+      if (violation.violationType == ViolationType.NETWORK) {
+        network++;
+      } else {
+        leaked.add(violation.message);
+      }
+    }
+    assertEquals(10, network);
+    assertEquals(2, leaked.size());
+    assertEquals("message 29", leaked.get(0));
+    assertEquals("message 27", leaked.get(1));
+    log.close();
+  }
+
+  @Test public void appliesInSteps() throws Exception {
+    SegmentedViolationLog log = open(folder.newFolder());
+    for (int i = 0; i < 8; i++) {
+      log.append(violation(i, ViolationType.DISK_READ, 0));
+    }
+    RetentionPolicy policy = new RetentionPolicy.Builder().setMaxCount(2).build();
+    assertTrue(log.applyRetention(policy, 0, 4));
+    assertEquals(4, log.index().size());
+    assertTrue(log.applyRetention(policy, 0, 4));
+    assertEquals(2, log.index().size());
+    assertFalse(log.applyRetention(policy, 0, 4));
+    log.close();
+  }
+
+  @Test public void ignoresOtherFiles() throws Exception {
+    File dir = folder.newFolder();
+    assertTrue(new File(dir, "notes.txt").createNewFile());
+    assertTrue(new File(dir, "x_y" + SegmentedViolationLog.SUFFIX).createNewFile());
+    SegmentedViolationLog log = open(dir);
+    assertEquals(0, log.getSegmentCount());
+    assertNotNull(log.append(violation(0, ViolationType.DISK_READ, 0)));
+    log.close();
+  }
+
+  private static SegmentedViolationLog open(File dir) throws Exception {
+    return SegmentedViolationLog.open(dir, BUCKET, 16, 16 * 1024);
+  }
+
+  private static void applyAll(SegmentedViolationLog log, RetentionPolicy policy, long now) {
+    int steps = 0;
+    while (log.applyRetention(policy, now, 4)) {
+      assertTrue(++steps < 100);
+    }
+  }
+
+  private static StrictModeViolation violation(int n, ViolationType type, long time) {
+    ArrayList<String> lines = new ArrayList<>();
+    lines.add("StrictMode policy violation; ~duration=" + n + " ms: android.os.StrictMode");
+    lines.add("at com.example.Foo.load" + n + "(Foo.java:" + n + ")");
+    return new StrictModeViolation.Builder()
+        .setViolationType(type)
+        .setMessage("message " + n)
+        .setStacktreace(lines)
+        .setTime(time)
+        .build();
+  }
+}
@@ -0,0 +1,78 @@
+package com.nshmura.strictmodenotifier;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class ThreadHotspotsTest {
+
+  @Test public void groupsPoolThreads() {
+    assertEquals("main", ThreadHotspots.group("main"));
+    assertEquals("Binder:N_N", ThreadHotspots.group("Binder:1234_5"));
+    assertEquals("pool-N-thread-N", ThreadHotspots.group("pool-12-thread-3"));
+    assertEquals(ThreadHotspots.UNKNOWN, ThreadHotspots.group(null));
+  }
+
+  @Test public void sortsByCount() {
+    ThreadHotspots hotspots = new ThreadHotspots();
+    hotspots.record("main", 30, 2);
+    hotspots.record("pool-1-thread-1", 0, 0);
+    hotspots.record("pool-1-thread-2", 0, 0);
+
+    List<ThreadHotspots.Entry> entries = hotspots.snapshot();
+    assertEquals(2, entries.size());
+    assertEquals("pool-N-thread-N", entries.get(0).group);
+    assertEquals(2, entries.get(0).count);
+    assertEquals("main", entries.get(1).group);
+    assertEquals(30, entries.get(1).blockedMillis);
+    assertEquals(2, entries.get(1).droppedFrames);
+  }
+
+  @Test public void countsOverflowAsOther() {
+    ThreadHotspots hotspots = new ThreadHotspots();
+    for (int i = 0; i < ThreadHotspots.CAPACITY + 10; i++) {
+      hotspots.record("thread-" + (char) ('a' + i % 26) + (char) ('a' + i / 26), 0, 0);
+    }
+    List<ThreadHotspots.Entry> entries = hotspots.snapshot();
+    assertEquals(ThreadHotspots.CAPACITY + 1, entries.size());
+    assertEquals(ThreadHotspots.OTHER, entries.get(0).group);
+    assertEquals(10, entries.get(0).count);
+  }
+
+  @Test public void countsConcurrentRecords() throws InterruptedException {
+    final ThreadHotspots hotspots = new ThreadHotspots();
+    final int threads = 8;
+    final int records = 10000;
+    final CountDownLatch start = new CountDownLatch(1);
+    Thread[] workers = new Thread[threads];
+    for (int i = 0; i < threads; i++) {
+      final String name = "worker-" + (char) ('a' + i % 2);
+      workers[i] = new Thread(new Runnable() {
+        @Override public void run() {
+          try {
+            start.await();
+          } catch (InterruptedException e) {
+            return;
+          }
+          for (int j = 0; j < records; j++) {
+            hotspots.record(name, 1, 0);
+          }
+        }
+      });
+      workers[i].start();
+    }
+    start.countDown();
+    for (Thread worker : workers) {
+      worker.join();
+    }
+
+    List<ThreadHotspots.Entry> entries = hotspots.snapshot();
+    assertEquals(2, entries.size());
+    for (ThreadHotspots.Entry entry : entries) {
+      assertEquals(threads / 2 * records, entry.count);
+      assertEquals(threads / 2 * records, entry.blockedMillis);
+    }
+  }
+}
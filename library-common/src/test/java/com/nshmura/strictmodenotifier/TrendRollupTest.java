@@ -0,0 +1,138 @@
+package com.nshmura.strictmodenotifier;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Map;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TrendRollupTest {
+
+  @Test public void encodeDecodeRoundTrip() throws Exception {
+    TrendRollup rollup = new TrendRollup();
+    rollup.add(violation(1, ViolationType.DISK_READ, "Foo.load"));
+    rollup.add(violation(1, ViolationType.DISK_READ, "Foo.load"));
+    rollup.add(violation(1, null, "Foo.save"));
+    rollup.add(violation(2, ViolationType.NETWORK, "Bar.fetch"));
+    StringBuilder longMessage = new StringBuilder();
+    for (int i = 0; i < 1000; i++) {
+      longMessage.append('m');
+    }
+    rollup.add(violation(2, ViolationType.NETWORK, "Baz.get").newBuilder()
+        .setMessage(longMessage.toString())
+        .build());
+
+    TrendRollup decoded = TrendRollup.decode(rollup.encode());
+
+    assertEquals(Arrays.asList(1L, 2L), decoded.getVersionCodes());
+    Map<Long, TrendRollup.Entry> entries = decoded.getEntries(1);
+    assertEquals(2, entries.size());
+    TrendRollup.Entry load =
+        entries.get(ViolationFingerprint.of(violation(1, ViolationType.DISK_READ, "Foo.load")));
+    assertEquals(2, load.count);
+    assertEquals(ViolationType.DISK_READ, load.violationType);
+    assertEquals("message Foo.load", load.message);
+    // no type is read as unknown
+    assertEquals(1, (int) decoded.countByType(1).get(ViolationType.UNKNOWN));
+    // long messages are cut
+    for (TrendRollup.Entry entry : decoded.getEntries(2).values()) {
+      assertTrue(entry.message.length() <= 200);
+    }
+    assertEquals(rollup.compare(1, 2).countDiffs, decoded.compare(1, 2).countDiffs);
+  }
+
+  @Test public void comparesBuilds() {
+    TrendRollup rollup = new TrendRollup();
+    rollup.add(violation(1, ViolationType.DISK_READ, "Foo.load"));
+    rollup.add(violation(1, ViolationType.NETWORK, "Bar.fetch"));
+    rollup.add(violation(2, ViolationType.NETWORK, "Bar.fetch"));
+    rollup.add(violation(2, ViolationType.NETWORK, "Baz.get"));
+
+    TrendRollup.Comparison comparison = rollup.compare(1, 2);
+    assertEquals(1, comparison.added.size());
+    assertEquals("message Baz.get", comparison.added.get(0).message);
+    assertEquals(1, comparison.removed.size());
+    assertEquals(-1, (int) comparison.countDiffs.get(ViolationType.DISK_READ));
+    assertEquals(1, (int) comparison.countDiffs.get(ViolationType.NETWORK));
+    assertEquals(Long.valueOf(1), rollup.getPreviousVersionCode(2));
+    assertNull(rollup.getPreviousVersionCode(1));
+  }
+
+  @Test public void capsFingerprintsPerBuild() throws Exception {
+    TrendRollup rollup = new TrendRollup();
+    // a frequent violation survives a flood of distinct ones
+    for (int i = 0; i < 3; i++) {
+      rollup.add(violation(1, ViolationType.DISK_READ, "Frequent.call"));
+    }
+    for (int i = 0; i < TrendRollup.MAX_ENTRIES * 2; i++) {
+      rollup.add(violation(1, ViolationType.DISK_READ, "Distinct.call" + i));
+    }
+
+    Map<Long, TrendRollup.Entry> entries = rollup.getEntries(1);
+    assertEquals(TrendRollup.MAX_ENTRIES, entries.size());
+    assertEquals(3, entries.get(ViolationFingerprint.of(
+        violation(1, ViolationType.DISK_READ, "Frequent.call"))).count);
+    assertEquals(TrendRollup.MAX_ENTRIES, TrendRollup.decode(rollup.encode()).getEntries(1).size());
+  }
+
+  @Test public void keepsTheNewestBuilds() {
+    TrendRollup rollup = new TrendRollup();
+    for (int code = 1; code <= 25; code++) {
+      rollup.add(violation(code, ViolationType.DISK_READ, "Foo.load"));
+    }
+    assertEquals(20, rollup.getVersionCodes().size());
+    assertEquals(Long.valueOf(6), rollup.getVersionCodes().get(0));
+  }
+
+  @Test public void rejectsBrokenData() throws Exception {
+    TrendRollup rollup = new TrendRollup();
+    rollup.add(violation(1, ViolationType.DISK_READ, "Foo.load"));
+    byte[] data = rollup.encode();
+
+    assertBroken(new byte[0]);
+    assertBroken(new byte[] {1, 2, 3, 4, 5, 6});
+    assertBroken(Arrays.copyOf(data, data.length - 3));
+
+    // a future version
+    byte[] future = data.clone();
+    future[4] = 9;
+    assertBroken(future);
+
+    // a huge build count must not allocate
+    byte[] builds = data.clone();
+    builds[5] = 0x7f;
+    assertBroken(builds);
+
+    // a negative entry count. magic, version, build count, versionCode, then entry count.
+    byte[] entries = data.clone();
+    entries[4 + 1 + 4 + 8] = (byte) 0xff;
+    assertBroken(entries);
+  }
+
+  private static void assertBroken(byte[] data) {
+    try {
+      TrendRollup.decode(data);
+      fail("decoded broken data");
+    } catch (IOException e) {
+      // expected
+    }
+  }
+
+  private static StrictModeViolation violation(long versionCode, ViolationType type,
+      String method) {
+    ArrayList<String> lines = new ArrayList<>();
+    lines.add("StrictMode policy violation");
+    lines.add("\tat com.example." + method + "(Foo.java:1)");
+    return new StrictModeViolation.Builder()
+        .setViolationType(type)
+        .setMessage("message " + method)
+        .setStacktreace(lines)
+        .setVersionCode(versionCode)
+        .build();
+  }
+}
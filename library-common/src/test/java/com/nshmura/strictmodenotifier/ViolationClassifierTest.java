@@ -0,0 +1,112 @@
+package com.nshmura.strictmodenotifier;
+
+import com.nshmura.strictmodenotifier.detector.CustomSlowCallDetector;
+import com.nshmura.strictmodenotifier.detector.Detector;
+import com.nshmura.strictmodenotifier.detector.NetworkDetector;
+import com.nshmura.strictmodenotifier.detector.ResourceMismatchDetector;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.After;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+@SuppressWarnings("deprecation")
+public class ViolationClassifierTest {
+
+  private final NotifierConfig config = NotifierConfig.getInstance();
+  private final NotifierConfig.Snapshot original = config.snapshot();
+  private final ViolationClassifier classifier = new ViolationClassifier(config);
+
+  @After public void tearDown() {
+    config.update(original);
+  }
+
+  @Test public void classifiesNewClassNames() {
+    assertEquals(ViolationType.DISK_READ, classify(
+        "StrictMode policy violation; ~duration=52 ms: android.os.strictmode.DiskReadViolation"));
+    assertEquals(ViolationType.NETWORK,
+        classify("android.os.strictmode.NetworkViolation"));
+    assertEquals(ViolationType.UNSAFE_INTENT_LAUNCH,
+        classify("StrictMode policy violation: android.os.strictmode.UnsafeIntentLaunchViolation:"
+            + " Launch of unsafe intent"));
+  }
+
+  @Test public void classifiesOldClassNames() {
+    assertEquals(ViolationType.DISK_WRITE, classify("StrictMode policy violation; ~duration=3 ms:"
+        + " android.os.StrictMode$StrictModeDiskWriteViolation: policy=31 violation=1"));
+    assertEquals(ViolationType.CUSTOM_SLOW_CALL,
+        classify("android.os.StrictMode$StrictModeCustomViolation: policy=31 violation=8 msg=x"));
+    assertEquals(ViolationType.LEAKED_SQL_LITE_OBJECTS, classify(
+        "android.database.sqlite.DatabaseObjectNotClosedException: Application did not close"));
+  }
+
+  @Test public void looksUpWholeTokensOnly() {
+    // a prefix or an extension of a class name is not the class
+    assertEquals(ViolationType.UNKNOWN, classify("android.os.strictmode.DiskRead"));
+    assertEquals(ViolationType.UNKNOWN, classify("android.os.strictmode.DiskReadViolationX"));
+    assertEquals(ViolationType.UNKNOWN, classify("DiskReadViolation"));
+    // stacktrace lines are not looked up
+    assertEquals(ViolationType.UNKNOWN,
+        classify("\tat android.os.strictmode.DiskReadViolation.<init>(DiskReadViolation.java:1)"));
+  }
+
+  @Test public void tellsActivityLeaksFromInstanceLimits() {
+    assertEquals(ViolationType.ACTIVITY_LEAKS, classify("android.os.strictmode"
+        + ".InstanceCountViolation: class com.example.MainActivity; instances=2; limit=1"));
+    assertEquals(ViolationType.CLASS_INSTANCE_LIMIT, classify("android.os.strictmode"
+        + ".InstanceCountViolation: class com.example.Foo; instances=2; limit=1"));
+  }
+
+  @Test public void fallsBackToMessageDetectors() {
+    assertEquals(ViolationType.LEAKED_CLOSABLE_OBJECTS, classify(
+        "A resource was acquired at attached stack trace but never released."));
+    assertEquals(ViolationType.UNKNOWN, classify("StrictMode policy violation"));
+  }
+
+  @Test public void appEntriesComeFirst() {
+    config.addExceptionClass("com.example.SlowViolation", ViolationType.CUSTOM_SLOW_CALL);
+    config.addExceptionClass("android.os.strictmode.DiskReadViolation", ViolationType.DISK_WRITE);
+    assertEquals(ViolationType.CUSTOM_SLOW_CALL, classify("com.example.SlowViolation: slow"));
+    assertEquals(ViolationType.DISK_WRITE, classify("android.os.strictmode.DiskReadViolation"));
+
+    config.addDetector(ViolationType.NETWORK, new Detector() {
+      @Override public boolean detect(StrictModeLog log) {
+        return log.message.contains("custom");
+      }
+    });
+    assertEquals(ViolationType.NETWORK,
+        classify("custom android.os.strictmode.DiskReadViolation"));
+  }
+
+  @Test public void lookupBuiltInIgnoresAppEntries() {
+    config.addExceptionClass("com.example.SlowViolation", ViolationType.CUSTOM_SLOW_CALL);
+    assertNull(ViolationClassifier.lookupBuiltIn("com.example.SlowViolation"));
+    assertEquals(ViolationType.RESOURCE_MISMATCHES, ViolationClassifier.lookupBuiltIn(
+        "android.os.StrictMode$StrictModeResourceMismatchViolation: policy=31"));
+  }
+
+  @Test public void deprecatedDetectorsUseTheTable() {
+    assertTrue(new NetworkDetector().detect(log("android.os.strictmode.NetworkViolation")));
+    assertTrue(new NetworkDetector().detect(
+        log("android.os.StrictMode$StrictModeNetworkViolation: policy=31 violation=4")));
+    assertFalse(new NetworkDetector().detect(log("android.os.strictmode.DiskReadViolation")));
+    assertTrue(new CustomSlowCallDetector().detect(
+        log("android.os.StrictMode$StrictModeCustomViolation: policy=31")));
+    assertTrue(new ResourceMismatchDetector().detect(
+        log("android.os.strictmode.ResourceMismatchViolation: tag")));
+  }
+
+  private ViolationType classify(String message) {
+    List<StrictModeLog> logs = new ArrayList<>();
+    logs.add(log(message));
+    return classifier.classify(logs);
+  }
+
+  private static StrictModeLog log(String message) {
+    return new StrictModeLog("StrictMode", message, 0);
+  }
+}
@@ -0,0 +1,70 @@
+package com.nshmura.strictmodenotifier;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.Random;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ViolationCompressorTest {
+
+  private static final byte[] TRACE = ("StrictMode policy violation; ~duration=98 ms: "
+      + "android.os.StrictMode$StrictModeDiskReadViolation: policy=31 violation=2\n"
+      + "\tat android.os.StrictMode$AndroidBlockGuardPolicy.onReadFromDisk(StrictMode.java:1263)\n"
+      + "\tat libcore.io.BlockGuardOs.open(BlockGuardOs.java:182)\n"
+      + "\tat java.io.FileInputStream.<init>(FileInputStream.java:76)\n"
+      + "\tat com.example.MainActivity.onCreate(MainActivity.java:42)\n"
+      + "\tat android.app.Activity.performCreate(Activity.java:6237)\n"
+      + "\tat android.os.Handler.dispatchMessage(Handler.java:102)\n"
+      + "\tat android.os.Looper.loop(Looper.java:148)\n"
+      + "\tat android.app.ActivityThread.main(ActivityThread.java:5417)\n")
+      .getBytes(Charset.forName("UTF-8"));
+
+  @Test public void roundTrip() throws Exception {
+    ViolationCompressor compressor = new ViolationCompressor();
+    byte[] compressed = compressor.compress(TRACE);
+    assertEquals(ViolationCompressor.DICTIONARY, compressed[0]);
+    assertArrayEquals(TRACE, compressor.decompress(compressed));
+    compressor.end();
+  }
+
+  @Test public void dictionaryBeatsPlainDeflate() throws Exception {
+    ViolationCompressor dictionary = new ViolationCompressor(true);
+    ViolationCompressor plain = new ViolationCompressor(false);
+    byte[] withDictionary = dictionary.compress(TRACE);
+    byte[] withoutDictionary = plain.compress(TRACE);
+    assertEquals(ViolationCompressor.DEFLATE, withoutDictionary[0]);
+    assertTrue(withDictionary.length < withoutDictionary.length);
+
+    // either reads both
+    assertArrayEquals(TRACE, plain.decompress(withDictionary));
+    assertArrayEquals(TRACE, dictionary.decompress(withoutDictionary));
+    dictionary.end();
+    plain.end();
+  }
+
+  @Test public void storesIncompressibleDataRaw() throws Exception {
+    byte[] data = new byte[64];
+    new Random(7).nextBytes(data);
+    ViolationCompressor compressor = new ViolationCompressor();
+    byte[] compressed = compressor.compress(data);
+    assertEquals(ViolationCompressor.RAW, compressed[0]);
+    assertArrayEquals(data, compressor.decompress(compressed));
+    compressor.end();
+  }
+
+  @Test public void rejectsTruncatedData() throws Exception {
+    ViolationCompressor compressor = new ViolationCompressor();
+    byte[] compressed = compressor.compress(TRACE);
+    try {
+      compressor.decompress(compressed, 0, compressed.length / 2);
+      fail();
+    } catch (IOException expected) {
+    }
+    compressor.end();
+  }
+}
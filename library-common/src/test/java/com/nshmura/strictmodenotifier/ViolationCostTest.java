@@ -0,0 +1,68 @@
+package com.nshmura.strictmodenotifier;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+
+public class ViolationCostTest {
+
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test public void sortsByCumulativeCost() {
+    List<StrictModeViolation> violations = new ArrayList<>();
+    violations.add(violation("Single.slow", 100, 1));
+    violations.add(violation("Repeated.call", 40, 2));
+    violations.add(violation("Repeated.call", 40, 3));
+    violations.add(violation("Repeated.call", 40, 4));
+    violations.add(violation("Cheap.call", 0, 5));
+
+    ViolationCost.sortByCumulativeCost(violations);
+
+    // 120ms in total comes before a single 100ms violation. the newer one first in a group.
+    assertEquals(4, violations.get(0).time);
+    assertEquals(3, violations.get(1).time);
+    assertEquals(2, violations.get(2).time);
+    assertEquals(1, violations.get(3).time);
+    assertEquals(5, violations.get(4).time);
+  }
+
+  @Test public void sortsTheIndexInTheSameOrder() throws Exception {
+    MappedViolationLog log = MappedViolationLog.open(folder.newFile(), 16, 16 * 1024);
+    List<StrictModeViolation> violations = new ArrayList<>();
+    violations.add(violation("Single.slow", 100, 1));
+    violations.add(violation("Repeated.call", 40, 2));
+    violations.add(violation("Cheap.call", 0, 3));
+    violations.add(violation("Repeated.call", 40, 4));
+    violations.add(violation("Repeated.call", 40, 5));
+    for (StrictModeViolation violation : violations) {
+      log.append(violation);
+    }
+
+    MappedViolationLog.Index index = log.index();
+    Integer[] positions = ViolationCost.sortByCumulativeCost(index);
+    ViolationCost.sortByCumulativeCost(violations);
+
+    assertEquals(violations.size(), positions.length);
+    for (int i = 0; i < positions.length; i++) {
+      assertEquals(violations.get(i).time, index.getTime(positions[i]));
+    }
+    log.close();
+  }
+
+  private static StrictModeViolation violation(String method, long blockedMillis, long time) {
+    ArrayList<String> lines = new ArrayList<>();
+    lines.add("StrictMode policy violation");
+    lines.add("\tat com.example." + method + "(Foo.java:" + time + ")");
+    return new StrictModeViolation.Builder()
+        .setViolationType(ViolationType.DISK_READ)
+        .setMessage("StrictMode policy violation")
+        .setStacktreace(lines)
+        .setBlockedMillis(blockedMillis)
+        .setTime(time)
+        .build();
+  }
+}
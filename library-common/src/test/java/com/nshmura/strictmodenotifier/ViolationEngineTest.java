@@ -0,0 +1,319 @@
+package com.nshmura.strictmodenotifier;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ViolationEngineTest {
+
+  private static final String STRICT_MODE = "10-19 12:00:00.000 D/StrictMode( 1234): ";
+  private static final String SYSTEM_ERR = "10-19 12:00:00.000 W/System.err( 1234): ";
+  private static final String THREAD_TIME = "10-19 12:00:00.000  1234  1250 D StrictMode: ";
+
+  private final List<StrictModeViolation> violations = new ArrayList<>();
+  private ViolationEngine engine;
+
+  @Before public void setUp() {
+    engine = new ViolationEngine(NotifierConfig.getInstance(), new ViolationEngine.Callback() {
+      @Override public void onViolation(StrictModeViolation violation) {
+        violations.add(violation);
+      }
+    });
+  }
+
+  @Test public void parsesTag() {
+    StrictModeLog log = StrictModeLog.parse(STRICT_MODE + "StrictMode policy violation", 0);
+    assertEquals("StrictMode", log.tag);
+    assertEquals("StrictMode policy violation", log.message.trim());
+
+    log = StrictModeLog.parse(SYSTEM_ERR + "\tat com.example.Foo.bar(Foo.java:1)", 0);
+    assertEquals("System.err", log.tag);
+    assertTrue(log.isAt());
+
+    assertNull(StrictModeLog.parse("10-19 12:00:00.000 I/ActivityManager(  500): hello", 0));
+  }
+
+  @Test public void parsesThreadTime() {
+    StrictModeLog log = StrictModeLog.parse(THREAD_TIME + "StrictMode policy violation", 0);
+    assertEquals("StrictMode", log.tag);
+    assertEquals(" StrictMode policy violation", log.message);
+    assertEquals(1234, log.pid);
+    assertEquals(1250, log.tid);
+
+    log = StrictModeLog.parse(STRICT_MODE + "StrictMode policy violation", 0);
+    assertEquals(1234, log.pid);
+    assertEquals(0, log.tid);
+  }
+
+  @Test public void keepsThreadOfFrame() {
+    line(THREAD_TIME, "StrictMode policy violation: android.os.strictmode.DiskReadViolation");
+    line(THREAD_TIME, "\tat android.os.StrictMode.onReadFromDisk(StrictMode.java:1596)");
+    engine.flush();
+
+    assertEquals(1, violations.size());
+    assertEquals(1250, violations.get(0).tid);
+  }
+
+  @Test public void namesThreadOnFirstLines() {
+    final List<Integer> asked = new ArrayList<>();
+    engine = new ViolationEngine(NotifierConfig.getInstance(), new ViolationEngine.Callback() {
+      @Override public void onViolation(StrictModeViolation violation) {
+        violations.add(violation);
+      }
+
+      @Override public String getThreadName(int tid) {
+        asked.add(tid);
+        return "pool-1-thread-1";
+      }
+    });
+    line(THREAD_TIME, "StrictMode policy violation: android.os.strictmode.DiskReadViolation");
+    assertEquals(1, asked.size());
+    line(THREAD_TIME, "\tat android.os.StrictMode.onReadFromDisk(StrictMode.java:1596)");
+    engine.flush();
+
+    assertEquals(1, asked.size());
+    assertEquals(1250, (int) asked.get(0));
+    assertEquals("pool-1-thread-1", violations.get(0).threadName);
+  }
+
+  @Test public void givesIgnoreActionsTheirOwnStacktrace() {
+    NotifierConfig config = NotifierConfig.getInstance();
+    NotifierConfig.Snapshot original = config.snapshot();
+    final List<StrictModeViolation> ignored = new ArrayList<>();
+    config.setIgnoreAction(new IgnoreAction() {
+      @Override public boolean ignore(StrictModeViolation violation) {
+        ignored.add(violation);
+        return true;
+      }
+    });
+    try {
+      line(STRICT_MODE, "StrictMode policy violation: android.os.strictmode.DiskReadViolation");
+      line(STRICT_MODE, "\tat android.os.StrictMode.onReadFromDisk(StrictMode.java:1596)");
+      line(STRICT_MODE, "StrictMode policy violation: android.os.strictmode.NetworkViolation");
+      line(STRICT_MODE, "\tat android.os.StrictMode.onNetwork(StrictMode.java:1166)");
+      engine.flush();
+    } finally {
+      config.update(original);
+    }
+
+    assertEquals(0, violations.size());
+    assertEquals(2, ignored.size());
+    assertTrue(ignored.get(0).getStacktraceText().contains("DiskReadViolation"));
+    assertFalse(ignored.get(0).getStacktraceText().contains("NetworkViolation"));
+    assertNotSame(ignored.get(0).stacktreace, ignored.get(1).stacktreace);
+  }
+
+  @Test public void emitsFrames() {
+    line(STRICT_MODE, "StrictMode policy violation: android.os.strictmode.DiskReadViolation");
+    line(STRICT_MODE, "\tat android.os.StrictMode.onReadFromDisk(StrictMode.java:1596)");
+    line(STRICT_MODE, "StrictMode policy violation: android.os.strictmode.NetworkViolation");
+    line(STRICT_MODE, "\tat android.os.StrictMode.onNetwork(StrictMode.java:1166)");
+    engine.flush();
+
+    assertEquals(2, violations.size());
+    assertEquals(ViolationType.DISK_READ, violations.get(0).violationType);
+    assertEquals("StrictMode", violations.get(0).logKey);
+    assertEquals(ViolationType.NETWORK, violations.get(1).violationType);
+  }
+
+  @Test public void ignoresDisabledTypes() {
+    NotifierConfig config = NotifierConfig.getInstance();
+    NotifierConfig.Snapshot original = config.snapshot();
+    config.setViolationTypeEnabled(ViolationType.DISK_READ, false);
+    try {
+      line(STRICT_MODE, "StrictMode policy violation: android.os.strictmode.DiskReadViolation");
+      line(STRICT_MODE, "\tat android.os.StrictMode.onReadFromDisk(StrictMode.java:1596)");
+      line(STRICT_MODE, "StrictMode policy violation: android.os.strictmode.NetworkViolation");
+      line(STRICT_MODE, "\tat android.os.StrictMode.onNetwork(StrictMode.java:1166)");
+      engine.flush();
+    } finally {
+      config.update(original);
+    }
+
+    assertEquals(1, violations.size());
+    assertEquals(ViolationType.NETWORK, violations.get(0).violationType);
+    assertEquals(1, engine.getStats().ignored);
+  }
+
+  @Test public void suppressesSelfViolations() {
+    // SharedPreferences read by the notifier
+    line(STRICT_MODE, "StrictMode policy violation: android.os.strictmode.DiskReadViolation");
+    line(STRICT_MODE, "\tat android.os.StrictMode$AndroidBlockGuardPolicy.onReadFromDisk"
+        + "(StrictMode.java:1596)");
+    line(STRICT_MODE, "\tat java.io.File.exists(File.java:815)");
+    line(STRICT_MODE, "\tat android.app.SharedPreferencesImpl.awaitLoadedLocked"
+        + "(SharedPreferencesImpl.java:256)");
+    line(STRICT_MODE, "\tat com.nshmura.strictmodenotifier.StringModeConfig.isEnabled"
+        + "(StringModeConfig.java:36)");
+    line(STRICT_MODE, "\tat com.example.App.onCreate(App.java:10)");
+    // a detector of the notifier
+    line(STRICT_MODE, "StrictMode policy violation: android.os.strictmode.DiskReadViolation");
+    line(STRICT_MODE, "\tat com.nshmura.strictmodenotifier.detector.Foo.bar(Foo.java:1)");
+    // the app triggered it, even though the notifier called the app
+    line(STRICT_MODE, "StrictMode policy violation: android.os.strictmode.DiskReadViolation");
+    line(STRICT_MODE, "\tat com.example.App.onCreate(App.java:10)");
+    line(STRICT_MODE, "\tat com.nshmura.strictmodenotifier.StringModeConfig.isEnabled"
+        + "(StringModeConfig.java:36)");
+    // the test app shares the package prefix, but is an app
+    line(STRICT_MODE, "StrictMode policy violation: android.os.strictmode.NetworkViolation");
+    line(STRICT_MODE, "\tat android.os.StrictMode.onNetwork(StrictMode.java:1166)");
+    line(STRICT_MODE, "\tat com.nshmura.strictmodenotifier.testapp.MainActivity.onClick"
+        + "(MainActivity.java:1)");
+    engine.flush();
+
+    assertEquals(2, violations.size());
+    assertEquals(ViolationType.DISK_READ, violations.get(0).violationType);
+    assertEquals(ViolationType.NETWORK, violations.get(1).violationType);
+    assertEquals(2, engine.getStats().selfViolations);
+  }
+
+  @Test public void discardsUnknownSystemErrFrames() {
+    line(SYSTEM_ERR, "java.io.IOException: boom");
+    for (int i = 0; i < 1000; i++) {
+      line(SYSTEM_ERR, "\tat com.example.Foo.bar(Foo.java:" + i + ")");
+    }
+    // an orphan stacktrace line
+    engine.flush();
+    line(SYSTEM_ERR, "\tat com.example.Foo.bar(Foo.java:1)");
+    engine.flush();
+
+    assertTrue(violations.isEmpty());
+    assertFalse(engine.hasPendingLogs());
+    assertEquals(1002, engine.getStats().discardedLines);
+  }
+
+  @Test public void keepsKnownSystemErrFrames() {
+    line(SYSTEM_ERR, "android.os.FileUriExposedException: file:///sdcard/a.txt exposed beyond app");
+    line(SYSTEM_ERR, "\tat android.os.StrictMode.onFileUriExposed(StrictMode.java:1799)");
+    engine.flush();
+
+    assertEquals(1, violations.size());
+    assertEquals(ViolationType.FILE_URI_EXPOSURE, violations.get(0).violationType);
+    assertEquals(2, violations.get(0).stacktreace.size());
+  }
+
+  @Test public void discardsStrayLinesOfOtherTag() {
+    line(STRICT_MODE, "StrictMode policy violation: android.os.strictmode.DiskReadViolation");
+    line(STRICT_MODE, "\tat android.os.StrictMode.onReadFromDisk(StrictMode.java:1596)");
+    line(SYSTEM_ERR, "\tat com.example.Foo.bar(Foo.java:1)");
+    line(STRICT_MODE, "\tat com.example.Main.onCreate(Main.java:2)");
+    engine.flush();
+
+    assertEquals(1, violations.size());
+    assertEquals(3, violations.get(0).stacktreace.size());
+  }
+
+  @Test public void elidesLinesOverLimit() {
+    engine.setFrameLimits(40, 1024 * 1024);
+    line(STRICT_MODE, "StrictMode policy violation: android.os.strictmode.DiskReadViolation");
+    for (int i = 0; i < 10000; i++) {
+      line(STRICT_MODE, "\tat com.example.Foo.recurse(Foo.java:" + i + ")");
+    }
+    engine.flush();
+
+    assertEquals(1, violations.size());
+    List<String> lines = violations.get(0).stacktreace;
+    assertEquals(41, lines.size());
+    assertEquals(" \tat com.example.Foo.recurse(Foo.java:0)", lines.get(1));
+    assertEquals("\t... 9961 lines elided", lines.get(24));
+    assertEquals(" \tat com.example.Foo.recurse(Foo.java:9999)", lines.get(40));
+    assertEquals(9961, engine.getStats().elidedLines);
+    assertEquals(1, engine.getStats().truncatedFrames);
+  }
+
+  @Test public void elidesLinesOverCharLimit() {
+    engine.setFrameLimits(1000, 200);
+    line(STRICT_MODE, "StrictMode policy violation: android.os.strictmode.DiskReadViolation");
+    for (int i = 0; i < 100; i++) {
+      line(STRICT_MODE, "\tat com.example.Foo.recurse(Foo.java:" + i + ")");
+    }
+    engine.flush();
+
+    List<String> lines = violations.get(0).stacktreace;
+    assertTrue(lines.size() < 30);
+    assertEquals(" \tat com.example.Foo.recurse(Foo.java:99)", lines.get(lines.size() - 1));
+  }
+
+  @Test public void parsesDuration() {
+    assertEquals(52, ViolationEngine.parseDuration(
+        "StrictMode policy violation; ~duration=52 ms: android.os.strictmode.DiskReadViolation"));
+    assertEquals(1234, ViolationEngine.parseDuration("~duration=1234 ms"));
+    assertEquals(0, ViolationEngine.parseDuration(
+        "StrictMode policy violation: android.os.strictmode.NetworkViolation"));
+    assertEquals(0, ViolationEngine.parseDuration("~duration= ms"));
+    assertEquals(0, ViolationEngine.parseDuration("~duration="));
+  }
+
+  @Test public void keepsDurationOfMainThreadViolations() {
+    line(STRICT_MODE, "StrictMode policy violation; ~duration=52 ms: "
+        + "android.os.strictmode.DiskReadViolation");
+    line(STRICT_MODE, "\tat android.os.StrictMode.onReadFromDisk(StrictMode.java:1596)");
+    line(STRICT_MODE, "StrictMode policy violation: android.os.strictmode.NetworkViolation");
+    line(STRICT_MODE, "\tat android.os.StrictMode.onNetwork(StrictMode.java:1166)");
+    engine.flush();
+
+    assertEquals(52, violations.get(0).blockedMillis);
+    assertEquals(0, violations.get(1).blockedMillis);
+  }
+
+  @Test public void truncatesLongLines() {
+    StringBuilder message = new StringBuilder("StrictMode policy violation: ");
+    while (message.length() < 100000) {
+      message.append("android.os.strictmode.DiskReadViolation ");
+    }
+    line(STRICT_MODE, message.toString());
+    engine.flush();
+
+    assertEquals(ViolationEngine.MAX_LINE_CHARS, violations.get(0).message.length());
+    assertEquals(1, engine.getStats().truncatedLines);
+  }
+
+  @Test public void capsDedupeEntriesWithinOneWindow() {
+    NotifierConfig config = NotifierConfig.getInstance();
+    NotifierConfig.Snapshot original = config.snapshot();
+    config.setDedupeWindowMillis(60 * 1000);
+    int distinct = ViolationEngine.MAX_DEDUPE_ENTRIES + 100;
+    try {
+      for (int i = 0; i < distinct; i++) {
+        engine.onViolation(violation(i, 1000 + i));
+      }
+      // the newest fingerprints are remembered, the oldest were evicted
+      engine.onViolation(violation(distinct - 1, 1000 + distinct));
+      engine.onViolation(violation(0, 1000 + distinct));
+    } finally {
+      config.update(original);
+    }
+
+    assertEquals(distinct + 1, violations.size());
+    assertEquals(1, engine.getStats().duplicated);
+    assertEquals(violation(0, 0).message, violations.get(distinct).message);
+  }
+
+  private static StrictModeViolation violation(int n, long time) {
+    // letters, as the fingerprint may ignore digits
+    StringBuilder method = new StringBuilder("load");
+    for (int i = n; i > 0; i /= 26) {
+      method.append((char) ('a' + i % 26));
+    }
+    ArrayList<String> lines = new ArrayList<>();
+    lines.add("StrictMode policy violation: android.os.strictmode.DiskReadViolation");
+    lines.add("\tat com.example.Foo." + method + "(Foo.java:10)");
+    return new StrictModeViolation.Builder()
+        .setViolationType(ViolationType.DISK_READ)
+        .setMessage("message " + n)
+        .setStacktreace(lines)
+        .setTime(time)
+        .build();
+  }
+
+  private void line(String prefix, String message) {
+    engine.onLine(prefix + message, 0);
+  }
+}
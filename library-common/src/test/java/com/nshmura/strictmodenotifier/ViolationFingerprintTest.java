@@ -0,0 +1,163 @@
+package com.nshmura.strictmodenotifier;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ViolationFingerprintTest {
+
+  private static final String MESSAGE =
+      "StrictMode policy violation; ~duration=52 ms: android.os.strictmode.DiskReadViolation";
+
+  @Test public void ignoresLineNumbers() {
+    long a = ViolationFingerprint.of(violation(ViolationType.DISK_READ, MESSAGE,
+        "\tat com.example.Foo.load(Foo.java:12)",
+        "\tat com.example.Main.onCreate(Main.java:30)"));
+    long b = ViolationFingerprint.of(violation(ViolationType.DISK_READ, MESSAGE,
+        "\tat com.example.Foo.load(Foo.java:15)",
+        "\tat com.example.Main.onCreate(Main.java:31)"));
+    assertEquals(a, b);
+  }
+
+  @Test public void ignoresIndentOfFrames() {
+    assertEquals(fingerprint("\tat com.example.Foo.load(Foo.java:12)"),
+        fingerprint("    at com.example.Foo.load(Foo.java:12)  "));
+  }
+
+  @Test public void usesMessageWithoutDigitsIfNoFrames() {
+    long a = ViolationFingerprint.of(violation(ViolationType.DISK_READ, MESSAGE));
+    long b = ViolationFingerprint.of(violation(ViolationType.DISK_READ,
+        "StrictMode policy violation; ~duration=7 ms: android.os.strictmode.DiskReadViolation"));
+    long c = ViolationFingerprint.of(violation(ViolationType.DISK_READ,
+        "StrictMode policy violation: android.os.strictmode.DiskReadViolation"));
+    assertEquals(a, b);
+    assertNotEquals(a, c);
+  }
+
+  @Test public void differsByTypeAndFrames() {
+    long base = ViolationFingerprint.of(violation(ViolationType.DISK_READ, MESSAGE,
+        "\tat com.example.Foo.load(Foo.java:12)"));
+    assertNotEquals(base, ViolationFingerprint.of(violation(ViolationType.DISK_WRITE, MESSAGE,
+        "\tat com.example.Foo.load(Foo.java:12)")));
+    assertNotEquals(base, ViolationFingerprint.of(violation(ViolationType.DISK_READ, MESSAGE,
+        "\tat com.example.Foo.save(Foo.java:12)")));
+    // frames are separated, so that moving characters between them changes the hash
+    assertNotEquals(
+        fingerprint("\tat a.Ab()", "\tat c()"),
+        fingerprint("\tat a.A()", "\tat bc()"));
+  }
+
+  @Test public void keepsLambdaFramesApart() {
+    // synthetic lambda classes differ by their index, which the fingerprint keeps
+    long a = ViolationFingerprint.of(violation(ViolationType.DISK_READ, MESSAGE,
+        "\tat com.example.Foo.lambda$load$0(Foo.java:12)",
+        "\tat com.example.Foo$$ExternalSyntheticLambda0.run(Unknown Source:2)"));
+    long b = ViolationFingerprint.of(violation(ViolationType.DISK_READ, MESSAGE,
+        "\tat com.example.Foo.lambda$load$0(Foo.java:14)",
+        "\tat com.example.Foo$$ExternalSyntheticLambda0.run(Unknown Source:4)"));
+    long c = ViolationFingerprint.of(violation(ViolationType.DISK_READ, MESSAGE,
+        "\tat com.example.Foo.lambda$load$1(Foo.java:12)",
+        "\tat com.example.Foo$$ExternalSyntheticLambda1.run(Unknown Source:2)"));
+    assertEquals(a, b);
+    assertNotEquals(a, c);
+  }
+
+  @Test public void ignoresElidedMarkersAndFramesBelowTheTop() {
+    ArrayList<String> frames = new ArrayList<>();
+    for (int i = 0; i < 16; i++) {
+      frames.add("\tat com.example.Foo.f" + i + "(Foo.java:" + i + ")");
+    }
+    ArrayList<String> elided = new ArrayList<>(frames);
+    elided.add("\t... 120 lines elided");
+    elided.add("\tat com.example.Bottom.run(Bottom.java:1)");
+    frames.add("\tat com.example.Other.run(Other.java:1)");
+
+    assertEquals(ViolationFingerprint.of(violation(ViolationType.DISK_READ, MESSAGE, frames)),
+        ViolationFingerprint.of(violation(ViolationType.DISK_READ, MESSAGE, elided)));
+    assertFalse(ViolationFingerprint.isFrame("\t... 120 lines elided"));
+    assertTrue(ViolationFingerprint.isFrame("\tat com.example.Foo.f(Foo.java:1)"));
+  }
+
+  @Test public void hexRoundTrip() {
+    for (long fingerprint : new long[] {0, 1, -1, 0x0123456789abcdefL, Long.MIN_VALUE}) {
+      String hex = ViolationFingerprint.toHex(fingerprint);
+      assertEquals(16, hex.length());
+      assertEquals(fingerprint, ViolationFingerprint.fromHex(hex));
+    }
+  }
+
+  @Test(expected = NumberFormatException.class)
+  public void rejectsBrokenHex() {
+    ViolationFingerprint.fromHex("xyz");
+  }
+
+  @Test public void baselineMatchesWrittenViolations() throws Exception {
+    StrictModeViolation known = violation(ViolationType.DISK_READ, MESSAGE,
+        "\tat com.example.Foo.load(Foo.java:12)");
+    StrictModeViolation moved = violation(ViolationType.DISK_READ, MESSAGE,
+        "\tat com.example.Foo.load(Foo.java:40)");
+    StrictModeViolation other = violation(ViolationType.NETWORK, MESSAGE,
+        "\tat com.example.Foo.load(Foo.java:12)");
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    ViolationBaseline.EMPTY.write(Collections.singletonList(known), out);
+    String text = out.toString("UTF-8") + "# comment\n\nnot hex\n";
+    ViolationBaseline baseline = ViolationBaseline.read(
+        new ByteArrayInputStream(text.getBytes("UTF-8")));
+
+    assertEquals(1, baseline.size());
+    assertTrue(baseline.contains(known));
+    assertTrue(baseline.contains(moved));
+    assertFalse(baseline.contains(other));
+    assertFalse(ViolationBaseline.EMPTY.contains(known));
+  }
+
+  @Test public void mergesIntoExistingBaseline() throws Exception {
+    StrictModeViolation first = violation(ViolationType.DISK_READ, MESSAGE,
+        "\tat com.example.Foo.load(Foo.java:12)");
+    StrictModeViolation second = violation(ViolationType.NETWORK, MESSAGE,
+        "\tat com.example.Foo.load(Foo.java:12)");
+    ViolationBaseline baseline = roundTrip(ViolationBaseline.EMPTY, first);
+    baseline = roundTrip(baseline, second, first);
+
+    assertEquals(2, baseline.size());
+    assertTrue(baseline.contains(first));
+    assertTrue(baseline.contains(second));
+  }
+
+  private static long fingerprint(String... frames) {
+    return ViolationFingerprint.of(violation(ViolationType.DISK_READ, MESSAGE, frames));
+  }
+
+  private static ViolationBaseline roundTrip(ViolationBaseline baseline,
+      StrictModeViolation... violations) throws Exception {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    baseline.write(Arrays.asList(violations), out);
+    return ViolationBaseline.read(new ByteArrayInputStream(out.toByteArray()));
+  }
+
+  private static StrictModeViolation violation(ViolationType type, String message,
+      String... frames) {
+    return violation(type, message, new ArrayList<>(Arrays.asList(frames)));
+  }
+
+  private static StrictModeViolation violation(ViolationType type, String message,
+      ArrayList<String> frames) {
+    ArrayList<String> lines = new ArrayList<>();
+    lines.add(message);
+    lines.addAll(frames);
+    return new StrictModeViolation.Builder()
+        .setViolationType(type)
+        .setMessage(message)
+        .setStacktreace(lines)
+        .build();
+  }
+}
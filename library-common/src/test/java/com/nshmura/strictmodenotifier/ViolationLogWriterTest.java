@@ -0,0 +1,226 @@
+package com.nshmura.strictmodenotifier;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ViolationLogWriterTest {
+
+  private static final int THREADS = 8;
+  private static final int APPENDS_PER_THREAD = 200;
+
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  private final NotifierConfig config = NotifierConfig.getInstance();
+  private ExecutorService executor;
+  private File dir;
+  private SegmentedViolationLog log;
+  private ViolationLogWriter writer;
+
+  @Before public void setUp() throws Exception {
+    config.setRetentionPolicy(new RetentionPolicy.Builder().build());
+    executor = Executors.newSingleThreadExecutor();
+    dir = folder.newFolder();
+    log = SegmentedViolationLog.open(dir, 60 * 60 * 1000, 16, 16 * 1024);
+    writer = new ViolationLogWriter(log, executor, config, null);
+  }
+
+  @After public void tearDown() throws Exception {
+    executor.shutdown();
+    executor.awaitTermination(10, TimeUnit.SECONDS);
+    log.close();
+    config.setRetentionPolicy(RetentionPolicy.DEFAULT);
+  }
+
+  /**
+   * Threads append while another thread deletes and another reads. Every append that is not
+   * deleted must be stored once, under a unique id.
+   */
+  @Test public void concurrentMutationsLoseNothing() throws Exception {
+    final CountDownLatch start = new CountDownLatch(1);
+    final List<List<Future<StrictModeViolation>>> results = new ArrayList<>();
+    List<Thread> threads = new ArrayList<>();
+    for (int t = 0; t < THREADS; t++) {
+      final int thread = t;
+      final List<Future<StrictModeViolation>> futures = new ArrayList<>();
+      results.add(futures);
+      threads.add(new Thread(new Runnable() {
+        @Override public void run() {
+          await(start);
+          for (int i = 0; i < APPENDS_PER_THREAD; i++) {
+            futures.add(writer.append(violation(thread * APPENDS_PER_THREAD + i)));
+          }
+        }
+      }));
+    }
+
+    // deletes every id divisible by 3 as soon as it exists
+    final Set<Long> deleted = new HashSet<>();
+    threads.add(new Thread(new Runnable() {
+      @Override public void run() {
+        await(start);
+        long total = THREADS * APPENDS_PER_THREAD;
+        for (long id = 3; id <= total; id += 3) {
+          while (true) {
+            MappedViolationLog.Index index = writer.index();
+            if (index.size() > 0 && index.getId(0) >= id) {
+              break;
+            }
+            Thread.yield();
+          }
+          writer.delete(id);
+          deleted.add(id);
+        }
+      }
+    }));
+
+    final AtomicBoolean stop = new AtomicBoolean();
+    final AtomicInteger reads = new AtomicInteger();
+    Thread reader = new Thread(new Runnable() {
+      @Override public void run() {
+        await(start);
+        while (!stop.get()) {
+          MappedViolationLog.Index index = writer.index();
+          for (int i = 0; i < index.size(); i++) {
+            index.getId(i);
+          }
+          reads.incrementAndGet();
+        }
+      }
+    });
+
+    for (Thread thread : threads) {
+      thread.start();
+    }
+    reader.start();
+    start.countDown();
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    writer.sync().get();
+    stop.set(true);
+    reader.join();
+    assertTrue(reads.get() > 0);
+
+    Set<Long> ids = new HashSet<>();
+    Set<String> messages = new HashSet<>();
+    for (List<Future<StrictModeViolation>> futures : results) {
+      for (Future<StrictModeViolation> future : futures) {
+        StrictModeViolation stored = future.get();
+        assertTrue("duplicate id " + stored.id, ids.add(stored.id));
+        messages.add(stored.message);
+      }
+    }
+    int total = THREADS * APPENDS_PER_THREAD;
+    assertEquals(total, ids.size());
+    assertEquals(total, messages.size());
+
+    assertLive(writer.getAll(), ids, deleted);
+
+    // the same records after reopen
+    SegmentedViolationLog reopened =
+        SegmentedViolationLog.open(dir, 60 * 60 * 1000, 16, 16 * 1024);
+    assertLive(reopened.getAll(), ids, deleted);
+    reopened.close();
+  }
+
+  @Test public void appliesRetentionWhileAppending() throws Exception {
+    config.setRetentionPolicy(new RetentionPolicy.Builder()
+        .setMaxCount(ViolationType.NETWORK, 10)
+        .build());
+    final CountDownLatch start = new CountDownLatch(1);
+    List<Thread> threads = new ArrayList<>();
+    for (int t = 0; t < THREADS; t++) {
+      final int thread = t;
+      threads.add(new Thread(new Runnable() {
+        @Override public void run() {
+          await(start);
+          for (int i = 0; i < 50; i++) {
+            writer.append(violation(thread * 50 + i));
+          }
+        }
+      }));
+    }
+    for (Thread thread : threads) {
+      thread.start();
+    }
+    start.countDown();
+    for (Thread thread : threads) {
+      thread.join();
+    }
+
+    // retention steps queue themselves behind the appends
+    int network = Integer.MAX_VALUE;
+    for (int i = 0; i < 1000 && network > 10; i++) {
+      writer.sync().get();
+      network = 0;
+      for (StrictModeViolation violation : writer.getAll()) {
+        if (violation.violationType == ViolationType.NETWORK) {
+          network++;
+        }
+      }
+    }
+    assertEquals(10, network);
+    assertEquals(THREADS * 50 / 2 + 10, writer.index().size());
+  }
+
+  @Test public void decodesUntypedMessagesOnly() throws Exception {
+    writer.append(violation(0)).get();
+    writer.append(violation(1).newBuilder().setViolationType(null).build()).get();
+
+    MappedViolationLog.Index index = writer.index();
+    String[] messages = writer.getUntypedMessages(index);
+    assertEquals(2, messages.length);
+    assertEquals("message 1", messages[0]);
+    assertNull(messages[1]);
+  }
+
+  private static void assertLive(List<StrictModeViolation> violations, Set<Long> ids,
+      Set<Long> deleted) {
+    Set<Long> live = new HashSet<>();
+    for (StrictModeViolation violation : violations) {
+      assertTrue(ids.contains(violation.id));
+      assertTrue("deleted " + violation.id, !deleted.contains(violation.id));
+      live.add(violation.id);
+    }
+    assertEquals(ids.size() - deleted.size(), live.size());
+  }
+
+  private static void await(CountDownLatch latch) {
+    try {
+      latch.await();
+    } catch (InterruptedException e) {
+      throw new AssertionError(e);
+    }
+  }
+
+  private static StrictModeViolation violation(int n) {
+    ArrayList<String> lines = new ArrayList<>();
+    lines.add("StrictMode policy violation: android.os.StrictMode");
+    lines.add("at com.example.Foo.load" + n + "(Foo.java:" + n + ")");
+    return new StrictModeViolation.Builder()
+        .setViolationType(n % 2 == 0 ? ViolationType.NETWORK : ViolationType.DISK_READ)
+        .setMessage("message " + n)
+        .setStacktreace(lines)
+        .setTime(System.currentTimeMillis())
+        .build();
+  }
+}
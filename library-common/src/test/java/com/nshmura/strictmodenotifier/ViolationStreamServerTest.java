@@ -0,0 +1,155 @@
+package com.nshmura.strictmodenotifier;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ViolationStreamServerTest {
+
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+  private ServerSocket serverSocket;
+  private ViolationStreamServer server;
+  private final ArrayList<Socket> clients = new ArrayList<>();
+
+  @Before public void setUp() throws Exception {
+    serverSocket = new ServerSocket(0, 10, InetAddress.getLoopbackAddress());
+    server = new ViolationStreamServer(new ViolationStreamServer.SocketAcceptor(serverSocket),
+        3, 4);
+    server.start();
+  }
+
+  @After public void tearDown() throws Exception {
+    server.stop();
+    for (Socket client : clients) {
+      client.close();
+    }
+  }
+
+  @Test public void streamsLiveViolations() throws Exception {
+    BufferedReader reader = connect(false);
+    awaitSubscribers(1);
+
+    server.publish(violation(1, "first"));
+    server.publish(violation(2, "sec\"ond\n"));
+
+    assertTrue(reader.readLine().startsWith("{\"id\":1,\"type\":\"DISK_READ\""));
+    String second = reader.readLine();
+    assertTrue(second, second.contains("\"message\":\"sec\\\"ond\\n\""));
+    assertTrue(second, second.endsWith("\"stacktrace\":[\"sec\\\"ond\\n\",\"\\tat Foo.bar(Foo.java:1)\"]}"));
+  }
+
+  @Test public void replaysLastViolationsToLateSubscribers() throws Exception {
+    for (int i = 1; i <= 5; i++) {
+      server.publish(violation(i, "message " + i));
+    }
+
+    BufferedReader reader = connect(false);
+    assertTrue(reader.readLine().startsWith("{\"id\":3,"));
+    assertTrue(reader.readLine().startsWith("{\"id\":4,"));
+    assertTrue(reader.readLine().startsWith("{\"id\":5,"));
+
+    server.publish(violation(6, "live"));
+    assertTrue(reader.readLine().startsWith("{\"id\":6,"));
+  }
+
+  @Test public void answersHttpRequests() throws Exception {
+    server.publish(violation(1, "first"));
+
+    BufferedReader reader = connect(true);
+    assertEquals("HTTP/1.1 200 OK", reader.readLine());
+    assertEquals("Content-Type: application/x-ndjson", reader.readLine());
+    String line;
+    while ((line = reader.readLine()).length() > 0) {
+      // skip headers
+    }
+    assertTrue(reader.readLine().startsWith("{\"id\":1,"));
+  }
+
+  @Test public void slowSubscriberDoesNotBlockPublisher() throws Exception {
+    Socket client = new Socket(serverSocket.getInetAddress(), serverSocket.getLocalPort());
+    clients.add(client);
+    awaitSubscribers(1);
+
+    // far more than the socket buffers and the queue can hold
+    StringBuilder message = new StringBuilder();
+    while (message.length() < 10000) {
+      message.append("large message ");
+    }
+    long start = System.nanoTime();
+    for (int i = 1; i <= 2000; i++) {
+      server.publish(violation(i, message.toString()));
+    }
+    assertTrue((System.nanoTime() - start) / 1000000 < 5000);
+
+    BufferedReader reader =
+        new BufferedReader(new InputStreamReader(client.getInputStream(), UTF_8));
+    boolean dropped = false;
+    String line;
+    while ((line = reader.readLine()) != null) {
+      if (line.startsWith("{\"dropped\":")) {
+        dropped = true;
+      }
+      if (line.startsWith("{\"id\":2000,")) {
+        break;
+      }
+    }
+    assertTrue(dropped);
+    assertTrue(line != null);
+  }
+
+  @Test public void removesDisconnectedSubscribers() throws Exception {
+    connect(false);
+    awaitSubscribers(1);
+    clients.get(0).close();
+
+    long deadline = System.currentTimeMillis() + 5000;
+    while (server.getSubscriberCount() > 0 && System.currentTimeMillis() < deadline) {
+      server.publish(violation(1, "ping"));
+      Thread.sleep(10);
+    }
+    assertEquals(0, server.getSubscriberCount());
+  }
+
+  private BufferedReader connect(boolean http) throws Exception {
+    Socket client = new Socket(serverSocket.getInetAddress(), serverSocket.getLocalPort());
+    clients.add(client);
+    if (http) {
+      OutputStream out = client.getOutputStream();
+      out.write("GET / HTTP/1.1\r\nHost: localhost\r\n\r\n".getBytes(UTF_8));
+      out.flush();
+    }
+    return new BufferedReader(new InputStreamReader(client.getInputStream(), UTF_8));
+  }
+
+  private void awaitSubscribers(int count) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + 5000;
+    while (server.getSubscriberCount() < count && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+    assertEquals(count, server.getSubscriberCount());
+  }
+
+  private static StrictModeViolation violation(long id, String message) {
+    ArrayList<String> lines = new ArrayList<>();
+    lines.add(message);
+    lines.add("\tat Foo.bar(Foo.java:1)");
+    return new StrictModeViolation.Builder()
+        .setId(id)
+        .setViolationType(ViolationType.DISK_READ)
+        .setMessage(message)
+        .setStacktreace(lines)
+        .build();
+  }
+}
@@ -0,0 +1,51 @@
+package com.nshmura.strictmodenotifier;
+
+import java.util.HashSet;
+import java.util.Set;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ViolationTypeTest {
+
+  /**
+   * The codes are stored in the log files. A failure here means stored reports would be read as
+   * another type.
+   */
+  @Test public void keepsStoredCodes() {
+    assertEquals(0, ViolationType.CUSTOM_SLOW_CALL.code);
+    assertEquals(1, ViolationType.NETWORK.code);
+    assertEquals(2, ViolationType.RESOURCE_MISMATCHES.code);
+    assertEquals(3, ViolationType.DISK_READ.code);
+    assertEquals(4, ViolationType.DISK_WRITE.code);
+    assertEquals(5, ViolationType.UNBUFFERED_IO.code);
+    assertEquals(6, ViolationType.CLASS_INSTANCE_LIMIT.code);
+    assertEquals(7, ViolationType.CLEARTEXT_NETWORK.code);
+    assertEquals(8, ViolationType.FILE_URI_EXPOSURE.code);
+    assertEquals(9, ViolationType.LEAKED_CLOSABLE_OBJECTS.code);
+    assertEquals(10, ViolationType.ACTIVITY_LEAKS.code);
+    assertEquals(11, ViolationType.LEAKED_REGISTRATION_OBJECTS.code);
+    assertEquals(12, ViolationType.LEAKED_SQL_LITE_OBJECTS.code);
+    assertEquals(13, ViolationType.CONTENT_URI_WITHOUT_PERMISSION.code);
+    assertEquals(14, ViolationType.UNTAGGED_SOCKET.code);
+    assertEquals(15, ViolationType.NON_SDK_API_USED.code);
+    assertEquals(16, ViolationType.IMPLICIT_DIRECT_BOOT.code);
+    assertEquals(17, ViolationType.CREDENTIAL_PROTECTED_WHILE_LOCKED.code);
+    assertEquals(18, ViolationType.INCORRECT_CONTEXT_USE.code);
+    assertEquals(19, ViolationType.UNSAFE_INTENT_LAUNCH.code);
+    assertEquals(20, ViolationType.UNKNOWN.code);
+  }
+
+  @Test public void codesAreUnique() {
+    Set<Integer> codes = new HashSet<>();
+    for (ViolationType type : ViolationType.values()) {
+      assertTrue(type.name(), codes.add(type.code));
+      assertSame(type, ViolationType.fromCode(type.code));
+    }
+    assertNull(ViolationType.fromCode(-1));
+    assertNull(ViolationType.fromCode(Short.MAX_VALUE));
+  }
+}
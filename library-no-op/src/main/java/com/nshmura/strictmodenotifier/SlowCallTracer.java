@@ -0,0 +1,20 @@
+package com.nshmura.strictmodenotifier;
+
+public final class SlowCallTracer {
+
+  private SlowCallTracer() {
+  }
+
+  public static long begin() {
+    //no-op
+    return 0;
+  }
+
+  public static void end(String name, long token) {
+    //no-op
+  }
+
+  public static void trace(String name, Runnable runnable) {
+    runnable.run();
+  }
+}
@@ -8,4 +8,9 @@ public class StrictModeNotifier {
     //no-op
     return NotifierConfig.getInstance();
   }
+
+  public static NotifierConfig installDeferred(Context context) {
+    //no-op
+    return NotifierConfig.getInstance();
+  }
 }
\ No newline at end of file
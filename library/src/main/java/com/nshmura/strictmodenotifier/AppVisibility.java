@@ -0,0 +1,105 @@
+package com.nshmura.strictmodenotifier;
+
+import android.app.Activity;
+import android.app.ActivityManager;
+import android.app.Application;
+import android.content.Context;
+import android.os.Bundle;
+
+/**
+ * Whether an activity of this process is started. See
+ * {@link NotifierConfig#setBackgroundPauseEnabled}.
+ *
+ * Activities are counted from the install on. The install only registers the callbacks, so that
+ * it is cheap on the main thread whether or not the pause is enabled. Activities started before
+ * the install are not counted, so check {@link #isVisible()} off the main thread before acting on
+ * a change to the background.
+ */
+final class AppVisibility {
+
+  interface Listener {
+    /**
+     * Called on the main thread.
+     */
+    void onVisibilityChanged(boolean foreground);
+  }
+
+  private static boolean installed;
+  private static int startedActivities;
+  // unknown until an activity is counted, and taken as visible until then
+  private static boolean foreground = true;
+  private static Listener listener;
+
+  private AppVisibility() {
+  }
+
+  /**
+   * Call this on the main thread, e.g. in Application.onCreate().
+   */
+  static void install(Context context) {
+    Context appContext = context.getApplicationContext();
+    synchronized (AppVisibility.class) {
+      if (installed || !(appContext instanceof Application)) {
+        return;
+      }
+      installed = true;
+    }
+    ((Application) appContext).registerActivityLifecycleCallbacks(callbacks);
+  }
+
+  static synchronized void setListener(Listener newListener) {
+    listener = newListener;
+  }
+
+  /**
+   * @return true if the process is visible to the user. This is a Binder call.
+   */
+  static boolean isVisible() {
+    ActivityManager.RunningAppProcessInfo info = new ActivityManager.RunningAppProcessInfo();
+    ActivityManager.getMyMemoryState(info);
+    return info.importance <= ActivityManager.RunningAppProcessInfo.IMPORTANCE_VISIBLE;
+  }
+
+  private static void update(int delta) {
+    Listener target;
+    boolean now;
+    synchronized (AppVisibility.class) {
+      startedActivities = Math.max(0, startedActivities + delta);
+      now = startedActivities > 0;
+      if (now == foreground) {
+        return;
+      }
+      foreground = now;
+      target = listener;
+    }
+    if (target != null) {
+      target.onVisibilityChanged(now);
+    }
+  }
+
+  private static final Application.ActivityLifecycleCallbacks callbacks =
+      new Application.ActivityLifecycleCallbacks() {
+        @Override public void onActivityStarted(Activity activity) {
+          update(1);
+        }
+
+        @Override public void onActivityStopped(Activity activity) {
+          update(-1);
+        }
+
+        @Override public void onActivityCreated(Activity activity, Bundle savedInstanceState) {
+        }
+
+        @Override public void onActivityResumed(Activity activity) {
+        }
+
+        @Override public void onActivityPaused(Activity activity) {
+        }
+
+        @Override public void onActivitySaveInstanceState(Activity activity, Bundle outState) {
+        }
+
+        @Override public void onActivityDestroyed(Activity activity) {
+        }
+      };
+}
@@ -0,0 +1,65 @@
+package com.nshmura.strictmodenotifier;
+
+import android.content.Context;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Loads the {@link ViolationBaseline} shipped in the assets of the app, and counts the violations
+ * suppressed by it in this process.
+ */
+final class BaselineAssets {
+
+  static final String ASSET_NAME = "strictmode_notifier_baseline.txt";
+
+  private static volatile ViolationBaseline baseline;
+  private static final AtomicInteger suppressedCount = new AtomicInteger();
+
+  private BaselineAssets() {
+  }
+
+  /**
+   * Read the baseline from assets. This does disk I/O, so call it on a background thread.
+   */
+  static ViolationBaseline get(Context context) {
+    ViolationBaseline result = baseline;
+    if (result == null) {
+      synchronized (BaselineAssets.class) {
+        result = baseline;
+        if (result == null) {
+          result = load(context);
+          baseline = result;
+        }
+      }
+    }
+    return result;
+  }
+
+  /**
+   * @return the loaded baseline, or {@link ViolationBaseline#EMPTY} if it has not been read yet.
+   */
+  static ViolationBaseline peek() {
+    ViolationBaseline result = baseline;
+    return result != null ? result : ViolationBaseline.EMPTY;
+  }
+
+  static void onSuppressed() {
+    suppressedCount.incrementAndGet();
+  }
+
+  static int getSuppressedCount() {
+    return suppressedCount.get();
+  }
+
+  private static ViolationBaseline load(Context context) {
+    try {
+      return ViolationBaseline.read(context.getAssets().open(ASSET_NAME));
+    } catch (FileNotFoundException e) {
+      return ViolationBaseline.EMPTY;
+    } catch (IOException e) {
+      e.printStackTrace();
+      return ViolationBaseline.EMPTY;
+    }
+  }
+}
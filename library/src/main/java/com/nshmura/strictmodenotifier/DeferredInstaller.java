@@ -0,0 +1,126 @@
+package com.nshmura.strictmodenotifier;
+
+import android.app.Activity;
+import android.app.Application;
+import android.content.Context;
+import android.os.Build;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.MessageQueue;
+import android.os.SystemClock;
+import android.os.Trace;
+import android.view.Choreographer;
+
+/**
+ * Installs the notifier after the first frame, when the main thread becomes idle, or after
+ * {@link #MAX_DELAY} at the latest, e.g. when the process has no activity.
+ *
+ * The watcher reads logcat from the start of the process, so violations logged before the
+ * install are not lost. Violations posted in process wait in {@link ViolationInbox}.
+ */
+final class DeferredInstaller {
+
+  private static final long MAX_DELAY = 5000; //ms
+
+  private final Context appContext;
+  private final Class<? extends LogWatchService> serviceClass;
+  private final long since;
+  private final long scheduledAt = SystemClock.elapsedRealtime();
+  private final Handler handler = new Handler(Looper.getMainLooper());
+  private boolean installed;
+
+  private DeferredInstaller(Context appContext, Class<? extends LogWatchService> serviceClass) {
+    this.appContext = appContext;
+    this.serviceClass = serviceClass;
+    this.since = getProcessStartTime();
+  }
+
+  static void schedule(Context context, Class<? extends LogWatchService> serviceClass) {
+    new DeferredInstaller(context.getApplicationContext(), serviceClass).schedule();
+  }
+
+  private void schedule() {
+    handler.postDelayed(install, MAX_DELAY);
+    if (appContext instanceof Application) {
+      ((Application) appContext).registerActivityLifecycleCallbacks(firstResume);
+    } else {
+      handler.post(addIdleHandler);
+    }
+  }
+
+  /**
+   * @return the wall clock time the process started at.
+   */
+  private static long getProcessStartTime() {
+    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+      long elapsed = SystemClock.elapsedRealtime() - android.os.Process.getStartElapsedRealtime();
+      return System.currentTimeMillis() - elapsed;
+    }
+    // installed in Application.onCreate(), close enough to the start
+    return System.currentTimeMillis();
+  }
+
+  private final Runnable install = new Runnable() {
+    @Override public void run() {
+      if (installed) {
+        return;
+      }
+      installed = true;
+      handler.removeCallbacks(this);
+      if (appContext instanceof Application) {
+        ((Application) appContext).unregisterActivityLifecycleCallbacks(firstResume);
+      }
+
+      Trace.beginSection("StrictModeNotifier.deferredInstall");
+      long start = System.nanoTime();
+      StrictModeNotifierInternals.enableReportActivity(appContext);
+      StrictModeNotifierInternals.startLogWatchService(appContext, serviceClass, since);
+      NotifierMetrics.get().onDeferredInstall(System.nanoTime() - start,
+          SystemClock.elapsedRealtime() - scheduledAt);
+      Trace.endSection();
+    }
+  };
+
+  private final Runnable addIdleHandler = new Runnable() {
+    @Override public void run() {
+      Looper.myQueue().addIdleHandler(new MessageQueue.IdleHandler() {
+        @Override public boolean queueIdle() {
+          install.run();
+          return false;
+        }
+      });
+    }
+  };
+
+  private final Application.ActivityLifecycleCallbacks firstResume =
+      new Application.ActivityLifecycleCallbacks() {
+        @Override public void onActivityResumed(Activity activity) {
+          ((Application) appContext).unregisterActivityLifecycleCallbacks(this);
+          // the next frame is the first frame of the activity. wait for idle after it.
+          Choreographer.getInstance().postFrameCallback(new Choreographer.FrameCallback() {
+            @Override public void doFrame(long frameTimeNanos) {
+              handler.post(addIdleHandler);
+            }
+          });
+        }
+
+        @Override public void onActivityCreated(Activity activity, Bundle savedInstanceState) {
+        }
+
+        @Override public void onActivityStarted(Activity activity) {
+        }
+
+        @Override public void onActivityPaused(Activity activity) {
+        }
+
+        @Override public void onActivityStopped(Activity activity) {
+        }
+
+        @Override public void onActivitySaveInstanceState(Activity activity, Bundle outState) {
+        }
+
+        @Override public void onActivityDestroyed(Activity activity) {
+        }
+      };
+}
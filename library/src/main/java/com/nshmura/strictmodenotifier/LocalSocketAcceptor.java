@@ -0,0 +1,57 @@
+package com.nshmura.strictmodenotifier;
+
+import android.net.LocalServerSocket;
+import android.net.LocalSocket;
+import android.net.LocalSocketAddress;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * {@link ViolationStreamServer.Acceptor} of a socket in the abstract namespace, which
+ * `adb forward tcp:<port> localabstract:<name>` can reach without the INTERNET permission.
+ */
+class LocalSocketAcceptor implements ViolationStreamServer.Acceptor {
+
+  private final String name;
+  private final LocalServerSocket serverSocket;
+
+  LocalSocketAcceptor(String name) throws IOException {
+    this.name = name;
+    serverSocket = new LocalServerSocket(name);
+  }
+
+  @Override public ViolationStreamServer.Connection accept() throws IOException {
+    final LocalSocket socket = serverSocket.accept();
+    return new ViolationStreamServer.Connection() {
+      @Override public InputStream getInputStream() throws IOException {
+        return socket.getInputStream();
+      }
+
+      @Override public OutputStream getOutputStream() throws IOException {
+        return socket.getOutputStream();
+      }
+
+      @Override public void setReadTimeout(int millis) throws IOException {
+        socket.setSoTimeout(millis);
+      }
+
+      @Override public void close() throws IOException {
+        socket.close();
+      }
+    };
+  }
+
+  @Override public void close() throws IOException {
+    // close() does not wake up accept() on some versions. connect to wake it up.
+    LocalSocket socket = new LocalSocket();
+    try {
+      socket.connect(new LocalSocketAddress(name));
+    } catch (IOException e) {
+      //ignore
+    } finally {
+      socket.close();
+    }
+    serverSocket.close();
+  }
+}
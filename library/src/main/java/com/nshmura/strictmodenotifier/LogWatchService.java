@@ -1,39 +1,67 @@
 package com.nshmura.strictmodenotifier;
 
+import android.app.ActivityManager;
 import android.app.IntentService;
+import android.content.Context;
 import android.content.Intent;
-import android.text.TextUtils;
+import android.os.Build;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.SystemClock;
 import android.util.Log;
 
 import com.bzl.apm.strictmode.notifer.R;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
-import java.util.Timer;
-import java.util.TimerTask;
+import java.util.Set;
 
 public class LogWatchService extends IntentService {
 
+  static final String EXTRA_SINCE = "EXTRA_SINCE";
+
   private static final String THREAD_NAME = LogWatchService.class.getSimpleName();
   private static final String TAG = THREAD_NAME;
 
-  private static final String LOGCAT_COMMAND = "logcat -v time -s StrictMode:* System.err:*";
-  private static final java.lang.String PARSE_REGEXP = "(StrictMode|System.err)(\\([ 0-9]+\\))?:";
-  private static final CharSequence EXCEPTION_KEY = "System.err";
-
   private static final long NOTIFICATION_DELAY = 2000; //ms
   private static final long LOG_DELAY = 1000; //ms
   private static final long EXIT_SPAN = 1000 * 60; //ms
+  private static final long PID_REFRESH_SPAN = 5000; //ms
+  private static final long FILTER_CHECK_SPAN = 5000; //ms
+  private static final long PAUSE_DELAY = 10 * 1000; //ms
 
   private NotifierConfig notifierConfig = NotifierConfig.getInstance();
-  private Process proc;
+  private volatile boolean destroyed;
   private final ViolationStore violationStore;
-  private List<StrictModeLog> logs = new ArrayList<>();
-  private Timer timer = null;
-  private ViolationType[] violationTypes = ViolationType.values();
+  private final ViolationEngine engine;
+  private HandlerThread flushThread;
+  // written under this, read without it by the visibility listener on the main thread
+  private volatile Handler flushHandler;
+  private boolean flushScheduled;
+  // the settings of the violation the engine is handing over to notifyViolation(). guarded by this.
+  private NotifierConfig.Snapshot violationConfig;
+  // when the last line was read. lines read again after a restart are of an earlier time.
+  private long lastLineReadAt;
+  private volatile MainThreadMonitor mainThreadMonitor;
+  private volatile ViolationStreamServer streamServer;
+  private volatile ViolationNotifier violationNotifier;
+  private final NotifierMetrics metrics = NotifierMetrics.get();
+  // logcat is stopped while the app is in background. guarded by pauseLock, not by this, so that
+  // the main thread never waits for the engine.
+  private final Object pauseLock = new Object();
+  private Process proc;
+  private boolean paused;
+  private int pauseCount;
+
+  // logcat filters
+  private volatile boolean sourceFilterSupported = true;
+  private long since;
+  // where the last read stopped, to restart logcat there
+  private final LogcatCursor cursor = new LogcatCursor();
+  private final LogcatTime logcatTime = new LogcatTime();
+  private Set<Integer> ownPids = new HashSet<>();
+  private long ownPidsUpdatedAt;
 
   public LogWatchService() {
     this(TAG);
@@ -42,6 +70,38 @@ public class LogWatchService extends IntentService {
   public LogWatchService(String name) {
     super(name);
     violationStore = new ViolationStore(this);
+    engine = new ViolationEngine(notifierConfig, new ViolationEngine.Callback() {
+      @Override public void onViolation(StrictModeViolation violation) {
+        onViolation(violation, notifierConfig.snapshot());
+      }
+
+      @Override public void onViolation(final StrictModeViolation violation,
+          final NotifierConfig.Snapshot config) {
+        // called under the lock of the service. the store and the custom actions run without it.
+        Handler handler = flushHandler;
+        if (handler == null) {
+          deliverViolation(violation, config);
+          return;
+        }
+        handler.post(new Runnable() {
+          @Override public void run() {
+            deliverViolation(violation, config);
+          }
+        });
+      }
+
+      @Override public String getThreadName(int tid) {
+        return ThreadNames.get(tid);
+      }
+
+      @Override public void onSelfViolation(StrictModeViolation violation) {
+        metrics.onSelfViolation();
+      }
+
+      @Override public void onBaselineMatched(StrictModeViolation violation) {
+        BaselineAssets.onSuppressed();
+      }
+    });
   }
 
   @Override public int onStartCommand(Intent intent, int flags, int startId) {
@@ -50,16 +110,128 @@ public class LogWatchService extends IntentService {
   }
 
   @Override protected void onHandleIntent(Intent intent) {
+    // read from the given time, e.g. the start of the process for the deferred install
+    since = intent != null ? intent.getLongExtra(EXTRA_SINCE, 0) : 0;
+    if (since == 0) {
+      since = System.currentTimeMillis();
+    }
+
+    if (notifierConfig.isMainThreadMonitorEnabled()) {
+      mainThreadMonitor = MainThreadMonitor.install(this);
+    }
+
+    ViolationBaseline baseline = BaselineAssets.get(this);
+    log("baseline size:" + baseline.size());
+    SessionInfo sessionInfo = StrictModeNotifierInternals.getSessionInfo(this);
+    synchronized (this) {
+      engine.setBaseline(baseline);
+      engine.setSessionInfo(sessionInfo);
+    }
+
+    if (notifierConfig.isStreamServerEnabled()) {
+      startStreamServer();
+    }
+    if (violationNotifier == null) {
+      violationNotifier = new ViolationNotifier(this);
+    }
+    synchronized (this) {
+      if (flushThread == null) {
+        flushThread = new HandlerThread(THREAD_NAME + "-Flush",
+            android.os.Process.THREAD_PRIORITY_BACKGROUND);
+        flushThread.start();
+        flushHandler = new Handler(flushThread.getLooper());
+      }
+    }
+
+    AppVisibility.setListener(visibilityListener);
+    // the pause checks the importance of the process on the flush thread
+    schedulePause();
+
+    ViolationInbox.setReceiver(new ViolationInbox.Receiver() {
+      @Override public void onViolation(StrictModeViolation violation) {
+        synchronized (LogWatchService.this) {
+          engine.onViolation(violation);
+        }
+      }
+    });
+
     startReadLoop();
   }
 
   @Override public void onDestroy() {
     super.onDestroy();
     log("onDestroy");
+    destroyed = true;
+    ViolationInbox.setReceiver(null);
+    AppVisibility.setListener(null);
+
+    if (streamServer != null) {
+      streamServer.stop();
+      streamServer = null;
+    }
+
+    if (violationNotifier != null) {
+      violationNotifier.quit();
+      violationNotifier = null;
+    }
+
+    synchronized (this) {
+      if (flushThread != null) {
+        // the violations handed over before are still delivered
+        flushThread.quitSafely();
+        flushThread = null;
+        flushHandler = null;
+      }
+    }
+    synchronized (pauseLock) {
+      // wake up the read loop waiting for resume
+      pauseLock.notifyAll();
+
+      if (proc != null) {
+        proc.destroy();
+        proc = null;
+      }
+    }
+  }
+
+  /**
+   * Store, notify and publish a violation of the engine. Called on the flush thread, without the
+   * lock of the service, as it waits for the store and runs the custom actions.
+   */
+  private void deliverViolation(StrictModeViolation violation, NotifierConfig.Snapshot config) {
+    metrics.getThreadHotspots().record(violation);
+    if (mainThreadMonitor != null) {
+      violation = mainThreadMonitor.annotate(violation);
+    }
+    violation = ViolationTracer.mark(violation);
+    if (StringModeConfig.from(this).isEnabled()) {
+      violation = storeViolation(violation);
+      synchronized (this) {
+        violationConfig = config;
+      }
+      try {
+        notifyViolation(violation);
+      } finally {
+        synchronized (this) {
+          violationConfig = null;
+        }
+      }
+    }
+    ViolationStreamServer server = streamServer;
+    if (server != null) {
+      server.publish(violation);
+    }
+  }
 
-    if (proc != null) {
-      proc.destroy();
-      proc = null;
+  private void startStreamServer() {
+    String name = "strictmode_notifier_" + getPackageName();
+    try {
+      ViolationStreamServer server = new ViolationStreamServer(new LocalSocketAcceptor(name));
+      server.start();
+      streamServer = server;
+      log("stream server: localabstract:" + name);
+    } catch (IOException e) {
+      error("cannot start the stream server: " + e.getMessage());
     }
   }
 
@@ -69,9 +241,16 @@ public class LogWatchService extends IntentService {
    * @param violation StrictModeViolation
    */
   protected void notifyViolation(StrictModeViolation violation) {
+    NotifierConfig.Snapshot config;
+    synchronized (this) {
+      config = violationConfig;
+    }
+    if (config == null) {
+      config = notifierConfig.snapshot();
+    }
+
     //Custom Actions
-    List<CustomAction> customActions = notifierConfig.getCustomActions();
-    for (CustomAction customAction : customActions) {
+    for (CustomAction customAction : config.customActions) {
       customAction.onViolation(violation);
     }
 
@@ -82,21 +261,37 @@ public class LogWatchService extends IntentService {
     } else {
       notificationTitle = getString(R.string.strictmode_notifier_title, getPackageName());
     }
-    StrictModeNotifierInternals.showNotification(this, notificationTitle,
-        getString(R.string.strictmode_notifier_more_detail), notifierConfig.isHeadupEnabled(),
-        StrictModeReportActivity.createPendingIntent(this, violation));
+    ViolationNotifier notifier = violationNotifier;
+    if (notifier != null) {
+      notifier.post(violation, notificationTitle,
+          getString(R.string.strictmode_notifier_more_detail));
+    }
   }
 
   private void startReadLoop() {
     while (true) {
+      int pauseCount = awaitResume();
+      if (pauseCount < 0) {
+        log("exit readLoop");
+        break;
+      }
       long startTime = System.currentTimeMillis();
 
       log("start readLoop");
 
-      readLoop();
+      readLoop(pauseCount);
 
-      log("end readLoop");
+      synchronized (this) {
+        ViolationEngine.Stats stats = engine.getStats();
+        log("end readLoop: discarded " + stats.discardedLines + " lines, elided "
+            + stats.elidedLines + " lines in " + stats.truncatedFrames + " frames, suppressed "
+            + stats.selfViolations + " own violations");
+      }
 
+      if (getPauseCount() != pauseCount) {
+        // stopped by pause(), not by an error
+        continue;
+      }
       if (System.currentTimeMillis() - startTime <= EXIT_SPAN) {
         log("exit readLoop");
         break;
@@ -104,24 +299,100 @@ public class LogWatchService extends IntentService {
     }
   }
 
-  private void readLoop() {
-    BufferedReader reader = null;
+  /**
+   * Read StrictMode and System.err logs of this app.
+   *
+   * logcat filters the main buffer by pid and starts at the last line read, so that logs of the
+   * other apps do not go through the pipe and the device log is not cleared. If logcat does not
+   * support the options, the older command is used, and the lines of the other processes are
+   * dropped here.
+   *
+   * @param pauseCount the pause count when the loop was resumed, to tell a pause from an error.
+   */
+  private void readLoop(int pauseCount) {
+    if (sourceFilterSupported) {
+      readLoop(true, pauseCount);
+      if (sourceFilterSupported || destroyed) {
+        return;
+      }
+      log("logcat rejected the filter options. fall back to the legacy command.");
+    }
+    readLoop(false, pauseCount);
+  }
+
+  private void readLoop(boolean sourceFilter, int pauseCount) {
+    LogcatReader reader = null;
+    boolean readAny = false;
+    long startTime = SystemClock.elapsedRealtime();
     try {
-      //clear log
-      Runtime.getRuntime().exec("logcat -c");
+      updateOwnPids(true);
+      int pid = 0;
+      if (ownPids.size() == 1 && Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+        pid = android.os.Process.myPid();
+      }
+      boolean pidFiltered = sourceFilter && pid != 0;
+
+      List<String> command;
+      if (sourceFilter) {
+        String since = cursor.getTime();
+        if (since != null) {
+          cursor.restart();
+        } else {
+          since = LogcatCommand.formatTime(this.since);
+        }
+        command = LogcatCommand.create(pid, since);
+      } else {
+        //clear log
+        Runtime.getRuntime().exec("logcat -c");
+        command = LogcatCommand.legacy();
+      }
+      log("exec " + command);
 
       //read only StrictMode error
-      proc = Runtime.getRuntime().exec(LOGCAT_COMMAND);
-      reader = new BufferedReader(new InputStreamReader(proc.getInputStream()), 1024);
+      Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+      synchronized (pauseLock) {
+        proc = process;
+        if (paused) {
+          // paused while starting
+          process.destroy();
+        }
+      }
+      reader = new LogcatReader(process.getInputStream());
+      metrics.onWatchStarted(pidFiltered ? "pid " + pid : "all processes");
 
       while (true) {
-        String line = reader.readLine();
+        // a view of the reader's buffer. only the lines the engine keeps become Strings.
+        CharSequence line = reader.readLine();
         if (line != null && line.length() != 0) {
-          log(line);
+          if (notifierConfig.isDebugMode()) {
+            log(line.toString());
+          }
+          metrics.onPipeLine(line.length());
+          if (!LogcatTime.hasTime(line)) {
+            // e.g. "--------- beginning of main", or an error of logcat
+            continue;
+          }
+          readAny = true;
 
-          StrictModeLog log = parseLine(line);
-          if (log != null) {
-            storeLog(log);
+          // counted also with --pid, where logcat should filter them out
+          if (!isOwnLine(line)) {
+            metrics.onForeignLine();
+            continue;
+          }
+          if (!cursor.onLine(line)) {
+            // read before logcat was restarted
+            continue;
+          }
+
+          // the time the line was logged, also for the lines read again after a restart
+          long now = System.currentTimeMillis();
+          long time = logcatTime.parse(line, now);
+          boolean isLog;
+          synchronized (this) {
+            lastLineReadAt = now;
+            isLog = engine.onLine(line, time >= 0 ? time : now);
+          }
+          if (isLog) {
             startReportTimer();
           }
         } else {
@@ -129,9 +400,18 @@ public class LogWatchService extends IntentService {
           break;
         }
       }
+
+      if (sourceFilter && !readAny && !destroyed && getPauseCount() == pauseCount
+          && SystemClock.elapsedRealtime() - startTime < FILTER_CHECK_SPAN
+          && process.waitFor() != 0) {
+        sourceFilterSupported = false;
+      }
     } catch (IOException e) {
       error(e.getMessage());
+    } catch (InterruptedException e) {
+      error(e.getMessage());
     } finally {
+      metrics.onWatchStopped();
       if (reader != null) {
         try {
           reader.close();
@@ -142,128 +422,162 @@ public class LogWatchService extends IntentService {
     }
   }
 
-  private StrictModeLog parseLine(String line) {
-    String[] split = line.split(PARSE_REGEXP);
-    if (split.length < 2) {
-      return null;
-    }
-    if (split[1].equals("null")) {
-      return null;
+  private final AppVisibility.Listener visibilityListener = new AppVisibility.Listener() {
+    @Override public void onVisibilityChanged(boolean foreground) {
+      if (foreground) {
+        resume();
+      } else {
+        schedulePause();
+      }
     }
-    return new StrictModeLog(split[0], split[1], System.currentTimeMillis());
-  }
+  };
 
-  private void storeLog(StrictModeLog log) {
-    synchronized (this) {
-      logs.add(log);
+  /**
+   * Called on the main thread. Takes no lock that the engine holds.
+   */
+  private void schedulePause() {
+    Handler handler = flushHandler;
+    if (notifierConfig.isBackgroundPauseEnabled() && handler != null) {
+      handler.removeCallbacks(pause);
+      handler.postDelayed(pause, PAUSE_DELAY);
     }
   }
 
-  private void startReportTimer() {
-    synchronized (this) {
-      if (timer != null) {
+  /**
+   * Stop logcat. The read loop waits for {@link #resume()}, and restarts logcat after the last
+   * line read, so that the lines logged meanwhile are read then.
+   */
+  private final Runnable pause = new Runnable() {
+    @Override public void run() {
+      // the legacy command clears the log, so it cannot resume. the activity count may miss
+      // activities started before the install.
+      if (!sourceFilterSupported || AppVisibility.isVisible()) {
         return;
       }
-      timer = new Timer(true);
+      synchronized (pauseLock) {
+        if (paused || destroyed) {
+          return;
+        }
+        log("pause readLoop");
+        paused = true;
+        pauseCount++;
+        metrics.onCapturePaused();
+        if (proc != null) {
+          proc.destroy();
+        }
+      }
     }
+  };
 
-    timer.schedule(new TimerTask() {
-      @Override public void run() {
-        synchronized (LogWatchService.this) {
-
-          int count = logs.size();
-          boolean prevIsAt = false;
-          long lastReadTime = 0;
-          List<StrictModeLog> targets = new ArrayList<>();
-
-          for (int i = 0; i < count; i++) {
-            StrictModeLog log = logs.get(i);
-
-            boolean isAt = log.isAt();
-            if (!isAt && prevIsAt && targets.size() > 0) {
-              StrictModeViolation report = createViolation(targets);
-              if (report != null && StringModeConfig.from(LogWatchService.this).isEnabled()) {
-                storeViolation(report);
-                notifyViolation(report);
-              }
-              targets.clear();
-            }
-            prevIsAt = isAt;
-            targets.add(log);
-            lastReadTime = log.time;
-          }
+  /**
+   * Called on the main thread. Takes no lock that the engine holds.
+   */
+  private void resume() {
+    Handler handler = flushHandler;
+    if (handler != null) {
+      handler.removeCallbacks(pause);
+    }
+    synchronized (pauseLock) {
+      if (paused) {
+        log("resume readLoop");
+        paused = false;
+        metrics.onCaptureResumed();
+        pauseLock.notifyAll();
+      }
+    }
+  }
 
-          if (targets.size() > 0 && System.currentTimeMillis() - lastReadTime >= LOG_DELAY) {
-            StrictModeViolation report = createViolation(targets);
-            if (report != null && StringModeConfig.from(LogWatchService.this).isEnabled()) {
-              storeViolation(report);
-              notifyViolation(report);
-            }
-            targets.clear();
-          }
-          timer = null;
+  private int getPauseCount() {
+    synchronized (pauseLock) {
+      return pauseCount;
+    }
+  }
 
-          if (targets.size() > 0) {
-            logs = targets;
-            startReportTimer();
-          } else {
-            logs.clear();
-          }
+  /**
+   * Wait while logcat is paused.
+   *
+   * @return the pause count read together with the resume, or -1 if the service is destroyed.
+   */
+  private int awaitResume() {
+    synchronized (pauseLock) {
+      while (paused && !destroyed) {
+        try {
+          pauseLock.wait();
+        } catch (InterruptedException e) {
+          return -1;
         }
       }
-    }, NOTIFICATION_DELAY);
+      return destroyed ? -1 : pauseCount;
+    }
   }
 
-  private StrictModeViolation createViolation(List<StrictModeLog> logs) {
-    ArrayList<String> stacktreace = new ArrayList<>(logs.size());
-    String title = "";
-    String logKey = "";
-    long time = 0;
-    for (StrictModeLog log : logs) {
-      if (TextUtils.isEmpty(title)) {
-        title = log.message;
-        logKey = log.tag;
-        time = log.time;
-      }
-      stacktreace.add(log.message);
+  private boolean isOwnLine(CharSequence line) {
+    int pid = LogcatTime.parsePid(line);
+    if (pid < 0 || ownPids.contains(pid)) {
+      return true;
     }
+    // the app may have started another process
+    updateOwnPids(false);
+    return ownPids.contains(pid);
+  }
 
-    ViolationType violationType = getViolationType(logs);
-    if (violationType == ViolationType.UNKNOWN && logKey.contains(EXCEPTION_KEY)) {
-      return null;
+  private void updateOwnPids(boolean force) {
+    long now = SystemClock.elapsedRealtime();
+    if (!force && now - ownPidsUpdatedAt < PID_REFRESH_SPAN) {
+      return;
     }
-
-    StrictModeViolation violation =
-        new StrictModeViolation(violationType, title, logKey, stacktreace, time);
-
-    //Ignore Action
-    if (notifierConfig.getIgnoreAction() != null) {
-      if (notifierConfig.getIgnoreAction().ignore(violation)) {
-        return null;
+    ownPidsUpdatedAt = now;
+
+    Set<Integer> pids = new HashSet<>();
+    pids.add(android.os.Process.myPid());
+    ActivityManager activityManager = (ActivityManager) getSystemService(Context.ACTIVITY_SERVICE);
+    List<ActivityManager.RunningAppProcessInfo> processes =
+        activityManager != null ? activityManager.getRunningAppProcesses() : null;
+    if (processes != null) {
+      int uid = android.os.Process.myUid();
+      for (ActivityManager.RunningAppProcessInfo process : processes) {
+        if (process.uid == uid) {
+          pids.add(process.pid);
+        }
       }
     }
-
-    return violation;
+    ownPids = pids;
   }
 
-  private void storeViolation(StrictModeViolation violation) {
-    try {
-      violationStore.append(violation);
-    } catch (IOException e) {
-      e.printStackTrace();
+  private void startReportTimer() {
+    synchronized (this) {
+      if (flushScheduled || flushHandler == null) {
+        return;
+      }
+      flushScheduled = true;
+      flushHandler.postDelayed(flushPending, NOTIFICATION_DELAY);
     }
   }
 
-  private ViolationType getViolationType(List<StrictModeLog> logs) {
-    for (StrictModeLog log : logs) {
-      for (ViolationType type : violationTypes) {
-        ViolationTypeInfo info = ViolationTypeInfo.convert(type);
-        if (info != null && info.detector.detect(log)) {
-          return type;
+  // reused for every burst of logs, so that no thread or task is created per burst
+  private final Runnable flushPending = new Runnable() {
+    @Override public void run() {
+      synchronized (LogWatchService.this) {
+        flushScheduled = false;
+
+        if (System.currentTimeMillis() - lastLineReadAt >= LOG_DELAY) {
+          engine.flush();
+        }
+        if (engine.hasPendingLogs()) {
+          startReportTimer();
         }
       }
     }
-    return ViolationType.UNKNOWN;
+  };
+
+  private StrictModeViolation storeViolation(StrictModeViolation violation) {
+    TrendStore.get(this).record(violation);
+    try {
+      return violationStore.append(violation);
+    } catch (IOException e) {
+      e.printStackTrace();
+      return violation;
+    }
   }
 
   private void log(String message) {
@@ -0,0 +1,68 @@
+package com.nshmura.strictmodenotifier;
+
+import android.os.Build;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Command line of the logcat process. The lines are read by {@link LogcatTime}.
+ *
+ * e.g. "10-19 12:00:00.000  1234  1250 D StrictMode: StrictMode policy violation"
+ *
+ * Lines of `logcat -v time` are accepted too.
+ * e.g. "10-19 12:00:00.000 D/StrictMode( 1234): StrictMode policy violation"
+ */
+final class LogcatCommand {
+
+  private static final String TIME_PATTERN = "MM-dd HH:mm:ss.SSS";
+
+  private LogcatCommand() {
+  }
+
+  /**
+   * The command of the older versions. The log must be cleared with `logcat -c` before.
+   */
+  static List<String> legacy() {
+    List<String> command = new ArrayList<>();
+    command.add("logcat");
+    command.add("-v");
+    command.add("threadtime");
+    addFilters(command);
+    return command;
+  }
+
+  /**
+   * @param pid the process to read, or 0 to read all processes. Ignored before Android N.
+   * @param since the time to start reading at in the {@link #TIME_PATTERN} format, or null.
+   */
+  static List<String> create(int pid, String since) {
+    List<String> command = new ArrayList<>();
+    command.add("logcat");
+    command.add("-v");
+    command.add("threadtime");
+    command.add("-b");
+    command.add("main");
+    if (pid > 0 && Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+      command.add("--pid=" + pid);
+    }
+    if (since != null) {
+      command.add("-T");
+      command.add(since);
+    }
+    addFilters(command);
+    return command;
+  }
+
+  private static void addFilters(List<String> command) {
+    command.add("-s");
+    command.add("StrictMode:*");
+    command.add("System.err:*");
+  }
+
+  static String formatTime(long millis) {
+    return new SimpleDateFormat(TIME_PATTERN, Locale.US).format(new Date(millis));
+  }
+}
@@ -0,0 +1,138 @@
+package com.nshmura.strictmodenotifier;
+
+import android.content.Context;
+import android.hardware.display.DisplayManager;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Printer;
+import android.view.Display;
+import java.lang.reflect.Field;
+
+/**
+ * Measures how long each message dispatch of the main Looper takes, and remembers the recent
+ * stalls so that violations can be annotated with the time the main thread was blocked.
+ *
+ * This sets the message logging {@link Printer} of the main Looper, on the main thread. A Printer
+ * that the app set before is called too, if it can be read from the Looper.
+ */
+final class MainThreadMonitor {
+
+  private static final long STALL_THRESHOLD = 16; //ms
+  private static final long CORRELATION_WINDOW = 3000; //ms
+  private static final int MAX_STALLS = 64;
+
+  private static MainThreadMonitor instance;
+
+  private final float frameIntervalMillis;
+
+  // ring buffer of the recent stalls
+  private final long[] stallEndTimes = new long[MAX_STALLS];
+  private final long[] stallDurations = new long[MAX_STALLS];
+  private int stallCount = 0;
+
+  private long dispatchStart = -1;
+  // accessed on the main thread only
+  private Printer previousPrinter;
+
+  private final Printer printer = new Printer() {
+    @Override public void println(String x) {
+      if (previousPrinter != null) {
+        previousPrinter.println(x);
+      }
+      if (x.startsWith(">")) {
+        dispatchStart = SystemClock.uptimeMillis();
+      } else if (dispatchStart >= 0) {
+        long duration = SystemClock.uptimeMillis() - dispatchStart;
+        dispatchStart = -1;
+        if (duration >= STALL_THRESHOLD) {
+          onStall(System.currentTimeMillis(), duration);
+        }
+      }
+    }
+  };
+
+  private MainThreadMonitor(float frameIntervalMillis) {
+    this.frameIntervalMillis = frameIntervalMillis;
+  }
+
+  static synchronized MainThreadMonitor install(Context context) {
+    if (instance == null) {
+      final MainThreadMonitor monitor = new MainThreadMonitor(getFrameIntervalMillis(context));
+      new Handler(Looper.getMainLooper()).post(new Runnable() {
+        @Override public void run() {
+          Looper looper = Looper.getMainLooper();
+          monitor.previousPrinter = getPrinter(looper);
+          looper.setMessageLogging(monitor.printer);
+        }
+      });
+      instance = monitor;
+    }
+    return instance;
+  }
+
+  /**
+   * @return the message logging Printer of the Looper, or null if it is not set or cannot be read.
+   */
+  private static Printer getPrinter(Looper looper) {
+    try {
+      Field field = Looper.class.getDeclaredField("mLogging");
+      field.setAccessible(true);
+      return (Printer) field.get(looper);
+    } catch (Exception e) {
+      // not accessible on this platform
+      return null;
+    }
+  }
+
+  /**
+   * Attach the blocked time and the dropped frames to violations that happened on the main thread.
+   * The longest stall that ended shortly before the violation was logged is used. If there is none,
+   * the duration measured by StrictMode is used.
+   */
+  StrictModeViolation annotate(StrictModeViolation violation) {
+    if (violation.blockedMillis <= 0) {
+      // not a violation on the main thread
+      return violation;
+    }
+
+    long blockedMillis = Math.max(violation.blockedMillis, findStall(violation.time));
+    int droppedFrames = (int) (blockedMillis / frameIntervalMillis);
+    return violation.newBuilder()
+        .setBlockedMillis(blockedMillis)
+        .setDroppedFrames(droppedFrames)
+        .build();
+  }
+
+  private synchronized void onStall(long endTime, long duration) {
+    int index = stallCount % MAX_STALLS;
+    stallEndTimes[index] = endTime;
+    stallDurations[index] = duration;
+    stallCount++;
+  }
+
+  private synchronized long findStall(long time) {
+    long longest = 0;
+    int count = Math.min(stallCount, MAX_STALLS);
+    for (int i = 0; i < count; i++) {
+      long endTime = stallEndTimes[i];
+      if (endTime <= time && time - endTime <= CORRELATION_WINDOW) {
+        longest = Math.max(longest, stallDurations[i]);
+      }
+    }
+    return longest;
+  }
+
+  private static float getFrameIntervalMillis(Context context) {
+    // WindowManager of a non visual context would trip IncorrectContextUse.
+    DisplayManager displayManager =
+        (DisplayManager) context.getSystemService(Context.DISPLAY_SERVICE);
+    Display display =
+        displayManager != null ? displayManager.getDisplay(Display.DEFAULT_DISPLAY) : null;
+    float refreshRate = display != null ? display.getRefreshRate() : 60f;
+    if (refreshRate < 1f) {
+      refreshRate = 60f;
+    }
+    return 1000f / refreshRate;
+  }
+}
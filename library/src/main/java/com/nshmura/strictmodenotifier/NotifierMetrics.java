@@ -0,0 +1,154 @@
+package com.nshmura.strictmodenotifier;
+
+import android.os.SystemClock;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters of the logcat watcher in this process, shown in the report screen.
+ */
+final class NotifierMetrics {
+
+  private static final NotifierMetrics instance = new NotifierMetrics();
+
+  private final AtomicLong pipeLines = new AtomicLong();
+  private final AtomicLong pipeChars = new AtomicLong();
+  private final AtomicLong foreignLines = new AtomicLong();
+  private final AtomicLong selfViolations = new AtomicLong();
+  private final AtomicLong watchedMillis = new AtomicLong();
+  private final AtomicLong pausedMillis = new AtomicLong();
+  private final AtomicLong pauses = new AtomicLong();
+  private volatile long watchStartedAt;
+  private volatile long pausedAt;
+  private volatile String source = "-";
+  private volatile long installNanos = -1;
+  private volatile long deferredInstallNanos = -1;
+  private volatile long deferredInstallDelayMillis;
+  private final ThreadHotspots threadHotspots = new ThreadHotspots();
+
+  private NotifierMetrics() {
+  }
+
+  static NotifierMetrics get() {
+    return instance;
+  }
+
+  /**
+   * @return violations per thread since the process started.
+   */
+  ThreadHotspots getThreadHotspots() {
+    return threadHotspots;
+  }
+
+  /**
+   * @param nanos time spent in StrictModeNotifier.install() or installDeferred().
+   */
+  void onInstall(long nanos) {
+    installNanos = nanos;
+  }
+
+  /**
+   * @param nanos time spent by the deferred part of the install.
+   * @param delayMillis time from installDeferred() to the deferred part.
+   */
+  void onDeferredInstall(long nanos, long delayMillis) {
+    deferredInstallNanos = nanos;
+    deferredInstallDelayMillis = delayMillis;
+  }
+
+  /**
+   * @param source description of the logcat filter, e.g. "pid 1234".
+   */
+  void onWatchStarted(String source) {
+    this.source = source;
+    watchStartedAt = SystemClock.elapsedRealtime();
+  }
+
+  void onWatchStopped() {
+    long startedAt = watchStartedAt;
+    if (startedAt != 0) {
+      watchedMillis.addAndGet(SystemClock.elapsedRealtime() - startedAt);
+      watchStartedAt = 0;
+    }
+  }
+
+  /**
+   * logcat was stopped, as the app is in background.
+   */
+  void onCapturePaused() {
+    pauses.incrementAndGet();
+    pausedAt = SystemClock.elapsedRealtime();
+  }
+
+  void onCaptureResumed() {
+    long at = pausedAt;
+    if (at != 0) {
+      pausedMillis.addAndGet(SystemClock.elapsedRealtime() - at);
+      pausedAt = 0;
+    }
+  }
+
+  /**
+   * A line was read from the logcat pipe.
+   */
+  void onPipeLine(int length) {
+    pipeLines.incrementAndGet();
+    pipeChars.addAndGet(length + 1);
+  }
+
+  /**
+   * A line of another process was read, because logcat could not filter it.
+   */
+  void onForeignLine() {
+    foreignLines.incrementAndGet();
+  }
+
+  /**
+   * A violation caused by the notifier itself was dropped.
+   */
+  void onSelfViolation() {
+    selfViolations.incrementAndGet();
+  }
+
+  String summarize() {
+    long millis = watchedMillis.get();
+    long startedAt = watchStartedAt;
+    if (startedAt != 0) {
+      millis += SystemClock.elapsedRealtime() - startedAt;
+    }
+    long paused = pausedMillis.get();
+    long at = pausedAt;
+    if (at != 0) {
+      paused += SystemClock.elapsedRealtime() - at;
+    }
+    long lines = pipeLines.get();
+    long foreign = foreignLines.get();
+
+    StringBuilder builder = new StringBuilder();
+    if (installNanos >= 0) {
+      builder.append(String.format(Locale.US, "install %.2f ms", installNanos / 1e6));
+      if (deferredInstallNanos >= 0) {
+        builder.append(String.format(Locale.US, " + deferred %.2f ms after %d ms",
+            deferredInstallNanos / 1e6, deferredInstallDelayMillis));
+      }
+      builder.append('\n');
+    }
+    builder.append("logcat: ").append(source).append('\n');
+    builder.append(String.format(Locale.US, "watched %.1f min\n", millis / 60000.0));
+    if (pauses.get() > 0) {
+      // the share of the time logcat was running while the watcher was installed
+      builder.append(String.format(Locale.US, "duty cycle %.0f%%, paused %d times for %.1f min\n",
+          millis * 100.0 / Math.max(1, millis + paused), pauses.get(), paused / 60000.0));
+    }
+    builder.append(String.format(Locale.US, "read %d lines (%.1f/min), %d KB\n", lines,
+        perMinute(lines, millis), pipeChars.get() / 1024));
+    builder.append(String.format(Locale.US, "other processes %d lines (%.1f/min)\n", foreign,
+        perMinute(foreign, millis)));
+    builder.append("own violations suppressed ").append(selfViolations.get());
+    return builder.toString();
+  }
+
+  private static double perMinute(long count, long millis) {
+    return millis > 0 ? count * 60000.0 / millis : 0;
+  }
+}
@@ -8,11 +8,14 @@ import android.widget.TextView;
 
 import com.bzl.apm.strictmode.notifer.R;
 
-import java.util.ArrayList;
-import java.util.List;
-
+/**
+ * Rows are bound from the fields of the mapped index. A report without a type shows its message,
+ * which is decoded with the index on the file IO thread, so no row is decoded here.
+ */
 class ReportAdapter extends BaseAdapter {
-  List<StrictModeViolation> reports = new ArrayList<>();
+  private MappedViolationLog.Index index;
+  private Integer[] positions;
+  private String[] messages;
   private StrictModeReportActivity reportActivity;
 
   public ReportAdapter(StrictModeReportActivity reportActivity) {
@@ -20,19 +23,29 @@ class ReportAdapter extends BaseAdapter {
   }
 
   @Override public int getCount() {
-    return reports.size();
+    return index != null ? index.size() : 0;
   }
 
-  @Override public StrictModeViolation getItem(int position) {
-    return reports.get(position);
+  /**
+   * @return the id of the report. Open the report from the store.
+   */
+  @Override public Long getItem(int position) {
+    return getItemId(position);
   }
 
+  /**
+   * @return the id of the report.
+   */
   @Override public long getItemId(int position) {
-    return position;
+    return index.getId(indexPosition(position));
+  }
+
+  @Override public boolean hasStableIds() {
+    return true;
   }
 
   @Override public View getView(int position, View convertView, ViewGroup parent) {
-    StrictModeViolation report = getItem(position);
+    int indexPosition = indexPosition(position);
 
     if (convertView == null) {
       convertView = LayoutInflater.from(reportActivity)
@@ -43,35 +56,59 @@ class ReportAdapter extends BaseAdapter {
     ViewHolder holder = (ViewHolder) convertView.getTag();
     holder.numberText.setText(
         parent.getContext().getString(R.string.strictmode_notifier_count, getCount() - position));
-    holder.dateText.setText(report.getDateText(reportActivity));
+    holder.dateText.setText(
+        ViolationFormatter.getDateText(reportActivity, index.getTime(indexPosition)));
+    long blockedMillis = index.getBlockedMillis(indexPosition);
+    if (blockedMillis > 0) {
+      holder.costText.setText(ViolationFormatter.getCostText(reportActivity, blockedMillis,
+          index.getDroppedFrames(indexPosition)));
+      holder.costText.setVisibility(View.VISIBLE);
+    } else {
+      holder.costText.setVisibility(View.GONE);
+    }
 
-    if (report.violationType != null) {
-      holder.violationTypeText.setText(
-          ViolationTypeInfo.convert(report.violationType).violationName());
+    ViolationType violationType = index.getViolationType(indexPosition);
+    if (violationType != null) {
+      holder.violationTypeText.setText(ViolationTypeInfo.convert(violationType).violationName());
     } else {
-      holder.violationTypeText.setText(report.message);
+      holder.violationTypeText.setText(messages != null ? messages[indexPosition] : null);
     }
 
     return convertView;
   }
 
-  public void addAll(List<StrictModeViolation> reports) {
-    this.reports.addAll(reports);
+  /**
+   * @param positions order of the index positions, or null for the index order.
+   * @param messages messages of the reports without a type by index position, see
+   * {@link ViolationStore#getUntypedMessages}.
+   */
+  public void setIndex(MappedViolationLog.Index index, Integer[] positions, String[] messages) {
+    this.index = index;
+    this.positions = positions;
+    this.messages = messages;
   }
 
   public void clear() {
-    this.reports.clear();
+    index = null;
+    positions = null;
+    messages = null;
+  }
+
+  private int indexPosition(int position) {
+    return positions != null ? positions[position] : position;
   }
 
   private class ViewHolder {
     final TextView numberText;
     final TextView violationTypeText;
     final TextView dateText;
+    final TextView costText;
 
     public ViewHolder(View convertView) {
       numberText = (TextView) convertView.findViewById(R.id.__number);
       violationTypeText = (TextView) convertView.findViewById(R.id.__violation_type);
       dateText = (TextView) convertView.findViewById(R.id.__date);
+      costText = (TextView) convertView.findViewById(R.id.__cost);
     }
   }
 }
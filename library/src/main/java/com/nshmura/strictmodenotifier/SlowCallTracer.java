@@ -0,0 +1,78 @@
+package com.nshmura.strictmodenotifier;
+
+import android.os.Looper;
+import android.os.SystemClock;
+import java.util.ArrayList;
+
+/**
+ * Times blocks of code on the main thread, and reports a {@link ViolationType#CUSTOM_SLOW_CALL}
+ * when a block takes longer than {@link NotifierConfig#getSlowCallThresholdMillis()}.
+ *
+ * <pre>
+ * long token = SlowCallTracer.begin();
+ * loadSomething();
+ * SlowCallTracer.end("loadSomething", token);
+ * </pre>
+ *
+ * Nothing is allocated unless the threshold is exceeded. Pass a constant as the name.
+ */
+public final class SlowCallTracer {
+
+  private static final String LOG_KEY = "SlowCallTracer";
+  private static final long NANOS_PER_MILLI = 1000000L;
+
+  private SlowCallTracer() {
+  }
+
+  /**
+   * @return the token to pass to {@link #end(String, long)}.
+   */
+  public static long begin() {
+    return System.nanoTime();
+  }
+
+  public static void end(String name, long token) {
+    long elapsed = System.nanoTime() - token;
+    if (elapsed < NotifierConfig.getInstance().getSlowCallThresholdMillis() * NANOS_PER_MILLI) {
+      return;
+    }
+    if (Looper.getMainLooper().getThread() != Thread.currentThread()) {
+      return;
+    }
+    report(name, elapsed / NANOS_PER_MILLI);
+  }
+
+  public static void trace(String name, Runnable runnable) {
+    long token = begin();
+    try {
+      runnable.run();
+    } finally {
+      end(name, token);
+    }
+  }
+
+  private static void report(String name, long elapsedMillis) {
+    String message = LOG_KEY + ": " + name + " took " + elapsedMillis + " ms";
+
+    StackTraceElement[] elements = new Throwable().getStackTrace();
+    ArrayList<String> stacktreace = new ArrayList<>(elements.length + 1);
+    stacktreace.add(message);
+    for (StackTraceElement element : elements) {
+      if (!element.getClassName().equals(SlowCallTracer.class.getName())) {
+        stacktreace.add("\tat " + element);
+      }
+    }
+
+    ViolationInbox.post(new StrictModeViolation.Builder()
+        .setViolationType(ViolationType.CUSTOM_SLOW_CALL)
+        .setMessage(message)
+        .setLogKey(LOG_KEY)
+        .setStacktreace(stacktreace)
+        .setTime(System.currentTimeMillis())
+        .setTraceTimeNanos(SystemClock.elapsedRealtimeNanos())
+        .setTid(android.os.Process.myTid())
+        .setThreadName(Thread.currentThread().getName())
+        .setBlockedMillis(elapsedMillis)
+        .build());
+  }
+}
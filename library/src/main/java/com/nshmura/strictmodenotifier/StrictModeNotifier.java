@@ -1,6 +1,7 @@
 package com.nshmura.strictmodenotifier;
 
 import android.content.Context;
+import android.os.Trace;
 
 public class StrictModeNotifier {
 
@@ -10,8 +11,35 @@ public class StrictModeNotifier {
 
   public static NotifierConfig install(Context context,
       Class<? extends LogWatchService> serviceClass) {
+    Trace.beginSection("StrictModeNotifier.install");
+    long start = System.nanoTime();
+    AppVisibility.install(context);
     StrictModeNotifierInternals.enableReportActivity(context);
     StrictModeNotifierInternals.startLogWatchService(context, serviceClass);
+    NotifierMetrics.get().onInstall(System.nanoTime() - start);
+    Trace.endSection();
+    return NotifierConfig.getInstance();
+  }
+
+  /**
+   * Same as {@link #install(Context)}, but the watcher, the store and the report screen are set
+   * up after the first frame, when the main thread is idle. Violations logged before that are
+   * read from logcat afterwards.
+   *
+   * Call this on the main thread, e.g. in Application.onCreate().
+   */
+  public static NotifierConfig installDeferred(Context context) {
+    return installDeferred(context, LogWatchService.class);
+  }
+
+  public static NotifierConfig installDeferred(Context context,
+      Class<? extends LogWatchService> serviceClass) {
+    Trace.beginSection("StrictModeNotifier.installDeferred");
+    long start = System.nanoTime();
+    AppVisibility.install(context);
+    DeferredInstaller.schedule(context, serviceClass);
+    NotifierMetrics.get().onInstall(System.nanoTime() - start);
+    Trace.endSection();
     return NotifierConfig.getInstance();
   }
 }
\ No newline at end of file
@@ -10,6 +10,7 @@ import android.app.PendingIntent;
 import android.content.ComponentName;
 import android.content.Context;
 import android.content.Intent;
+import android.content.pm.PackageInfo;
 import android.content.pm.PackageManager;
 import android.graphics.BitmapFactory;
 import android.os.Build;
@@ -19,13 +20,14 @@ import androidx.core.app.NotificationManagerCompat;
 
 import com.bzl.apm.strictmode.notifer.R;
 
+import java.util.UUID;
 import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
 
 final class StrictModeNotifierInternals {
 
     private static final Executor fileIoExecutor = newSingleThreadExecutor("File-IO");
-    private static final int NOTIFICATION_ID = 1;
+    static final int NOTIFICATION_ID = 1;
 
     public static void enableReportActivity(Context context) {
         StrictModeNotifierInternals.setEnabled(context, StrictModeReportActivity.class, true);
@@ -37,6 +39,17 @@ final class StrictModeNotifierInternals {
         context.startService(intent);
     }
 
+    /**
+     * @param since wall clock time to read logcat from.
+     */
+    public static void startLogWatchService(Context context,
+                                            Class<? extends LogWatchService> serviceClass,
+                                            long since) {
+        Intent intent = new Intent(context, serviceClass);
+        intent.putExtra(LogWatchService.EXTRA_SINCE, since);
+        context.startService(intent);
+    }
+
     public static void setEnabled(Context context, final Class<?> componentClass,
                                   final boolean enabled) {
         final Context appContext = context.getApplicationContext();
@@ -65,6 +78,29 @@ final class StrictModeNotifierInternals {
         return Executors.newSingleThreadExecutor(new StrictModeNotifierSingleThreadFactory(threadName));
     }
 
+    private static final String SESSION_ID = UUID.randomUUID().toString();
+
+    /**
+     * Blocks on IPC.
+     */
+    public static SessionInfo getSessionInfo(Context context) {
+        return new SessionInfo(getVersionCode(context), Build.FINGERPRINT, SESSION_ID);
+    }
+
+    @SuppressWarnings("deprecation")
+    private static long getVersionCode(Context context) {
+        try {
+            PackageInfo packageInfo = context.getPackageManager()
+                    .getPackageInfo(context.getPackageName(), 0);
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.P) {
+                return packageInfo.getLongVersionCode();
+            }
+            return packageInfo.versionCode;
+        } catch (PackageManager.NameNotFoundException e) {
+            return 0;
+        }
+    }
+
 
 
     private static final String NOTIFICATION_CHANNEL_ID = "1006";
@@ -73,26 +109,14 @@ final class StrictModeNotifierInternals {
 
     public static void showNotification(Context context, String title, String description, boolean headupEnabled, PendingIntent pendingIntent) {
         NotificationManagerCompat notificationManager = NotificationManagerCompat.from(context);
-        // 设置通知点击事件
-
-        NotificationCompat.Builder notificationBuilder;
-        // 创建通知渠道
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
-            NotificationChannel channel = new NotificationChannel(NOTIFICATION_CHANNEL_ID, NOTIFICATION_CHANNEL_NAME, NotificationManager.IMPORTANCE_DEFAULT);
-            channel.setDescription(NOTIFICATION_CHANNEL_DESC);
-            notificationManager.createNotificationChannel(channel);
-        }
+        createNotificationChannel(notificationManager);
 
         // 构建通知
-        notificationBuilder = new NotificationCompat.Builder(context, NOTIFICATION_CHANNEL_ID)
-                .setLargeIcon(BitmapFactory.decodeResource(context.getResources(), R.drawable.strictmode_notifier_ic_notification))
-                .setSmallIcon(R.drawable.strictmode_notifier_ic_notification)
+        NotificationCompat.Builder notificationBuilder = newNotificationBuilder(context)
                 .setContentTitle(title)
                 .setContentText(description)
                 .setContentIntent(pendingIntent)
-                .setStyle(new NotificationCompat.BigTextStyle().bigText(description))
-                .setPriority(NotificationCompat.PRIORITY_DEFAULT)
-                .setAutoCancel(true);
+                .setStyle(new NotificationCompat.BigTextStyle().bigText(description));
 
         if (headupEnabled) {
             notificationBuilder.setFullScreenIntent(pendingIntent, true);
@@ -101,4 +125,21 @@ final class StrictModeNotifierInternals {
         // 发送通知
         notificationManager.notify(NOTIFICATION_ID, notificationBuilder.build());
     }
+
+    static void createNotificationChannel(NotificationManagerCompat notificationManager) {
+        // 创建通知渠道
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            NotificationChannel channel = new NotificationChannel(NOTIFICATION_CHANNEL_ID, NOTIFICATION_CHANNEL_NAME, NotificationManager.IMPORTANCE_DEFAULT);
+            channel.setDescription(NOTIFICATION_CHANNEL_DESC);
+            notificationManager.createNotificationChannel(channel);
+        }
+    }
+
+    static NotificationCompat.Builder newNotificationBuilder(Context context) {
+        return new NotificationCompat.Builder(context, NOTIFICATION_CHANNEL_ID)
+                .setLargeIcon(BitmapFactory.decodeResource(context.getResources(), R.drawable.strictmode_notifier_ic_notification))
+                .setSmallIcon(R.drawable.strictmode_notifier_ic_notification)
+                .setPriority(NotificationCompat.PRIORITY_DEFAULT)
+                .setAutoCancel(true);
+    }
 }
@@ -1,17 +1,22 @@
 package com.nshmura.strictmodenotifier;
 
 import android.app.Activity;
+import android.app.AlertDialog;
 import android.app.PendingIntent;
 import android.content.Context;
 import android.content.Intent;
 import android.os.Build;
 import android.os.Bundle;
+import android.view.Menu;
+import android.view.MenuItem;
 import android.view.View;
 import android.widget.AdapterView;
 import android.widget.CompoundButton;
 import android.widget.ListView;
+import android.widget.TextView;
 import android.widget.ToggleButton;
-import java.util.List;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 
 import static android.app.PendingIntent.FLAG_UPDATE_CURRENT;
 
@@ -19,15 +24,24 @@ import com.bzl.apm.strictmode.notifer.R;
 
 public class StrictModeReportActivity extends Activity {
 
-  private static final String EXTRA_REPORT = "EXTRA_REPORT";
+  private static final String EXTRA_REPORT_ID = "EXTRA_REPORT_ID";
+  private static final String EXTRA_FROM_NOTIFICATION = "EXTRA_FROM_NOTIFICATION";
+  private static final String STATE_SORT_BY_COST = "STATE_SORT_BY_COST";
 
   private ReportAdapter adapter;
   private ViolationStore violationStore;
+  private boolean sortByCost;
+  // bumped by every load and delete, so that only the result of the latest load is shown
+  private int loadGeneration;
 
   @Override protected void onCreate(Bundle savedInstanceState) {
     super.onCreate(savedInstanceState);
     setContentView(R.layout.strictmode_notifier_activity_report);
 
+    if (savedInstanceState != null) {
+      sortByCost = savedInstanceState.getBoolean(STATE_SORT_BY_COST);
+    }
+
     ReportActivityUtils.setTitle(this,
         getString(R.string.strictmode_notifier_title, getPackageName()));
 
@@ -39,58 +53,280 @@ public class StrictModeReportActivity extends Activity {
     violationStore = new ViolationStore(this);
     listView.setOnItemClickListener(new AdapterView.OnItemClickListener() {
       @Override public void onItemClick(AdapterView<?> parent, View view, int position, long id) {
-        StrictModeViolation report = adapter.getItem(position);
-        StrictModeReportDetailActivity.start(StrictModeReportActivity.this, report);
+        StrictModeReportDetailActivity.start(StrictModeReportActivity.this, id);
       }
     });
 
-    ToggleButton toggleButton = (ToggleButton) findViewById(R.id.__enable_button);
-    toggleButton.setChecked(StringModeConfig.from(this).isEnabled());
-    toggleButton.setOnCheckedChangeListener(new CompoundButton.OnCheckedChangeListener() {
-      @Override public void onCheckedChanged(CompoundButton buttonView, boolean isChecked) {
-        StringModeConfig.from(StrictModeReportActivity.this).toggle();
-      }
-    });
+    bindEnableButton((ToggleButton) findViewById(R.id.__enable_button));
 
     //noinspection ConstantConditions
     findViewById(R.id.__delete_button).setOnClickListener(new View.OnClickListener() {
       @Override public void onClick(View v) {
-        violationStore.clear();
+        // the list is cleared at once. the store follows on the file IO thread.
+        StrictModeNotifierInternals.executeOnFileIoThread(new Runnable() {
+          @Override public void run() {
+            violationStore.clear();
+          }
+        });
+        loadGeneration++;
         adapter.clear();
         adapter.notifyDataSetChanged();
+        updateBaselineSummary(0);
       }
     });
 
     if (savedInstanceState == null) {
-      StrictModeViolation report = (StrictModeViolation) getIntent().getSerializableExtra(EXTRA_REPORT);
-      if (report != null) {
-        StrictModeReportDetailActivity.start(this, report);
+      if (getIntent().getBooleanExtra(EXTRA_FROM_NOTIFICATION, false)) {
+        ViolationNotifier.onNotificationOpened(this);
+      }
+      long reportId = getIntent().getLongExtra(EXTRA_REPORT_ID, 0);
+      if (reportId != 0) {
+        StrictModeReportDetailActivity.start(this, reportId);
       }
     }
   }
 
+  @Override protected void onSaveInstanceState(Bundle outState) {
+    super.onSaveInstanceState(outState);
+    outState.putBoolean(STATE_SORT_BY_COST, sortByCost);
+  }
+
   @Override protected void onResume() {
     super.onResume();
+    loadReports();
+  }
+
+  /**
+   * Shows the flag from the memory if it has been read. Otherwise the button is enabled once the
+   * flag is read on the file IO thread.
+   */
+  private void bindEnableButton(final ToggleButton toggleButton) {
+    final StringModeConfig config = StringModeConfig.from(this);
+    final CompoundButton.OnCheckedChangeListener listener =
+        new CompoundButton.OnCheckedChangeListener() {
+          @Override public void onCheckedChanged(CompoundButton buttonView, boolean isChecked) {
+            config.enable(isChecked);
+          }
+        };
+
+    Boolean enabled = config.getCachedEnabled();
+    if (enabled != null) {
+      toggleButton.setChecked(enabled);
+      toggleButton.setOnCheckedChangeListener(listener);
+      return;
+    }
+    toggleButton.setEnabled(false);
+    StrictModeNotifierInternals.executeOnFileIoThread(new Runnable() {
+      @Override public void run() {
+        final boolean enabled = config.isEnabled();
+        runOnUiThread(new Runnable() {
+          @Override public void run() {
+            toggleButton.setChecked(enabled);
+            toggleButton.setOnCheckedChangeListener(listener);
+            toggleButton.setEnabled(true);
+          }
+        });
+      }
+    });
+  }
+
+  /**
+   * Opens the store, sorts the index and decodes the messages of the reports without a type on the
+   * file IO thread, after the deletes submitted before. The result is dropped if the list was
+   * deleted or loaded again meanwhile.
+   */
+  private void loadReports() {
+    final boolean sortByCost = this.sortByCost;
+    final int generation = ++loadGeneration;
+    StrictModeNotifierInternals.executeOnFileIoThread(new Runnable() {
+      @Override public void run() {
+        final MappedViolationLog.Index index = violationStore.index();
+        final Integer[] positions = index != null && sortByCost
+            ? ViolationCost.sortByCumulativeCost(index) : null;
+        final String[] messages = index != null ? violationStore.getUntypedMessages(index) : null;
+        runOnUiThread(new Runnable() {
+          @Override public void run() {
+            if (isFinishing() || generation != loadGeneration) {
+              return;
+            }
+            if (index != null) {
+              adapter.setIndex(index, positions, messages);
+            } else {
+              adapter.clear();
+            }
+            adapter.notifyDataSetChanged();
 
-    List<StrictModeViolation> reports = violationStore.getAll();
-    adapter.clear();
-    adapter.addAll(reports);
-    adapter.notifyDataSetChanged();
+            updateBaselineSummary(adapter.getCount());
+          }
+        });
+      }
+    });
   }
 
+  @Override public boolean onCreateOptionsMenu(Menu menu) {
+    getMenuInflater().inflate(R.menu.strictmode_notifier_report_menu, menu);
+    return true;
+  }
+
+  @Override public boolean onPrepareOptionsMenu(Menu menu) {
+    menu.findItem(R.id.__menu_sort).setTitle(sortByCost
+        ? R.string.strictmode_notifier_menu_sort_by_time
+        : R.string.strictmode_notifier_menu_sort_by_cost);
+    return super.onPrepareOptionsMenu(menu);
+  }
+
+  @Override public boolean onOptionsItemSelected(MenuItem item) {
+    if (item.getItemId() == R.id.__menu_sort) {
+      sortByCost = !sortByCost;
+      loadReports();
+      return true;
+    } else if (item.getItemId() == R.id.__menu_export_baseline) {
+      exportBaseline();
+      return true;
+    } else if (item.getItemId() == R.id.__menu_trends) {
+      showTrends();
+      return true;
+    } else if (item.getItemId() == R.id.__menu_metrics) {
+      showMetrics();
+      return true;
+    } else if (item.getItemId() == R.id.__menu_threads) {
+      showThreads();
+      return true;
+    }
+    return super.onOptionsItemSelected(item);
+  }
+
+  private void updateBaselineSummary(int newCount) {
+    TextView summaryText = (TextView) findViewById(R.id.__baseline_summary);
+    ViolationBaseline baseline = BaselineAssets.peek();
+    int suppressedCount = BaselineAssets.getSuppressedCount();
+
+    if (baseline.isEmpty() && suppressedCount == 0) {
+      summaryText.setVisibility(View.GONE);
+    } else {
+      summaryText.setText(getString(R.string.strictmode_notifier_baseline_summary, newCount,
+          suppressedCount, baseline.size()));
+      summaryText.setVisibility(View.VISIBLE);
+    }
+  }
+
+  /**
+   * Share the baseline that contains the current baseline and all stored violations.
+   * Put the shared text into "assets/" + {@link BaselineAssets#ASSET_NAME} of the app.
+   */
+  private void exportBaseline() {
+    final Context appContext = getApplicationContext();
+    StrictModeNotifierInternals.executeOnFileIoThread(new Runnable() {
+      @Override public void run() {
+        ViolationBaseline baseline = BaselineAssets.get(appContext);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+          baseline.write(violationStore.getAll(), out);
+        } catch (IOException e) {
+          e.printStackTrace();
+          return;
+        }
+
+        final String baselineText = out.toString();
+        runOnUiThread(new Runnable() {
+          @Override public void run() {
+            shareBaseline(baselineText);
+          }
+        });
+      }
+    });
+  }
+
+  private void showTrends() {
+    final Context appContext = getApplicationContext();
+    StrictModeNotifierInternals.executeOnFileIoThread(new Runnable() {
+      @Override public void run() {
+        long versionCode = StrictModeNotifierInternals.getSessionInfo(appContext).versionCode;
+        final String summary = TrendStore.get(appContext).summarize(versionCode);
+        runOnUiThread(new Runnable() {
+          @Override public void run() {
+            if (isFinishing()) {
+              return;
+            }
+            new AlertDialog.Builder(StrictModeReportActivity.this)
+                .setTitle(R.string.strictmode_notifier_menu_trends)
+                .setMessage(summary)
+                .setPositiveButton(android.R.string.ok, null)
+                .show();
+          }
+        });
+      }
+    });
+  }
+
+  private void showMetrics() {
+    new AlertDialog.Builder(this)
+        .setTitle(R.string.strictmode_notifier_menu_metrics)
+        .setMessage(NotifierMetrics.get().summarize())
+        .setPositiveButton(android.R.string.ok, null)
+        .show();
+  }
+
+  private void showThreads() {
+    StringBuilder message = new StringBuilder();
+    for (ThreadHotspots.Entry entry : NotifierMetrics.get().getThreadHotspots().snapshot()) {
+      if (message.length() > 0) {
+        message.append('\n');
+      }
+      message.append(getString(R.string.strictmode_notifier_thread_row, entry.group, entry.count,
+          entry.blockedMillis, entry.droppedFrames));
+    }
+    if (message.length() == 0) {
+      message.append(getString(R.string.strictmode_notifier_no_threads));
+    }
+    new AlertDialog.Builder(this)
+        .setTitle(R.string.strictmode_notifier_menu_threads)
+        .setMessage(message)
+        .setPositiveButton(android.R.string.ok, null)
+        .show();
+  }
+
+  private void shareBaseline(String baselineText) {
+    Intent sendIntent = new Intent();
+    sendIntent.setAction(Intent.ACTION_SEND);
+    sendIntent.putExtra(Intent.EXTRA_SUBJECT, BaselineAssets.ASSET_NAME);
+    sendIntent.putExtra(Intent.EXTRA_TEXT, baselineText);
+    sendIntent.setType("text/plain");
+
+    try {
+      startActivity(Intent.createChooser(sendIntent,
+          getResources().getText(R.string.strictmode_notifier_menu_export_baseline)));
+    } catch (Exception e) {
+      e.printStackTrace();
+    }
+  }
+
+  /**
+   * Only the id of the report is put, so that the stacktrace does not go through Binder.
+   */
   public static Intent createIntent(Context context, StrictModeViolation report) {
     Intent intent = new Intent(context, StrictModeReportActivity.class);
-    intent.putExtra(EXTRA_REPORT, report);
+    intent.putExtra(EXTRA_REPORT_ID, report.id);
     return intent;
   }
 
   public static PendingIntent createPendingIntent(Context context, StrictModeViolation report) {
-    Intent intent = StrictModeReportActivity.createIntent(context, report);
+    return createPendingIntent(context, report.id, 1);
+  }
+
+  /**
+   * @param reportId the report to open, or 0 to open the list.
+   * @param requestCode distinguishes PendingIntents of notifications that are shown together.
+   */
+  static PendingIntent createPendingIntent(Context context, long reportId, int requestCode) {
+    Intent intent = new Intent(context, StrictModeReportActivity.class);
+    intent.putExtra(EXTRA_REPORT_ID, reportId);
+    intent.putExtra(EXTRA_FROM_NOTIFICATION, true);
 //    intent.setFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_CLEAR_TOP);
     intent.setFlags(Intent.FLAG_ACTIVITY_MULTIPLE_TASK |
             Intent.FLAG_ACTIVITY_NEW_TASK |
             Intent.FLAG_ACTIVITY_CLEAR_TASK |
             Intent.FLAG_ACTIVITY_RESET_TASK_IF_NEEDED);
-    return PendingIntent.getActivity(context, 1, intent, Build.VERSION.SDK_INT >= Build.VERSION_CODES.M ? (PendingIntent.FLAG_IMMUTABLE | PendingIntent.FLAG_UPDATE_CURRENT) : PendingIntent.FLAG_UPDATE_CURRENT);
+    return PendingIntent.getActivity(context, requestCode, intent, Build.VERSION.SDK_INT >= Build.VERSION_CODES.M ? (PendingIntent.FLAG_IMMUTABLE | PendingIntent.FLAG_UPDATE_CURRENT) : PendingIntent.FLAG_UPDATE_CURRENT);
   }
 }
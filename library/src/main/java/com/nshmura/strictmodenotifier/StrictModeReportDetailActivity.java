@@ -24,7 +24,7 @@ import com.bzl.apm.strictmode.notifer.R;
 
 public class StrictModeReportDetailActivity extends Activity {
 
-  private static final String EXTRA_REPORT = "EXTRA_REPORT";
+  private static final String EXTRA_REPORT_ID = "EXTRA_REPORT_ID";
 
   private ViolationStore violationStore;
   private StrictModeViolation report;
@@ -35,7 +35,45 @@ public class StrictModeReportDetailActivity extends Activity {
 
     violationStore = new ViolationStore(StrictModeReportDetailActivity.this);
 
-    report = (StrictModeViolation) getIntent().getSerializableExtra(EXTRA_REPORT);
+    findViewById(R.id.__delete_button).setOnClickListener(new View.OnClickListener() {
+      @Override public void onClick(View v) {
+        if (report == null) {
+          return;
+        }
+        final StrictModeViolation target = report;
+        StrictModeNotifierInternals.executeOnFileIoThread(new Runnable() {
+          @Override public void run() {
+            violationStore.remove(target);
+          }
+        });
+        finish();
+      }
+    });
+
+    // the store may be opened and the report decoded, so read it on the file IO thread
+    final long reportId = getIntent().getLongExtra(EXTRA_REPORT_ID, 0);
+    StrictModeNotifierInternals.executeOnFileIoThread(new Runnable() {
+      @Override public void run() {
+        final StrictModeViolation report = violationStore.get(reportId);
+        runOnUiThread(new Runnable() {
+          @Override public void run() {
+            if (isFinishing()) {
+              return;
+            }
+            if (report == null) {
+              // deleted
+              finish();
+              return;
+            }
+            bind(report);
+          }
+        });
+      }
+    });
+  }
+
+  private void bind(StrictModeViolation report) {
+    this.report = report;
 
     TextView stackTreace = (TextView) findViewById(R.id.__stacktrace_text);
 
@@ -51,13 +89,6 @@ public class StrictModeReportDetailActivity extends Activity {
           ViolationTypeInfo.convert(report.violationType).violationName());
       ReportActivityUtils.setDisplayHomeAsUpEnabled(this, true);
     }
-
-    findViewById(R.id.__delete_button).setOnClickListener(new View.OnClickListener() {
-      @Override public void onClick(View v) {
-        violationStore.remove(report);
-        finish();
-      }
-    });
   }
 
   @Override public boolean onMenuItemSelected(int featureId, MenuItem item) {
@@ -82,6 +113,10 @@ public class StrictModeReportDetailActivity extends Activity {
 
   @Override public boolean onOptionsItemSelected(MenuItem item) {
     int itemId = item.getItemId();
+    if (report == null && (itemId == R.id.__menu_copy || itemId == R.id.__menu_share)) {
+      // not loaded yet
+      return true;
+    }
     if (itemId == R.id.__menu_copy) {
       copy();
       return true;
@@ -118,6 +153,12 @@ public class StrictModeReportDetailActivity extends Activity {
     String shareText;
     if (report.violationType != null) {
       shareText = ViolationTypeInfo.convert(report.violationType).violationName();
+      if (report.blockedMillis > 0) {
+        shareText += " (" + ViolationFormatter.getCostText(this, report) + ")";
+      }
+      if (report.threadName != null) {
+        shareText += " on " + report.threadName;
+      }
       shareText += "\n\n" + report.getStacktraceText();
     } else {
       shareText = report.getStacktraceText();
@@ -126,12 +167,23 @@ public class StrictModeReportDetailActivity extends Activity {
   }
 
   public static void start(Context context, StrictModeViolation report) {
-    context.startActivity(createIntent(context, report));
+    start(context, report.id);
+  }
+
+  public static void start(Context context, long reportId) {
+    context.startActivity(createIntent(context, reportId));
   }
 
   public static Intent createIntent(Context context, StrictModeViolation report) {
+    return createIntent(context, report.id);
+  }
+
+  /**
+   * Only the id of the report is put, so that the stacktrace does not go through Binder.
+   */
+  public static Intent createIntent(Context context, long reportId) {
     Intent intent = new Intent(context, StrictModeReportDetailActivity.class);
-    intent.putExtra(EXTRA_REPORT, report);
+    intent.putExtra(EXTRA_REPORT_ID, reportId);
     return intent;
   }
 
@@ -3,10 +3,20 @@ package com.nshmura.strictmodenotifier;
 import android.content.Context;
 import android.content.SharedPreferences;
 
+/**
+ * Whether violations are stored and notified.
+ *
+ * The flag is cached in memory. The preferences are read on first use and written on the file IO
+ * thread, so that the viewer does not do disk I/O on the main thread, which StrictMode of the app
+ * would report.
+ */
 class StringModeConfig {
   private static final String NAME = "strictmode";
   private static final String KEY = "config";
 
+  // null until read from the preferences
+  private static Boolean enabled;
+
   private final Context context;
 
   public static StringModeConfig from(Context context) {
@@ -14,19 +24,43 @@ class StringModeConfig {
   }
 
   StringModeConfig(Context context) {
-    this.context = context;
+    this.context = context.getApplicationContext();
   }
 
+  /**
+   * Reads the preferences on first use. Call {@link #getCachedEnabled()} on the main thread.
+   */
   public boolean isEnabled() {
-    return getPrefs().getBoolean(KEY, true);
+    synchronized (StringModeConfig.class) {
+      if (enabled == null) {
+        enabled = getPrefs().getBoolean(KEY, true);
+      }
+      return enabled;
+    }
   }
 
-  public void enable(boolean enabled) {
-    getPrefs().edit().putBoolean(KEY, enabled).apply();
+  /**
+   * @return the flag, or null if it has not been read yet.
+   */
+  public Boolean getCachedEnabled() {
+    synchronized (StringModeConfig.class) {
+      return enabled;
+    }
   }
 
-  public void toggle() {
-    enable(!isEnabled());
+  /**
+   * Takes effect at once. The preferences are written on the file IO thread.
+   */
+  public void enable(final boolean enabled) {
+    synchronized (StringModeConfig.class) {
+      StringModeConfig.enabled = enabled;
+    }
+    StrictModeNotifierInternals.executeOnFileIoThread(new Runnable() {
+      @Override public void run() {
+        // commit() here, as apply() makes the main thread wait for the write in onPause()
+        getPrefs().edit().putBoolean(KEY, enabled).commit();
+      }
+    });
   }
 
   private SharedPreferences getPrefs() {
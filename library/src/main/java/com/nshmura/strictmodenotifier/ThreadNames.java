@@ -0,0 +1,42 @@
+package com.nshmura.strictmodenotifier;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+
+/**
+ * Names of the threads of this process, read from /proc.
+ */
+final class ThreadNames {
+
+  private static final String MAIN = "main";
+
+  private ThreadNames() {
+  }
+
+  /**
+   * @return the name of the thread, or null if the thread is not of this process or has ended.
+   */
+  static String get(int tid) {
+    if (tid == android.os.Process.myPid()) {
+      // the comm of the main thread is the process name
+      return MAIN;
+    }
+    BufferedReader reader = null;
+    try {
+      reader = new BufferedReader(new FileReader("/proc/self/task/" + tid + "/comm"));
+      String name = reader.readLine();
+      return name != null && name.length() > 0 ? name : null;
+    } catch (IOException e) {
+      return null;
+    } finally {
+      if (reader != null) {
+        try {
+          reader.close();
+        } catch (IOException e) {
+          //ignore
+        }
+      }
+    }
+  }
+}
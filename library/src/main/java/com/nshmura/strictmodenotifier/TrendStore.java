@@ -0,0 +1,165 @@
+package com.nshmura.strictmodenotifier;
+
+import android.content.Context;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Persists the {@link TrendRollup} in a file that is not removed by {@link ViolationStore#clear()}.
+ */
+final class TrendStore {
+
+  private static final String FILE_NAME = "strictmode_trends.bin";
+
+  private static TrendStore instance;
+
+  private final File file;
+  private TrendRollup rollup;
+  private boolean saveScheduled;
+
+  private TrendStore(Context context) {
+    file = new File(context.getFilesDir(), FILE_NAME);
+  }
+
+  static synchronized TrendStore get(Context context) {
+    if (instance == null) {
+      instance = new TrendStore(context.getApplicationContext());
+    }
+    return instance;
+  }
+
+  /**
+   * Add the violation to the rollup. The file is written on the file I/O thread.
+   */
+  synchronized void record(StrictModeViolation violation) {
+    getRollup().add(violation);
+    scheduleSave();
+  }
+
+  /**
+   * Describe the given build compared with the previous build. This may read the file.
+   */
+  synchronized String summarize(long versionCode) {
+    TrendRollup rollup = getRollup();
+    StringBuilder builder = new StringBuilder();
+
+    Long previous = rollup.getPreviousVersionCode(versionCode);
+    if (previous != null) {
+      TrendRollup.Comparison comparison = rollup.compare(previous, versionCode);
+      builder.append("Build ").append(versionCode).append(" vs ").append(previous).append('\n');
+      builder.append(comparison.added.size()).append(" new, ")
+          .append(comparison.removed.size()).append(" gone\n");
+      for (Map.Entry<ViolationType, Integer> diff : comparison.countDiffs.entrySet()) {
+        builder.append("  ").append(diff.getKey()).append(' ')
+            .append(diff.getValue() > 0 ? "+" : "").append(diff.getValue()).append('\n');
+      }
+      appendEntries(builder, "New", comparison.added);
+      appendEntries(builder, "Gone", comparison.removed);
+      builder.append('\n');
+    }
+
+    builder.append("Builds\n");
+    List<Long> versionCodes = rollup.getVersionCodes();
+    for (int i = versionCodes.size() - 1; i >= 0; i--) {
+      long code = versionCodes.get(i);
+      int total = 0;
+      Map<Long, TrendRollup.Entry> entries = rollup.getEntries(code);
+      for (TrendRollup.Entry entry : entries.values()) {
+        total += entry.count;
+      }
+      builder.append("  ").append(code).append(": ").append(total).append(" violations, ")
+          .append(entries.size()).append(" kinds\n");
+    }
+    return builder.toString();
+  }
+
+  private static void appendEntries(StringBuilder builder, String label,
+      List<TrendRollup.Entry> entries) {
+    if (entries.isEmpty()) {
+      return;
+    }
+    builder.append(label).append('\n');
+    for (TrendRollup.Entry entry : entries) {
+      builder.append("  ").append(entry.violationType).append(" x").append(entry.count)
+          .append(": ").append(entry.message.trim()).append('\n');
+    }
+  }
+
+  private TrendRollup getRollup() {
+    if (rollup == null) {
+      rollup = load();
+    }
+    return rollup;
+  }
+
+  private TrendRollup load() {
+    if (!file.exists()) {
+      return new TrendRollup();
+    }
+    try {
+      InputStream in = new FileInputStream(file);
+      try {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream((int) file.length());
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+          bytes.write(buffer, 0, read);
+        }
+        return TrendRollup.decode(bytes.toByteArray());
+      } finally {
+        in.close();
+      }
+    } catch (IOException e) {
+      e.printStackTrace();
+      return new TrendRollup();
+    }
+  }
+
+  private void scheduleSave() {
+    if (saveScheduled) {
+      return;
+    }
+    saveScheduled = true;
+    StrictModeNotifierInternals.executeOnFileIoThread(new Runnable() {
+      @Override public void run() {
+        save();
+      }
+    });
+  }
+
+  private void save() {
+    byte[] data;
+    synchronized (this) {
+      saveScheduled = false;
+      try {
+        data = rollup.encode();
+      } catch (IOException e) {
+        e.printStackTrace();
+        return;
+      }
+    }
+
+    // write to a temporary file and rename it, so that a crash never leaves a broken file.
+    File temp = new File(file.getPath() + ".tmp");
+    try {
+      FileOutputStream out = new FileOutputStream(temp);
+      try {
+        out.write(data);
+        out.getFD().sync();
+      } finally {
+        out.close();
+      }
+      if (!temp.renameTo(file)) {
+        throw new IOException("failed to rename " + temp);
+      }
+    } catch (IOException e) {
+      e.printStackTrace();
+    }
+  }
+}
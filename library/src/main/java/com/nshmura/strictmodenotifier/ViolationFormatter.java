@@ -0,0 +1,34 @@
+package com.nshmura.strictmodenotifier;
+
+import android.content.Context;
+import android.text.format.DateUtils;
+
+import com.bzl.apm.strictmode.notifer.R;
+
+import static android.text.format.DateUtils.FORMAT_SHOW_DATE;
+import static android.text.format.DateUtils.FORMAT_SHOW_TIME;
+
+/**
+ * Android specific formatting of {@link StrictModeViolation}.
+ */
+public final class ViolationFormatter {
+
+  private ViolationFormatter() {
+  }
+
+  public static String getDateText(Context context, StrictModeViolation violation) {
+    return getDateText(context, violation.time);
+  }
+
+  public static String getDateText(Context context, long time) {
+    return DateUtils.formatDateTime(context, time, FORMAT_SHOW_TIME | FORMAT_SHOW_DATE);
+  }
+
+  public static String getCostText(Context context, StrictModeViolation violation) {
+    return getCostText(context, violation.blockedMillis, violation.droppedFrames);
+  }
+
+  public static String getCostText(Context context, long blockedMillis, int droppedFrames) {
+    return context.getString(R.string.strictmode_notifier_cost, blockedMillis, droppedFrames);
+  }
+}
@@ -0,0 +1,70 @@
+package com.nshmura.strictmodenotifier;
+
+import java.util.ArrayDeque;
+
+/**
+ * Hands violations detected in process (not through logcat) to the {@link LogWatchService}.
+ *
+ * Violations posted before the service is ready are kept, up to {@link #MAX_PENDING}.
+ * Receivers are called on the file I/O thread, never on the posting thread.
+ */
+final class ViolationInbox {
+
+  interface Receiver {
+    void onViolation(StrictModeViolation violation);
+  }
+
+  private static final int MAX_PENDING = 100;
+
+  private static final ArrayDeque<StrictModeViolation> pending = new ArrayDeque<>();
+  private static Receiver receiver;
+  private static boolean drainScheduled;
+
+  private static final Runnable drain = new Runnable() {
+    @Override public void run() {
+      while (true) {
+        StrictModeViolation violation;
+        Receiver target;
+        synchronized (ViolationInbox.class) {
+          violation = pending.poll();
+          target = receiver;
+          if (violation == null || target == null) {
+            drainScheduled = false;
+            if (violation != null) {
+              pending.addFirst(violation);
+            }
+            return;
+          }
+        }
+        target.onViolation(violation);
+      }
+    }
+  };
+
+  private ViolationInbox() {
+  }
+
+  static void post(StrictModeViolation violation) {
+    synchronized (ViolationInbox.class) {
+      if (pending.size() >= MAX_PENDING) {
+        pending.poll();
+      }
+      pending.add(violation);
+      scheduleDrain();
+    }
+  }
+
+  static void setReceiver(Receiver newReceiver) {
+    synchronized (ViolationInbox.class) {
+      receiver = newReceiver;
+      scheduleDrain();
+    }
+  }
+
+  private static void scheduleDrain() {
+    if (receiver != null && !drainScheduled && !pending.isEmpty()) {
+      drainScheduled = true;
+      StrictModeNotifierInternals.executeOnFileIoThread(drain);
+    }
+  }
+}
@@ -0,0 +1,213 @@
+package com.nshmura.strictmodenotifier;
+
+import android.app.PendingIntent;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.Build;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.SystemClock;
+
+import androidx.core.app.NotificationCompat;
+import androidx.core.app.NotificationManagerCompat;
+
+import com.bzl.apm.strictmode.notifer.R;
+
+/**
+ * Posts the notifications of violations on a background thread.
+ *
+ * Notifications are updated at most once in {@link NotifierConfig#getNotificationIntervalMillis()},
+ * so a burst of violations results in a few updates. In the grouped mode, each
+ * {@link ViolationType} has a notification that lists its last violations, under a summary of all
+ * the types. See {@link NotificationGroups}. The counts restart when a notification is dismissed,
+ * or when the report is opened from a notification.
+ */
+final class ViolationNotifier {
+
+  private static final String THREAD_NAME = "StrictModeNotifier-Notification";
+  private static final String GROUP_KEY = "com.nshmura.strictmodenotifier.VIOLATIONS";
+  private static final String ACTION_RESET = "com.nshmura.strictmodenotifier.RESET_NOTIFICATIONS";
+  private static final String EXTRA_NOTIFICATION_ID = "EXTRA_NOTIFICATION_ID";
+  // distinct from the request code of the single notification, see
+  // StrictModeReportActivity.createPendingIntent(Context, StrictModeViolation)
+  private static final int SUMMARY_REQUEST_CODE = 2;
+
+  private final Context context;
+  private final HandlerThread thread;
+  private final Handler handler;
+
+  // accessed on the handler thread only
+  private final NotificationGroups groups = new NotificationGroups();
+  private Pending latest;
+  private long lastPostAt;
+  private boolean flushScheduled;
+  private boolean channelCreated;
+
+  private static class Pending {
+    final StrictModeViolation violation;
+    final String title;
+    final String description;
+
+    Pending(StrictModeViolation violation, String title, String description) {
+      this.violation = violation;
+      this.title = title;
+      this.description = description;
+    }
+  }
+
+  ViolationNotifier(Context context) {
+    this.context = context.getApplicationContext();
+    thread = new HandlerThread(THREAD_NAME, android.os.Process.THREAD_PRIORITY_BACKGROUND);
+    thread.start();
+    handler = new Handler(thread.getLooper());
+
+    IntentFilter filter = new IntentFilter(ACTION_RESET);
+    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.TIRAMISU) {
+      this.context.registerReceiver(resetReceiver, filter, null, handler,
+          Context.RECEIVER_NOT_EXPORTED);
+    } else {
+      this.context.registerReceiver(resetReceiver, filter, null, handler);
+    }
+  }
+
+  /**
+   * Restart the counts of all notifications. Call this when the report is opened from a
+   * notification.
+   */
+  static void onNotificationOpened(Context context) {
+    context.sendBroadcast(resetIntent(context, StrictModeNotifierInternals.NOTIFICATION_ID));
+  }
+
+  /**
+   * @param notificationId the notification to reset, or the summary to reset all.
+   */
+  private static Intent resetIntent(Context context, int notificationId) {
+    return new Intent(ACTION_RESET)
+        .setPackage(context.getPackageName())
+        .putExtra(EXTRA_NOTIFICATION_ID, notificationId);
+  }
+
+  private PendingIntent deleteIntent(int notificationId) {
+    int flags = Build.VERSION.SDK_INT >= Build.VERSION_CODES.M
+        ? PendingIntent.FLAG_IMMUTABLE | PendingIntent.FLAG_UPDATE_CURRENT
+        : PendingIntent.FLAG_UPDATE_CURRENT;
+    return PendingIntent.getBroadcast(context, notificationId,
+        resetIntent(context, notificationId), flags);
+  }
+
+  // runs on the handler thread
+  private final BroadcastReceiver resetReceiver = new BroadcastReceiver() {
+    @Override public void onReceive(Context context, Intent intent) {
+      int notificationId = intent.getIntExtra(EXTRA_NOTIFICATION_ID, 0);
+      if (notificationId == StrictModeNotifierInternals.NOTIFICATION_ID) {
+        groups.resetAll();
+      } else {
+        groups.reset(notificationId);
+      }
+    }
+  };
+
+  /**
+   * @param title title of the notification of the violation
+   * @param description text of the notification of the violation
+   */
+  void post(final StrictModeViolation violation, final String title, final String description) {
+    handler.post(new Runnable() {
+      @Override public void run() {
+        onViolation(new Pending(violation, title, description));
+      }
+    });
+  }
+
+  void quit() {
+    context.unregisterReceiver(resetReceiver);
+    thread.quit();
+  }
+
+  private void onViolation(Pending pending) {
+    latest = pending;
+    groups.add(pending.violation, pending.title);
+
+    if (!flushScheduled) {
+      flushScheduled = true;
+      long interval = NotifierConfig.getInstance().getNotificationIntervalMillis();
+      long delay = Math.max(0, lastPostAt + interval - SystemClock.uptimeMillis());
+      handler.postDelayed(flush, delay);
+    }
+  }
+
+  private final Runnable flush = new Runnable() {
+    @Override public void run() {
+      flushScheduled = false;
+      lastPostAt = SystemClock.uptimeMillis();
+
+      NotifierConfig.Snapshot config = NotifierConfig.getInstance().snapshot();
+      if (config.groupedNotificationsEnabled) {
+        postGroups(config.headupEnabled);
+      } else if (latest != null) {
+        StrictModeNotifierInternals.showNotification(context, latest.title, latest.description,
+            config.headupEnabled, StrictModeReportActivity.createPendingIntent(context,
+                latest.violation));
+      }
+      latest = null;
+      groups.clearChanged();
+    }
+  };
+
+  private void postGroups(boolean headupEnabled) {
+    NotificationManagerCompat notificationManager = NotificationManagerCompat.from(context);
+    if (!channelCreated) {
+      StrictModeNotifierInternals.createNotificationChannel(notificationManager);
+      channelCreated = true;
+    }
+
+    for (NotificationGroups.Group group : groups.getChanged()) {
+      PendingIntent pendingIntent = StrictModeReportActivity.createPendingIntent(context,
+          group.getLastId(), group.notificationId);
+      NotificationCompat.InboxStyle style = new NotificationCompat.InboxStyle()
+          .setBigContentTitle(group.title)
+          .setSummaryText(context.getString(R.string.strictmode_notifier_violation_count,
+              group.getCount()));
+      for (String line : group.getLines()) {
+        style.addLine(line);
+      }
+      NotificationCompat.Builder builder = StrictModeNotifierInternals.newNotificationBuilder(context)
+          .setContentTitle(group.title)
+          .setContentText(group.getLastLine())
+          .setContentIntent(pendingIntent)
+          .setDeleteIntent(deleteIntent(group.notificationId))
+          .setStyle(style)
+          .setNumber(group.getCount())
+          .setGroup(GROUP_KEY)
+          .setGroupAlertBehavior(NotificationCompat.GROUP_ALERT_CHILDREN);
+      if (headupEnabled) {
+        builder.setFullScreenIntent(pendingIntent, true);
+      }
+      notificationManager.notify(group.notificationId, builder.build());
+    }
+
+    int total = groups.getTotalCount();
+    NotificationCompat.InboxStyle style = new NotificationCompat.InboxStyle();
+    for (NotificationGroups.Group group : groups.getGroups()) {
+      style.addLine(context.getString(R.string.strictmode_notifier_type_count, group.title,
+          group.getCount()));
+    }
+    String title = context.getString(R.string.strictmode_notifier_title, context.getPackageName());
+    String summary = context.getString(R.string.strictmode_notifier_violation_count, total);
+    style.setBigContentTitle(title).setSummaryText(summary);
+    notificationManager.notify(StrictModeNotifierInternals.NOTIFICATION_ID,
+        StrictModeNotifierInternals.newNotificationBuilder(context)
+            .setContentTitle(title)
+            .setContentText(summary)
+            .setContentIntent(StrictModeReportActivity.createPendingIntent(context, 0,
+                SUMMARY_REQUEST_CODE))
+            .setDeleteIntent(deleteIntent(StrictModeNotifierInternals.NOTIFICATION_ID))
+            .setStyle(style)
+            .setGroup(GROUP_KEY)
+            .setGroupSummary(true)
+            .setOnlyAlertOnce(true)
+            .build());
+  }
+}
@@ -4,99 +4,271 @@ import android.content.Context;
 import android.content.SharedPreferences;
 import android.util.Base64;
 import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
-import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
 
+/**
+ * Stores the violations in a {@link SegmentedViolationLog}, so that the list can be shown from the
+ * mapped index without decoding every report.
+ *
+ * Mutations are serialized on the store thread by {@link ViolationLogWriter}, which also applies
+ * the {@link RetentionPolicy} of the config. remove() and clear() return without waiting for it.
+ * The viewer calls the store on the file IO thread, as opening it is disk I/O.
+ */
 class ViolationStore {
+  private static final String DIR_NAME = "strictmode_violations";
+  private static final long BUCKET_MILLIS = 60 * 60 * 1000;
+  private static final int SEGMENT_SLOT_COUNT = 64;
+  private static final int SEGMENT_PAYLOAD_CAPACITY = 64 * 1024;
+
+  // storage of the previous version, a single ring buffer
+  private static final String LEGACY_FILE_NAME = "strictmode_violations.map";
+
+  // storage of the older versions
   private static final String NAME = "strictmode";
   private static final String KEY = "reports";
-  private static final int MAX_REPORTS = 50;
+  private static final String NEXT_ID_KEY = "next_id";
+
+  private static final int MAX_CACHE = 20;
+
+  /** Recently stored or opened violations, so that the detail screen can skip decoding. */
+  private static final LinkedHashMap<Long, StrictModeViolation> cache =
+      new LinkedHashMap<Long, StrictModeViolation>(MAX_CACHE, 0.75f, true) {
+        @Override protected boolean removeEldestEntry(Map.Entry<Long, StrictModeViolation> eldest) {
+          return size() > MAX_CACHE;
+        }
+      };
+
+  private static ViolationLogWriter writer;
 
   private final Context context;
 
   ViolationStore(Context context) {
-    this.context = context;
+    this.context = context.getApplicationContext();
   }
 
   /**
-   * Read the object from Base64 string.
+   * Waits for the mutations submitted before. Do not call on the main thread.
    *
-   * @see {http://stackoverflow.com/questions/134492/how-to-serialize-an-object-into-a-string}
+   * @return the live records newest first, or null if the file could not be opened.
    */
-  private static Object fromString(String s) throws IOException, ClassNotFoundException {
-    byte[] data = Base64.decode(s, Base64.DEFAULT);
-    ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(data));
-    Object o = ois.readObject();
-    ois.close();
-    return o;
+  public MappedViolationLog.Index index() {
+    ViolationLogWriter writer = getWriter();
+    if (writer == null) {
+      return null;
+    }
+    sync(writer);
+    return writer.index();
   }
 
   /**
-   * Write the object to a Base64 string.
+   * Decodes the records without a type. Do not call on the main thread.
    *
-   * @see {http://stackoverflow.com/questions/134492/how-to-serialize-an-object-into-a-string}
+   * @return the messages by index position, see {@link ViolationLogWriter#getUntypedMessages}.
    */
-  private static String toString(Serializable o) throws IOException {
-    ByteArrayOutputStream baos = new ByteArrayOutputStream();
-    ObjectOutputStream oos = new ObjectOutputStream(baos);
-    oos.writeObject(o);
-    oos.close();
-    return Base64.encodeToString(baos.toByteArray(), Base64.DEFAULT);
+  public String[] getUntypedMessages(MappedViolationLog.Index index) {
+    ViolationLogWriter writer = getWriter();
+    return writer != null ? writer.getUntypedMessages(index) : new String[index.size()];
   }
 
+  /**
+   * Waits for the mutations submitted before. Do not call on the main thread.
+   *
+   * @return all violations, newest first.
+   */
   public ArrayList<StrictModeViolation> getAll() {
-    try {
-      String serialized = getPrefs().getString(KEY, null);
-      if (serialized != null) {
-        //noinspection unchecked
-        return (ArrayList<StrictModeViolation>) fromString(serialized);
+    ViolationLogWriter writer = getWriter();
+    if (writer != null) {
+      sync(writer);
+      try {
+        return writer.getAll();
+      } catch (IOException e) {
+        e.printStackTrace();
       }
-    } catch (Exception e) {
-      //ignore
     }
     return new ArrayList<>();
   }
 
-  public void append(StrictModeViolation report) throws IOException {
-    ArrayList<StrictModeViolation> reports = getAll();
-
-    if (reports.size() > MAX_REPORTS) {
-      reports.subList(0, MAX_REPORTS);
+  /**
+   * @return the violation of the id, or null if it is not stored.
+   */
+  public StrictModeViolation get(long id) {
+    synchronized (cache) {
+      StrictModeViolation cached = cache.get(id);
+      if (cached != null) {
+        return cached;
+      }
+    }
+    ViolationLogWriter writer = getWriter();
+    if (writer == null) {
+      return null;
     }
+    StrictModeViolation report;
+    try {
+      report = writer.get(id);
+    } catch (IOException e) {
+      e.printStackTrace();
+      return null;
+    }
+    if (report != null) {
+      cache(report);
+    }
+    return report;
+  }
 
-    reports.add(0, report);
-    getPrefs().edit().putString(KEY, toString(reports)).apply();
+  /**
+   * Waits for the store thread. Do not call on the main thread.
+   *
+   * @return the stored violation that has an id.
+   */
+  public StrictModeViolation append(StrictModeViolation report) throws IOException {
+    ViolationLogWriter writer = getWriter();
+    if (writer == null) {
+      throw new IOException("cannot open " + DIR_NAME);
+    }
+    StrictModeViolation stored;
+    try {
+      stored = writer.append(report).get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("interrupted");
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      }
+      throw new IOException(e.getCause());
+    }
+    cache(stored);
+    return stored;
   }
 
   public void remove(StrictModeViolation target) {
-    ArrayList<StrictModeViolation> reports = getAll();
-    Integer targetIndex = null;
-    for(int i = 0; i < reports.size(); i++) {
-      StrictModeViolation report = reports.get(i);
-      if (report.logKey.equals(target.logKey) && report.time == target.time) {
-        targetIndex = i;
-        break;
+    ViolationLogWriter writer = getWriter();
+    if (writer != null) {
+      writer.delete(target.id);
+    }
+    synchronized (cache) {
+      cache.remove(target.id);
+    }
+  }
+
+  public void clear() {
+    ViolationLogWriter writer = getWriter();
+    if (writer != null) {
+      writer.clear();
+    }
+    clearCache();
+  }
+
+  private ViolationLogWriter getWriter() {
+    synchronized (ViolationStore.class) {
+      if (writer == null) {
+        try {
+          SegmentedViolationLog log = SegmentedViolationLog.open(
+              new File(context.getFilesDir(), DIR_NAME), BUCKET_MILLIS, SEGMENT_SLOT_COUNT,
+              SEGMENT_PAYLOAD_CAPACITY);
+          migrate(log);
+          migrateLegacyFile(log);
+          writer = new ViolationLogWriter(log,
+              StrictModeNotifierInternals.newSingleThreadExecutor("Store"),
+              NotifierConfig.getInstance(), new Runnable() {
+                @Override public void run() {
+                  // the cache may hold removed violations
+                  clearCache();
+                }
+              });
+          writer.applyRetention();
+        } catch (IOException e) {
+          e.printStackTrace();
+        }
       }
+      return writer;
+    }
+  }
+
+  /**
+   * Move the violations of the single ring buffer file of the previous version.
+   */
+  private void migrateLegacyFile(SegmentedViolationLog log) {
+    File file = new File(context.getFilesDir(), LEGACY_FILE_NAME);
+    if (!file.exists()) {
+      return;
     }
-    if (targetIndex != null) {
-      reports.remove(targetIndex.intValue());
+    try {
+      MappedViolationLog legacy = MappedViolationLog.open(file, 1, 1);
+      ArrayList<StrictModeViolation> reports = legacy.getAll();
+      legacy.close();
+      for (int i = reports.size() - 1; i >= 0; i--) {
+        log.append(reports.get(i));
+      }
+    } catch (IOException e) {
+      //ignore
+    }
+    file.delete();
+  }
+
+  /**
+   * Move the violations stored in the SharedPreferences by the older versions.
+   */
+  private void migrate(SegmentedViolationLog log) {
+    SharedPreferences prefs = context.getSharedPreferences(NAME, Context.MODE_PRIVATE);
+    String serialized = prefs.getString(KEY, null);
+    if (serialized != null) {
       try {
-        getPrefs().edit().putString(KEY, toString(reports)).apply();
-      } catch (IOException e) {
-        e.printStackTrace();
+        ArrayList<StrictModeViolation> reports = fromString(serialized);
+        for (int i = reports.size() - 1; i >= 0; i--) {
+          log.append(reports.get(i));
+        }
+      } catch (Exception e) {
+        //ignore
       }
+      prefs.edit().remove(KEY).remove(NEXT_ID_KEY).apply();
     }
   }
 
-  public void clear() {
-    getPrefs().edit().clear().apply();
+  /**
+   * Read the violations from Base64 string.
+   * Reports stored by the older versions are java serialized objects.
+   *
+   * @see {http://stackoverflow.com/questions/134492/how-to-serialize-an-object-into-a-string}
+   */
+  private static ArrayList<StrictModeViolation> fromString(String s)
+      throws IOException, ClassNotFoundException {
+    byte[] data = Base64.decode(s, Base64.DEFAULT);
+    if (ViolationCodec.isEncoded(data)) {
+      return ViolationCodec.decodeList(data);
+    }
+    ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(data));
+    //noinspection unchecked
+    ArrayList<StrictModeViolation> o = (ArrayList<StrictModeViolation>) ois.readObject();
+    ois.close();
+    return o;
+  }
+
+  private static void sync(ViolationLogWriter writer) {
+    try {
+      writer.sync().get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (ExecutionException e) {
+      // sync() does not fail
+    }
   }
 
-  private SharedPreferences getPrefs() {
-    return context.getSharedPreferences(NAME, Context.MODE_PRIVATE);
+  private static void cache(StrictModeViolation report) {
+    synchronized (cache) {
+      cache.put(report.id, report);
+    }
+  }
+
+  private static void clearCache() {
+    synchronized (cache) {
+      cache.clear();
+    }
   }
-}
\ No newline at end of file
+}
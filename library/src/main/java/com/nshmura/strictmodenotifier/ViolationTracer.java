@@ -0,0 +1,98 @@
+package com.nshmura.strictmodenotifier;
+
+import android.os.Build;
+import android.os.SystemClock;
+import android.os.Trace;
+import java.lang.reflect.Method;
+
+/**
+ * Marks violations in systrace and Perfetto captures.
+ *
+ * On Android Q and later, a violation is an async slice named
+ * "StrictMode <type> <fingerprint>" on its own track, and the "StrictMode violations" counter
+ * counts them. On older versions it is a slice on the watcher thread. Nothing is done while
+ * tracing is off, which older versions tell through a hidden method only. If it cannot be called,
+ * the slice is always written.
+ *
+ * Violations read from logcat are marked when they are assembled, a little after they happened.
+ * {@link StrictModeViolation#traceTimeNanos} has the time they happened on the trace clock.
+ */
+final class ViolationTracer {
+
+  private static final String COUNTER_NAME = "StrictMode violations";
+
+  // Trace.TRACE_TAG_APP
+  private static final long TRACE_TAG_APP = 1L << 12;
+
+  private static long count;
+  private static Method isTagEnabled;
+  private static boolean isTagEnabledResolved;
+
+  private ViolationTracer() {
+  }
+
+  /**
+   * @return the violation with {@link StrictModeViolation#traceTimeNanos}.
+   */
+  static StrictModeViolation mark(StrictModeViolation violation) {
+    if (violation.traceTimeNanos == 0) {
+      violation = violation.newBuilder().setTraceTimeNanos(toTraceTime(violation.time)).build();
+    }
+
+    if (!isTracing()) {
+      return violation;
+    }
+    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+      long fingerprint = ViolationFingerprint.of(violation);
+      String name = sectionName(violation, fingerprint);
+      int cookie = (int) (fingerprint ^ (fingerprint >>> 32));
+      Trace.beginAsyncSection(name, cookie);
+      Trace.endAsyncSection(name, cookie);
+      synchronized (ViolationTracer.class) {
+        Trace.setCounter(COUNTER_NAME, ++count);
+      }
+    } else {
+      Trace.beginSection(sectionName(violation, ViolationFingerprint.of(violation)));
+      Trace.endSection();
+    }
+    return violation;
+  }
+
+  private static boolean isTracing() {
+    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+      return Trace.isEnabled();
+    }
+    Method method;
+    synchronized (ViolationTracer.class) {
+      if (!isTagEnabledResolved) {
+        isTagEnabledResolved = true;
+        try {
+          isTagEnabled = Trace.class.getMethod("isTagEnabled", long.class);
+        } catch (Exception e) {
+          isTagEnabled = null;
+        }
+      }
+      method = isTagEnabled;
+    }
+    if (method == null) {
+      return true;
+    }
+    try {
+      return (Boolean) method.invoke(null, TRACE_TAG_APP);
+    } catch (Exception e) {
+      return true;
+    }
+  }
+
+  /**
+   * Convert the wall clock time to the trace clock.
+   */
+  static long toTraceTime(long wallTimeMillis) {
+    long elapsedMillis = System.currentTimeMillis() - wallTimeMillis;
+    return SystemClock.elapsedRealtimeNanos() - elapsedMillis * 1000000L;
+  }
+
+  private static String sectionName(StrictModeViolation violation, long fingerprint) {
+    return "StrictMode " + violation.violationType + " " + ViolationFingerprint.toHex(fingerprint);
+  }
+}
@@ -1,6 +1,7 @@
 package com.nshmura.strictmodenotifier;
 
 import android.os.Build;
+import com.nshmura.strictmodenotifier.detector.ActivityLeaksDetector;
 import com.nshmura.strictmodenotifier.detector.ClassInstanceLimitDetector;
 import com.nshmura.strictmodenotifier.detector.CleartextNetworkDetector;
 import com.nshmura.strictmodenotifier.detector.CustomSlowCallDetector;
@@ -31,6 +32,24 @@ public enum ViolationTypeInfo {
       Build.VERSION_CODES.M,
       new ResourceMismatchDetector()),
 
+  DISK_READ(
+      "Disk Read",
+      ViolationType.DISK_READ,
+      Build.VERSION_CODES.GINGERBREAD,
+      null),
+
+  DISK_WRITE(
+      "Disk Write",
+      ViolationType.DISK_WRITE,
+      Build.VERSION_CODES.GINGERBREAD,
+      null),
+
+  UNBUFFERED_IO(
+      "Unbuffered IO",
+      ViolationType.UNBUFFERED_IO,
+      Build.VERSION_CODES.O,
+      null),
+
   // VmPolicy
   CLASS_INSTANCE_LIMIT(
       "Class Instance Limit",
@@ -60,7 +79,7 @@ public enum ViolationTypeInfo {
       "Activity Leaks",
       ViolationType.ACTIVITY_LEAKS,
       Build.VERSION_CODES.HONEYCOMB,
-      null),
+      new ActivityLeaksDetector()),
 
   LEAKED_REGISTRATION_OBJECTS(
       "Leaked Registration_Objects",
@@ -74,11 +93,59 @@ public enum ViolationTypeInfo {
       Build.VERSION_CODES.GINGERBREAD,
       null),
 
+  CONTENT_URI_WITHOUT_PERMISSION(
+      "Content Uri Without Permission",
+      ViolationType.CONTENT_URI_WITHOUT_PERMISSION,
+      Build.VERSION_CODES.O,
+      null),
+
+  UNTAGGED_SOCKET(
+      "Untagged Socket",
+      ViolationType.UNTAGGED_SOCKET,
+      Build.VERSION_CODES.O,
+      null),
+
+  NON_SDK_API_USED(
+      "Non SDK API Used",
+      ViolationType.NON_SDK_API_USED,
+      Build.VERSION_CODES.P,
+      null),
+
+  IMPLICIT_DIRECT_BOOT(
+      "Implicit Direct Boot",
+      ViolationType.IMPLICIT_DIRECT_BOOT,
+      Build.VERSION_CODES.Q,
+      null),
+
+  CREDENTIAL_PROTECTED_WHILE_LOCKED(
+      "Credential Protected While Locked",
+      ViolationType.CREDENTIAL_PROTECTED_WHILE_LOCKED,
+      Build.VERSION_CODES.Q,
+      null),
+
+  INCORRECT_CONTEXT_USE(
+      "Incorrect Context Use",
+      ViolationType.INCORRECT_CONTEXT_USE,
+      Build.VERSION_CODES.S,
+      null),
+
+  UNSAFE_INTENT_LAUNCH(
+      "Unsafe Intent Launch",
+      ViolationType.UNSAFE_INTENT_LAUNCH,
+      Build.VERSION_CODES.S,
+      null),
+
   UNKNOWN("UNKNOWN", ViolationType.UNKNOWN, 0, null);
 
   private String name;
   public final ViolationType violationType;
   public final int minSdkVersion;
+
+  /**
+   * @deprecated Violations are classified by {@link ViolationClassifier}, not by detectors. Types
+   * without a detector class look the message up in the built-in class name table.
+   */
+  @Deprecated
   public final Detector detector;
 
   ViolationTypeInfo(String name, ViolationType violationType, int minSdkVersion,
@@ -86,16 +153,7 @@ public enum ViolationTypeInfo {
     this.name = name;
     this.violationType = violationType;
     this.minSdkVersion = minSdkVersion;
-
-    if (detector != null) {
-      this.detector = detector;
-    } else {
-      this.detector = new Detector() {
-        @Override public boolean detect(StrictModeLog log) {
-          return false;
-        }
-      };
-    }
+    this.detector = detector != null ? detector : new BuiltInDetector(violationType);
   }
 
   public static ViolationTypeInfo convert(ViolationType type) {
@@ -110,4 +168,16 @@ public enum ViolationTypeInfo {
   public String violationName() {
     return name + " Violation";
   }
+
+  private static class BuiltInDetector implements Detector {
+    private final ViolationType violationType;
+
+    BuiltInDetector(ViolationType violationType) {
+      this.violationType = violationType;
+    }
+
+    @Override public boolean detect(StrictModeLog log) {
+      return ViolationClassifier.lookupBuiltIn(log.message) == violationType;
+    }
+  }
 }
@@ -10,9 +10,15 @@ public class MainApplication extends Application {
   @Override public void onCreate() {
     super.onCreate();
 
-    StrictModeNotifier
-        .install(this)
-        .setDebugMode(true);
+    if (BuildConfig.EAGER_INSTALL) {
+      StrictModeNotifier
+          .install(this)
+          .setDebugMode(true);
+    } else {
+      StrictModeNotifier
+          .installDeferred(this)
+          .setDebugMode(true);
+    }
 
     //https://code.google.com/p/android/issues/detail?id=35298
     new Handler().post(new Runnable() {